@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.datamelt.kettle.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.datamelt.kettle.jareclient.RuleEngineConnection;
+import com.datamelt.server.RuleEngineServerObject;
+import com.datamelt.util.HeaderRow;
+import com.datamelt.util.RowFieldCollection;
+
+/**
+ * Measures the round-trip of rows between the rule engine client step and a
+ * server on localhost, per row: one row at a time, waiting for each result, and
+ * batches of rows sent at once before the results are received.
+ *
+ * The server is a stand-in running in the same JVM, so the results include the
+ * serialization and the rule engine on both sides, but no network latency.
+ *
+ * @author uwe geercken - uwe.geercken@web.de
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RoundTripBenchmark
+{
+	private static final int BATCH_SIZE = 100;
+
+	@Param({"10", "300"})
+	public int numberOfFields;
+
+	@Param({"10"})
+	public int numberOfGroups;
+
+	@Param({"10"})
+	public int numberOfRules;
+
+	private RuleEngineServerStandIn server;
+	private RuleEngineConnection connection;
+	private HeaderRow header;
+	private Object[] row;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception
+	{
+		RuleProjects project = new RuleProjects(numberOfGroups, numberOfRules);
+		server = new RuleEngineServerStandIn(project.getFolder());
+		server.start();
+		connection = new RuleEngineConnection("localhost", server.getPort());
+		header = new HeaderRow(RuleProjects.getFieldNames(numberOfFields));
+		row = RuleProjects.getRow(numberOfFields);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception
+	{
+		connection.close();
+		server.stop();
+	}
+
+	@Benchmark
+	public RuleEngineServerObject single() throws Exception
+	{
+		// a row must be a new object, otherwise only a reference is sent
+		connection.send(new RowFieldCollection(header, row));
+		connection.flush();
+		return connection.receive();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH_SIZE)
+	public long batch() throws Exception
+	{
+		for(int i=0;i<BATCH_SIZE;i++)
+		{
+			connection.send(new RowFieldCollection(header, row));
+		}
+		connection.flush();
+		long rulesFailed = 0;
+		for(int i=0;i<BATCH_SIZE;i++)
+		{
+			rulesFailed += connection.receive().getRulesFailed();
+		}
+		return rulesFailed;
+	}
+}
@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.datamelt.kettle.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.datamelt.kettle.util.ReusableRowFieldCollection;
+import com.datamelt.rules.engine.BusinessRulesEngine;
+import com.datamelt.util.HeaderRow;
+import com.datamelt.util.RowFieldCollection;
+
+/**
+ * Measures running the rule engine for one row, as done by the rule engine step
+ * for each row, for a narrow and a wide row. The rules check the first ten fields
+ * of the row, so the difference is the cost of the fields alone.
+ *
+ * The reused benchmark resets one collection of fields for each row, as the step
+ * does. The created benchmark creates a new collection for each row.
+ *
+ * @author uwe geercken - uwe.geercken@web.de
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RowEvaluationBenchmark
+{
+	@Param({"10", "300"})
+	public int numberOfFields;
+
+	@Param({"10"})
+	public int numberOfGroups;
+
+	@Param({"10"})
+	public int numberOfRules;
+
+	private BusinessRulesEngine engine;
+	private HeaderRow header;
+	private Object[] row;
+	private ReusableRowFieldCollection fields;
+
+	@Setup
+	public void setup() throws Exception
+	{
+		RuleProjects project = new RuleProjects(numberOfGroups, numberOfRules);
+		engine = new BusinessRulesEngine(project.getFolder().listFiles());
+		engine.setPreserveRuleExcecutionResults(false);
+		header = new HeaderRow(RuleProjects.getFieldNames(numberOfFields));
+		row = RuleProjects.getRow(numberOfFields);
+		fields = new ReusableRowFieldCollection(header, row);
+	}
+
+	@Benchmark
+	public long reused() throws Exception
+	{
+		fields.reset(row);
+		return run(fields);
+	}
+
+	@Benchmark
+	public long created() throws Exception
+	{
+		return run(new RowFieldCollection(header, row));
+	}
+
+	private long run(RowFieldCollection collection) throws Exception
+	{
+		engine.run("row", collection);
+		long rulesFailed = engine.getNumberOfRulesFailed();
+		engine.getRuleExecutionCollection().clear();
+		return rulesFailed;
+	}
+}
@@ -0,0 +1,222 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.datamelt.kettle.benchmark;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.datamelt.kettle.jareclient.RuleEngineConnection;
+import com.datamelt.rules.engine.BusinessRulesEngine;
+import com.datamelt.server.ClientHandler;
+import com.datamelt.server.RuleEngineServerObject;
+import com.datamelt.util.RowFieldCollection;
+
+/**
+ * Stand-in for the JaRE rule engine server, listening on an ephemeral port of
+ * the loopback interface. It speaks the protocol used by the rule engine client
+ * step: messages are answered with a string, rows are run through a rule engine
+ * and answered with the results, in the order they were received.
+ *
+ * Each connection is handled by its own thread with its own rule engine, as
+ * the server does.
+ *
+ * @author uwe geercken - uwe.geercken@web.de
+ */
+public class RuleEngineServerStandIn implements Runnable
+{
+	private final File ruleFolder;
+	private final ServerSocket serverSocket;
+	private final List<Socket> sockets = new ArrayList<Socket>();
+	private volatile boolean stopped;
+
+	/**
+	 * @param ruleFolder	folder containing the xml rule files
+	 * @throws IOException	when the server socket can not be opened
+	 */
+	public RuleEngineServerStandIn(File ruleFolder) throws IOException
+	{
+		this.ruleFolder = ruleFolder;
+		this.serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+	}
+
+	/**
+	 * @return	the port the server listens on
+	 */
+	public int getPort()
+	{
+		return serverSocket.getLocalPort();
+	}
+
+	/**
+	 * starts accepting connections in a daemon thread
+	 */
+	public void start()
+	{
+		Thread thread = new Thread(this, "rule engine server stand-in");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * stops the server and closes all connections
+	 */
+	public void stop()
+	{
+		stopped = true;
+		try
+		{
+			serverSocket.close();
+		}
+		catch(IOException ioe)
+		{
+			// the server is not used any further
+		}
+		synchronized(sockets)
+		{
+			for(int i=0;i<sockets.size();i++)
+			{
+				try
+				{
+					sockets.get(i).close();
+				}
+				catch(IOException ioe)
+				{
+					// the connection is not used any further
+				}
+			}
+			sockets.clear();
+		}
+	}
+
+	public void run()
+	{
+		while(!stopped)
+		{
+			final Socket socket;
+			try
+			{
+				socket = serverSocket.accept();
+			}
+			catch(IOException ioe)
+			{
+				// the server is stopped
+				return;
+			}
+			synchronized(sockets)
+			{
+				sockets.add(socket);
+			}
+			Thread handler = new Thread(new Runnable()
+			{
+				public void run()
+				{
+					handle(socket);
+				}
+			}, "rule engine server stand-in - " + socket.getPort());
+			handler.setDaemon(true);
+			handler.start();
+		}
+	}
+
+	private void handle(Socket socket)
+	{
+		try
+		{
+			socket.setTcpNoDelay(true);
+			BusinessRulesEngine engine = new BusinessRulesEngine(ruleFolder.listFiles());
+			engine.setPreserveRuleExcecutionResults(false);
+			ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(socket.getOutputStream(), 65536));
+			out.flush();
+			ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(socket.getInputStream(), 65536));
+			while(!stopped)
+			{
+				Object request = in.readObject();
+				if(request instanceof String)
+				{
+					String message = (String)request;
+					out.writeObject(getAnswer(message, engine));
+					out.flush();
+					if(message.equals(RuleEngineConnection.MESSAGE_EXIT))
+					{
+						break;
+					}
+				}
+				else
+				{
+					RowFieldCollection fields = (RowFieldCollection)request;
+					engine.run("row", fields);
+					RuleEngineServerObject response = new RuleEngineServerObject();
+					response.setTotalGroups(engine.getNumberOfGroups());
+					response.setGroupsFailed(engine.getNumberOfGroupsFailed());
+					response.setGroupsSkipped(engine.getNumberOfGroupsSkipped());
+					response.setTotalRules(engine.getNumberOfRules());
+					response.setRulesFailed(engine.getNumberOfRulesFailed());
+					response.setTotalActions(engine.getNumberOfActions());
+					response.setFields(fields);
+					engine.getRuleExecutionCollection().clear();
+					// the responses are not kept by the stream
+					out.reset();
+					out.writeObject(response);
+					out.flush();
+				}
+			}
+		}
+		catch(Exception ex)
+		{
+			// the connection was closed
+		}
+		finally
+		{
+			try
+			{
+				socket.close();
+			}
+			catch(IOException ioe)
+			{
+				// the connection is not used any further
+			}
+		}
+	}
+
+	private String getAnswer(String message, BusinessRulesEngine engine)
+	{
+		if(message.equals(ClientHandler.RESPONSE_RULEENGINE_VERSION))
+		{
+			return BusinessRulesEngine.getVersion();
+		}
+		else if(message.equals(ClientHandler.RESPONSE_RULEFILE))
+		{
+			return ruleFolder.getAbsolutePath();
+		}
+		else if(message.equals(ClientHandler.RESPONSE_NUMBER_OF_GROUPS))
+		{
+			return String.valueOf(engine.getNumberOfGroups());
+		}
+		return message;
+	}
+}
@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.datamelt.kettle.benchmark;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipFile;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.datamelt.rules.engine.BusinessRulesEngine;
+
+/**
+ * Measures loading a rule project - as done by the rule engine step when there
+ * is no cached instance of the project - from a zip file, from a folder of xml
+ * files and from a single xml file.
+ *
+ * The single xml file contains one group, so compare it with the zip file and
+ * the folder with one group.
+ *
+ * @author uwe geercken - uwe.geercken@web.de
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RuleProjectLoadBenchmark
+{
+	@Param({"1", "20"})
+	public int numberOfGroups;
+
+	@Param({"20"})
+	public int numberOfRules;
+
+	private RuleProjects project;
+
+	@Setup
+	public void setup() throws Exception
+	{
+		project = new RuleProjects(numberOfGroups, numberOfRules);
+	}
+
+	@Benchmark
+	public BusinessRulesEngine zip() throws Exception
+	{
+		ZipFile zip = new ZipFile(project.getZipFile());
+		try
+		{
+			return new BusinessRulesEngine(zip);
+		}
+		finally
+		{
+			zip.close();
+		}
+	}
+
+	@Benchmark
+	public BusinessRulesEngine folder() throws Exception
+	{
+		// the folder only contains the xml files of the groups
+		File[] listOfFiles = project.getFolder().listFiles();
+		return new BusinessRulesEngine(listOfFiles);
+	}
+
+	@Benchmark
+	public BusinessRulesEngine singleXml() throws Exception
+	{
+		return new BusinessRulesEngine(project.getGroupFile(0).getAbsolutePath());
+	}
+}
@@ -0,0 +1,214 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.datamelt.kettle.benchmark;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaString;
+
+/**
+ * Generates the rule projects and rows used by the benchmarks, so that all
+ * runs use the same input without shipping rule files.
+ *
+ * A project consists of a number of rule groups, each with one subgroup and a
+ * number of rules checking the fields of the row. The rules of the groups with
+ * an even number pass, every second rule of the groups with an odd number fails,
+ * so all output types of the rule results step produce rows.
+ *
+ * Field number i of each row has the value "value_" + (i % 10).
+ *
+ * @author uwe geercken - uwe.geercken@web.de
+ */
+public class RuleProjects
+{
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final File folder;
+	private final int numberOfGroups;
+
+	/**
+	 * creates a project in a new temporary folder. the files are deleted
+	 * when the JVM exits.
+	 *
+	 * @param numberOfGroups	the number of rule groups
+	 * @param numberOfRules		the number of rules per group
+	 * @throws IOException		when the files can not be written
+	 */
+	public RuleProjects(int numberOfGroups, int numberOfRules) throws IOException
+	{
+		this.numberOfGroups = numberOfGroups;
+		File root = Files.createTempDirectory("jare-benchmark").toFile();
+		root.deleteOnExit();
+		folder = new File(root, "rules");
+		folder.mkdir();
+		folder.deleteOnExit();
+		for(int i=0;i<numberOfGroups;i++)
+		{
+			File file = getGroupFile(i);
+			writeGroup(file, i, numberOfRules);
+			file.deleteOnExit();
+		}
+		File zip = getZipFile();
+		writeZip(zip);
+		zip.deleteOnExit();
+	}
+
+	/**
+	 * @return	the folder containing one xml file per group
+	 */
+	public File getFolder()
+	{
+		return folder;
+	}
+
+	/**
+	 * @return	the zip file containing the xml files of all groups
+	 */
+	public File getZipFile()
+	{
+		return new File(folder.getParentFile(), "rules.zip");
+	}
+
+	/**
+	 * @param group	the number of the group
+	 * @return		the xml file of the group
+	 */
+	public File getGroupFile(int group)
+	{
+		return new File(folder, "group_" + group + ".xml");
+	}
+
+	/**
+	 * @param numberOfFields	the number of fields
+	 * @return					the names of the fields: field_0, field_1, ...
+	 */
+	public static String[] getFieldNames(int numberOfFields)
+	{
+		String[] names = new String[numberOfFields];
+		for(int i=0;i<numberOfFields;i++)
+		{
+			names[i] = "field_" + i;
+		}
+		return names;
+	}
+
+	/**
+	 * @param numberOfFields	the number of fields
+	 * @return					the metadata of a row with string fields
+	 */
+	public static RowMetaInterface getRowMeta(int numberOfFields)
+	{
+		RowMetaInterface rowMeta = new RowMeta();
+		String[] names = getFieldNames(numberOfFields);
+		for(int i=0;i<numberOfFields;i++)
+		{
+			rowMeta.addValueMeta(new ValueMetaString(names[i]));
+		}
+		return rowMeta;
+	}
+
+	/**
+	 * @param numberOfFields	the number of fields
+	 * @return					a row with the values checked by the rules
+	 */
+	public static Object[] getRow(int numberOfFields)
+	{
+		Object[] row = new Object[numberOfFields];
+		for(int i=0;i<numberOfFields;i++)
+		{
+			row[i] = "value_" + (i % 10);
+		}
+		return row;
+	}
+
+	private void writeGroup(File file, int group, int numberOfRules) throws IOException
+	{
+		Writer writer = new OutputStreamWriter(new FileOutputStream(file), UTF8);
+		try
+		{
+			writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+			writer.write("<rulegroup id=\"group_" + group + "\" description=\"benchmark group " + group + "\" validfrom=\"2000-01-01\" validuntil=\"\">\n");
+			writer.write("\t<subgroup id=\"subgroup_" + group + "\" description=\"\" intergroupoperator=\"and\" ruleoperator=\"and\">\n");
+			for(int i=0;i<numberOfRules;i++)
+			{
+				// the rules check the first ten fields, so they also apply to narrow rows
+				int field = i % 10;
+				boolean failed = group % 2==1 && i % 2==1;
+				String expected = "value_" + (failed ? field + 1 : field);
+				writer.write("\t\t<rule id=\"rule_" + group + "_" + i + "\" description=\"\">\n");
+				writer.write("\t\t\t<object classname=\"com.datamelt.util.RowFieldCollection\" method=\"getFieldValue\" parameter=\"field_" + field + "\" parametertype=\"string\" type=\"string\"/>\n");
+				writer.write("\t\t\t<execute>CheckIsEqual</execute>\n");
+				writer.write("\t\t\t<expected value=\"" + expected + "\" type=\"string\"/>\n");
+				writer.write("\t\t\t<message type=\"failed\">[field_" + field + "] is not equal to " + expected + "</message>\n");
+				writer.write("\t\t\t<message type=\"passed\">[field_" + field + "] is equal to " + expected + "</message>\n");
+				writer.write("\t\t</rule>\n");
+			}
+			writer.write("\t</subgroup>\n");
+			writer.write("</rulegroup>\n");
+		}
+		finally
+		{
+			writer.close();
+		}
+	}
+
+	private void writeZip(File zip) throws IOException
+	{
+		ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zip));
+		try
+		{
+			byte[] buffer = new byte[8192];
+			for(int i=0;i<numberOfGroups;i++)
+			{
+				File file = getGroupFile(i);
+				out.putNextEntry(new ZipEntry(file.getName()));
+				InputStream in = new FileInputStream(file);
+				try
+				{
+					int length;
+					while((length = in.read(buffer))>0)
+					{
+						out.write(buffer, 0, length);
+					}
+				}
+				finally
+				{
+					in.close();
+				}
+				out.closeEntry();
+			}
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+}
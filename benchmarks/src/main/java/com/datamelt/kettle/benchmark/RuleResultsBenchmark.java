@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.datamelt.kettle.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.pentaho.di.core.KettleEnvironment;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.trans.RowProducer;
+import org.pentaho.di.trans.Trans;
+import org.pentaho.di.trans.TransHopMeta;
+import org.pentaho.di.trans.TransMeta;
+import org.pentaho.di.trans.step.StepMeta;
+import org.pentaho.di.trans.steps.dummytrans.DummyTransMeta;
+import org.pentaho.di.trans.steps.injector.InjectorMeta;
+
+import com.datamelt.kettle.jare.JarePluginMeta;
+
+/**
+ * Measures the rule engine step in a transformation, per row, including the
+ * output of the detailed results to the rule results step for each of the
+ * output types:
+ *
+ * 0 - all groups, all rules
+ * 1 - failed groups, failed rules only
+ * 2 - failed groups, all rules
+ * 3 - passed groups, failed rules only
+ * 4 - passed groups, all rules
+ *
+ * The rows are injected into the step and its output is discarded by dummy
+ * steps. Each invocation runs a new transformation; the rule engine is taken
+ * from the cache after the first one.
+ *
+ * @author uwe geercken - uwe.geercken@web.de
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RuleResultsBenchmark
+{
+	private static final int ROWS = 10000;
+
+	private static final String STEP_INPUT = "input";
+	private static final String STEP_RULE_ENGINE = "rule engine";
+	private static final String STEP_MAIN = "main";
+	private static final String STEP_RULE_RESULTS = "rule results";
+
+	@Param({"0", "1", "2", "3", "4"})
+	public int outputType;
+
+	@Param({"10"})
+	public int numberOfFields;
+
+	@Param({"10"})
+	public int numberOfGroups;
+
+	@Param({"10"})
+	public int numberOfRules;
+
+	private TransMeta transMeta;
+	private RowMetaInterface rowMeta;
+	private Object[] row;
+
+	@Setup
+	public void setup() throws Exception
+	{
+		// register the step, which is otherwise found in the plugins folder of PDI
+		System.setProperty("KETTLE_PLUGIN_CLASSES", JarePluginMeta.class.getName());
+		KettleEnvironment.init(false);
+
+		RuleProjects project = new RuleProjects(numberOfGroups, numberOfRules);
+		rowMeta = RuleProjects.getRowMeta(numberOfFields);
+		row = RuleProjects.getRow(numberOfFields);
+
+		JarePluginMeta jareMeta = new JarePluginMeta();
+		jareMeta.setDefault();
+		jareMeta.setRuleFileName(project.getZipFile().getAbsolutePath());
+		jareMeta.setStepMain(STEP_MAIN);
+		jareMeta.setStepRuleResults(STEP_RULE_RESULTS);
+		jareMeta.setOutputType(outputType);
+
+		transMeta = new TransMeta();
+		transMeta.setName("rule results benchmark");
+		StepMeta input = new StepMeta(STEP_INPUT, new InjectorMeta());
+		StepMeta ruleEngine = new StepMeta(STEP_RULE_ENGINE, jareMeta);
+		StepMeta main = new StepMeta(STEP_MAIN, new DummyTransMeta());
+		StepMeta ruleResults = new StepMeta(STEP_RULE_RESULTS, new DummyTransMeta());
+		transMeta.addStep(input);
+		transMeta.addStep(ruleEngine);
+		transMeta.addStep(main);
+		transMeta.addStep(ruleResults);
+		transMeta.addTransHop(new TransHopMeta(input, ruleEngine));
+		transMeta.addTransHop(new TransHopMeta(ruleEngine, main));
+		transMeta.addTransHop(new TransHopMeta(ruleEngine, ruleResults));
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ROWS)
+	public long transformation() throws Exception
+	{
+		Trans trans = new Trans(transMeta);
+		trans.prepareExecution(null);
+		RowProducer producer = trans.addRowProducer(STEP_INPUT, 0);
+		trans.startThreads();
+		for(int i=0;i<ROWS;i++)
+		{
+			producer.putRow(rowMeta, row);
+		}
+		producer.finished();
+		trans.waitUntilFinished();
+		if(trans.getErrors()>0)
+		{
+			throw new Exception("the transformation failed, see the log for details");
+		}
+		return trans.getErrors();
+	}
+}
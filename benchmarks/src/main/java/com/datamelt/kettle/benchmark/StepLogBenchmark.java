@@ -0,0 +1,89 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.datamelt.kettle.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.pentaho.di.core.logging.KettleLogStore;
+import org.pentaho.di.core.logging.LogChannel;
+import org.pentaho.di.core.logging.LogLevel;
+
+import com.datamelt.kettle.util.StepLog;
+
+/**
+ * Measures the cost of the messages logged for each row with the default
+ * log level (basic), where none of the messages is written.
+ *
+ * Run with the gc profiler (-prof gc): the value of gc.alloc.rate.norm of the
+ * stepLog benchmark is zero bytes per operation, while the unguarded messages
+ * of the channel benchmark allocate the concatenated strings.
+ *
+ * @author uwe geercken - uwe.geercken@web.de
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StepLogBenchmark
+{
+	private LogChannel log;
+	private StepLog stepLog;
+	private long row;
+
+	@Setup
+	public void setup()
+	{
+		KettleLogStore.init();
+		log = new LogChannel("benchmark");
+		log.setLogLevel(LogLevel.BASIC);
+		stepLog = new StepLog(log);
+	}
+
+	@Benchmark
+	public void channel()
+	{
+		row++;
+		log.logDebug("number of fields of the row: " + row);
+		log.logDebug("running the ruleengine");
+		log.logRowlevel("number of fields updated by rule engine: " + row);
+		log.logDebug("adding ruleengine fields to output row");
+	}
+
+	@Benchmark
+	public void stepLog()
+	{
+		row++;
+		stepLog.logDebug("number of fields of the row: ", row);
+		stepLog.logDebug("running the ruleengine");
+		stepLog.logRowlevel("number of fields updated by rule engine: ", row);
+		stepLog.logDebug("adding ruleengine fields to output row");
+	}
+}
@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.datamelt.kettle.benchmark;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaDate;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaNumber;
+import org.pentaho.di.core.row.value.ValueMetaString;
+
+import com.datamelt.kettle.util.FieldConverter;
+import com.datamelt.kettle.util.ReusableRowFieldCollection;
+import com.datamelt.util.HeaderRow;
+
+/**
+ * Measures writing the fields updated by the rule engine back to the output
+ * row. The fields are of type string, integer, number and date in turns; the
+ * updated values of the integer and number fields have to be converted.
+ *
+ * @author uwe geercken - uwe.geercken@web.de
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WriteBackBenchmark
+{
+	@Param({"10", "300"})
+	public int numberOfFields;
+
+	@Param({"0", "1", "10"})
+	public int numberOfUpdatedFields;
+
+	private FieldConverter[] converters;
+	private ReusableRowFieldCollection fields;
+	private Object[] outputRow;
+
+	@Setup
+	public void setup() throws Exception
+	{
+		RowMetaInterface rowMeta = new RowMeta();
+		Object[] row = new Object[numberOfFields];
+		Object[] updatedValues = new Object[numberOfFields];
+		for(int i=0;i<numberOfFields;i++)
+		{
+			String name = "field_" + i;
+			switch(i % 4)
+			{
+				case 0:
+					rowMeta.addValueMeta(new ValueMetaString(name));
+					row[i] = "value_" + i;
+					updatedValues[i] = "updated_" + i;
+					break;
+				case 1:
+					rowMeta.addValueMeta(new ValueMetaInteger(name));
+					row[i] = Long.valueOf(i);
+					updatedValues[i] = Integer.valueOf(i + 1);
+					break;
+				case 2:
+					rowMeta.addValueMeta(new ValueMetaNumber(name));
+					row[i] = Double.valueOf(i);
+					updatedValues[i] = Long.valueOf(i + 1);
+					break;
+				default:
+					rowMeta.addValueMeta(new ValueMetaDate(name));
+					row[i] = new Date(0);
+					updatedValues[i] = new Date(1000L * i);
+			}
+		}
+		converters = FieldConverter.getConverters(rowMeta);
+		String[] fieldNames = rowMeta.getFieldNames();
+		fields = new ReusableRowFieldCollection(new HeaderRow(fieldNames), row);
+		fields.setFieldIndexes(ReusableRowFieldCollection.getFieldIndexes(fieldNames));
+		// the updated fields are spread over the row and updated by name, as the actions do
+		int updated = Math.min(numberOfUpdatedFields, numberOfFields);
+		for(int i=0;i<updated;i++)
+		{
+			int index = i * numberOfFields / updated;
+			fields.setFieldValue(fieldNames[index], updatedValues[index]);
+		}
+		outputRow = row.clone();
+	}
+
+	@Benchmark
+	public int writeUpdatedFields() throws Exception
+	{
+		return FieldConverter.writeUpdatedFields(fields, converters, outputRow);
+	}
+}
@@ -20,20 +20,22 @@ package com.datamelt.kettle.jare;
 
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FilenameFilter;
-import java.math.BigDecimal;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
-import java.util.Date;
-import java.util.zip.ZipFile;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 
 import org.pentaho.di.core.RowSet;
 import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.exception.KettleStepException;
 import org.pentaho.di.core.row.RowDataUtil;
+import org.pentaho.di.core.row.RowMeta;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.core.row.ValueMetaInterface;
 import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaNumber;
 import org.pentaho.di.core.row.value.ValueMetaString;
 import org.pentaho.di.trans.Trans;
 import org.pentaho.di.trans.TransMeta;
@@ -44,14 +46,15 @@ import org.pentaho.di.trans.step.StepMeta;
 import org.pentaho.di.trans.step.StepMetaInterface;
 import org.xml.sax.SAXException;
 
+import com.datamelt.kettle.util.FieldConverter;
+import com.datamelt.kettle.util.ReusableRowFieldCollection;
+import com.datamelt.kettle.util.StepLog;
 import com.datamelt.rules.core.RuleExecutionResult;
 import com.datamelt.rules.core.RuleGroup;
 import com.datamelt.rules.core.RuleSubGroup;
 import com.datamelt.rules.core.XmlRule;
 import com.datamelt.rules.engine.BusinessRulesEngine;
 import com.datamelt.util.HeaderRow;
-import com.datamelt.util.RowField;
-import com.datamelt.util.RowFieldCollection;
 
 /**
  * Plugin to check data of incoming rows against business rules
@@ -68,6 +71,11 @@ import com.datamelt.util.RowFieldCollection;
  * which will show one line per rule. the output type will determine which
  * rows are output: all rules, failed ones or passed ones.
  * 
+ * Instead of the detailed results, statistics can be written to a third step:
+ * one row per group, subgroup and rule with the number of rows it was evaluated,
+ * failed and skipped for. The statistics are output at the end of the input
+ * and optionally in regular intervals.
+ * 
  * The business rules and logic can be orchestrated using the Business Rules
  * Maintenance Tool - a web application freely available under the apache license.
  * 
@@ -98,19 +106,83 @@ public class JarePlugin extends BaseStep implements StepInterface
 	private static final String FIELDNAME_RULEENGINE_RULES = "ruleengine_rules";
 	private static final String FIELDNAME_RULEENGINE_RULES_FAILED = "ruleengine_rules_failed";
 	private static final String FIELDNAME_RULEENGINE_ACTIONS = "ruleengine_actions";
-
-	private BusinessRulesEngine ruleEngine;
+	private static final String FIELDNAME_RULEENGINE_TRUNCATED = "ruleengine_truncated";
 	
+	// fields for the rule statistics step
+	private static final String FIELDNAME_RULEENGINE_EVALUATED = "ruleengine_evaluated";
+	private static final String FIELDNAME_RULEENGINE_FAILED = "ruleengine_failed";
+	private static final String FIELDNAME_RULEENGINE_SKIPPED = "ruleengine_skipped";
+	private static final String FIELDNAME_RULEENGINE_FAILURE_RATE = "ruleengine_failure_rate";
+	
+	// values of the failed fields of the detailed output, indexed by the failed flag
+	private static final Long[] FAILED_VALUES = new Long[] {Long.valueOf(0), Long.valueOf(1)};
+	// label of the rows passed to the rule engine, if the log level is below detailed
+	private static final String ROW_LABEL = "row";
+	// extension of the file next to the rule project containing the learned order of the rulegroups
+	private static final String RULEGROUP_ORDER_FILE_EXTENSION = ".order";
+
     private JarePluginData data;
 	private JarePluginMeta meta;	
 	
 	
 	private RowMetaInterface inputRowMeta;
 	private HeaderRow header;
+	// indexes of the fields by name, used for the fields referenced by the rules
+	private Map<String, Integer> fieldIndexes;
+	// names of the fields referenced by the rules, checked when the first row arrives
+	private RuleFieldReferences fieldReferences;
+	// if the results of the rule engine are cached. the caches are created when the first row arrives
+	private boolean cacheResults;
+	private FieldConverter[] converters;
 	private int inputSize=0;
 	private String environmentFilename;
 	private String realFilename;
 	
+	// output for the main step and for the rule engine results (details) step
+	private RowSet rowsetMain;
+	private RowSet rowsetRuleResults;
+	private RowSet rowsetRuleStatistics;
+	// output for the rows without failed groups, with failed groups and with only skipped
+	// groups. the rowset of the main step, if no step is selected for the result
+	private RowSet rowsetPassed;
+	private RowSet rowsetFailed;
+	private RowSet rowsetSkipped;
+	private boolean routeByResult;
+	// limits the failed rule results output per rule or null if they are not limited
+	private RuleResultsLimiter ruleResultsLimiter;
+	// time when the rule statistics are output next or 0 if they are only output at the end
+	private long nextRuleStatistics=0;
+	
+	// reloads the rule project when it is changed
+	private RuleFileWatcher ruleFileWatcher;
+	private int numberOfReloads=0;
+	
+	// logging of the messages for each row
+	private StepLog stepLog;
+	
+	// rule engine and fields of the step thread or - if the rows are processed
+	// on multiple threads - of each thread
+	private Evaluation[] evaluations;
+	// threads running the rule engine and the maximum number of rows submitted to them
+	private RuleEngineWorkers workers;
+	private int maximumNumberOfTasks;
+	// the changed rule project the threads switch to before their next row
+	private volatile RuleFileWatcher.ReloadedProject reloadedProject;
+	
+	// metrics of sampled rows or null if no metrics are collected
+	private RuleEngineMetrics metrics;
+	// number of rules with the most failures logged when the step is finished
+	private static final int MAXIMUM_RULE_STATISTICS_LOGGED = 20;
+	
+	// output of groups and rules to the rule results step as determined by the
+	// output type, indexed by their failed flag
+	private boolean[] outputGroup;
+	private boolean[] outputRule;
+	// index of the key field of the rule results rows or -1 to output all input fields
+	private int keyFieldIndex=-1;
+	// index of the first field added to the rule results rows
+	private int ruleResultsOffset;
+	
 	public JarePlugin(StepMeta s, StepDataInterface stepDataInterface, int c, TransMeta t, Trans dis)
 	{
 		super(s,stepDataInterface,c,t,dis);
@@ -121,32 +193,33 @@ public class JarePlugin extends BaseStep implements StepInterface
 		meta = (JarePluginMeta)smi;
 	    data = (JarePluginData)sdi;
 	    
-	    // output for the main step
-	    RowSet rowsetMain =  findOutputRowSet(meta.getStepMain());
-	    //output for the rule engine results (details) step
-	    RowSet rowsetRuleResults = null;
-	    
-	    try
+	    // when no rows are waiting, output the rows processed by the threads,
+	    // so that rows are not held back while the input is idle
+	    if(workers!=null && !first)
 	    {
-	    	// check that the rule results (details) step is defined
-	    	// and it is not set to "no output"
-	    	// and it is not the same as the main output step
-	    	if(meta.getStepRuleResults()!=null && !meta.getStepRuleResults().equals(Messages.getString("JarePluginDialog.Step.RuleResults.Type")) && ! meta.getStepRuleResults().equals(meta.getStepMain()))
+	    	while(rowsetInputSize()==0 && workers.getNumberOfTasks()>0 && !isStopped())
 	    	{
-	    		rowsetRuleResults = findOutputRowSet(meta.getStepRuleResults()); 
+	    		if(!putCompletedRows(workers.getNumberOfTasks() - 1))
+	    		{
+	    			return false;
+	    		}
 	    	}
 	    }
-	    catch(Exception ex)
-	    {
-	    	// when there is no rule results step selected or null
-	    	// nothing is output
-	    }
 	    
 	    // get the row
 		Object[] r=getRow();
 		// if no more rows, we are done
 		if (r==null)
 		{
+			// wait for the rows still processed by the threads
+			if(workers!=null && !putCompletedRows(0))
+			{
+				return false;
+			}
+			if(rowsetRuleStatistics!=null && !putRuleStatistics())
+			{
+				return false;
+			}
 			setOutputDone();
 			return false;
 		}
@@ -161,166 +234,303 @@ public class JarePlugin extends BaseStep implements StepInterface
             data.outputRowMeta = (RowMetaInterface)getInputRowMeta().clone();
             addFieldstoRowMeta(data.outputRowMeta, getStepname(), false);
             
-            // for output step with rule results
-            data.outputRowMetaRuleResults = (RowMetaInterface)getInputRowMeta().clone();
+            // for output step with rule results. if a key field is defined, only the key
+            // field is output instead of all fields of the input row
+            String keyField = environmentSubstitute(meta.getRuleResultsKeyField());
+            if(keyField!=null && keyField.trim().length()>0)
+            {
+            	keyFieldIndex = getInputRowMeta().indexOfValue(keyField);
+            	if(keyFieldIndex<0)
+            	{
+            		log.logError("the key field for the rule results was not found in the input fields: " + keyField);
+            		setStopped(true);
+               		setOutputDone();
+               		setErrors(1);
+               		stopAll();
+               		return false;
+            	}
+            	data.outputRowMetaRuleResults = new RowMeta();
+            	data.outputRowMetaRuleResults.addValueMeta(getInputRowMeta().getValueMeta(keyFieldIndex).clone());
+            	ruleResultsOffset = 1;
+            }
+            else
+            {
+            	data.outputRowMetaRuleResults = (RowMetaInterface)getInputRowMeta().clone();
+            	ruleResultsOffset = inputSize;
+            }
             addFieldstoRowMeta(data.outputRowMetaRuleResults, getStepname(), true);
+            outputGroup = getOutputGroup(meta.getOutputType());
+            outputRule = getOutputRule(meta.getOutputType());
             
             inputRowMeta = getInputRowMeta();
             // names of the fields
             header = new HeaderRow(inputRowMeta.getFieldNames());
+            // converters for the values updated by the rule engine
+            converters = FieldConverter.getConverters(inputRowMeta);
             log.logDebug("number of header fields: " + header.getNumberOfFields());
+            fieldIndexes = ReusableRowFieldCollection.getFieldIndexes(inputRowMeta.getFieldNames());
             
-            // filename of the rule engine file might return an URL
-            environmentFilename = environmentSubstitute(meta.getRuleFileName());
-            try
+            // the rules must only reference fields of the input rows
+            if(!checkFieldReferences(fieldReferences, evaluations[0].ruleEngine))
             {
-            	URL url = new URL(environmentFilename);
-            	realFilename = url.getPath();
-            }
-            catch(MalformedURLException murl)
-            {
-            	realFilename = environmentFilename;
+            	log.logError("the rule project references fields that are not available in the input rows: " + realFilename);
+        		setStopped(true);
+           		setOutputDone();
+           		setErrors(1);
+           		stopAll();
+           		return false;
             }
             
-            try
+            // the results are cached by the values of the fields referenced by the rules
+            if(cacheResults)
             {
-            	log.logDebug("trying to use file for the ruleengine: " + realFilename);
-            	
-            	File f = new File(realFilename); 
-            	if(!f.exists())
-            	{
-            		throw new FileNotFoundException("the specified rule file was not found: " + realFilename);
-            	}
-            	// we can use a zip file containing all rules
-            	if(f.isFile() && realFilename.endsWith(".zip"))
+            	int[] keyFields = getResultCacheKeyFields(fieldReferences, evaluations[0].ruleEngine);
+            	for(int i=0;i<evaluations.length;i++)
             	{
-            		log.logDebug("found zip file to read xml rule files: " + realFilename);
-            		ZipFile zip = new ZipFile(realFilename);
-            		ruleEngine = new BusinessRulesEngine(zip);
+            		setResultCache(evaluations[i], keyFields);
             	}
-            	// we can also use a directory and read all files from there
-            	else if(f.isDirectory())
-            	{
-            		// use a filter - we only want to read xml files
-            		log.logDebug("found folder to read xml rules files: " + realFilename);
-            		FilenameFilter fileNameFilter = new FilenameFilter()
-            		{
-                        @Override
-                        public boolean accept(File dir, String name) {
-                           if(name.lastIndexOf('.')>0)
-                           {
-                              // get last index for '.' char
-                              int lastIndex = name.lastIndexOf('.');
-                              
-                              // get extension
-                              String str = name.substring(lastIndex);
-                              
-                              // match path name extension
-                              if(str.equals(".xml"))
-                              {
-                                 return true;
-                              }
-                           }
-                           return false;
-                        }
-                     };
-                     // get list of files for the given filter
-            		File[] listOfFiles = f.listFiles(fileNameFilter);
-            		// initialize rule engine with list of files
-            		ruleEngine = new BusinessRulesEngine(listOfFiles);
-            	}
-            	else if(f.isFile())
-            	{
-            		log.logDebug("found single xml rules file: " + realFilename);
-            		ruleEngine = new BusinessRulesEngine(realFilename);
-            	}
-            	log.logBasic("initialized business rule engine version: " + BusinessRulesEngine.getVersion() + " using: " + realFilename);
-            	if(ruleEngine.getNumberOfGroups()==0)
-        		{
-        			log.logBasic("attention: project zip file contains no rulegroups or no ruleroups that are active based on the valid from/until date");
-        		}
-            }
-            catch(SAXException se)
-            {
-            	log.logError(se.toString());
-            	setStopped(true);
-            	setOutputDone();
-            	setErrors(1);
-            	return false;
-            }
-            catch(FileNotFoundException fnf)
-            {
-            	log.logError(fnf.toString());
-            	setStopped(true);
-            	setOutputDone();
-            	setErrors(1);
-            	return false;
-            }
-            catch(Exception ex)
-            {
-            	log.logError("error initializing business rule engine with rule file: " + realFilename, ex.toString());
-            	setStopped(true);
-            	setOutputDone();
-            	setErrors(1);
-            	return false;
             }
             
-            // in case we do a detailed output we need to preserve the results
-            // of the ruleengine execution.
-            if(rowsetRuleResults!=null)
-            {
-            	ruleEngine.setPreserveRuleExcecutionResults(true);
-            }
-            else
-            {
-            	ruleEngine.setPreserveRuleExcecutionResults(false);
-            }
             first = false;
         }
-
+		
+		// output the rule statistics of the interval
+		if(nextRuleStatistics>0 && System.currentTimeMillis()>=nextRuleStatistics)
+		{
+			if(!putRuleStatistics())
+			{
+				return false;
+			}
+			nextRuleStatistics = System.currentTimeMillis() + meta.getRuleStatisticsInterval() * 1000L;
+		}
+		
+		// switch to the changed rule project between two rows
+		if(ruleFileWatcher!=null)
+		{
+			RuleFileWatcher.ReloadedProject project = ruleFileWatcher.poll();
+			// the changed rule project is not used, if it references unknown fields
+			if(project!=null && !checkFieldReferences(project.getFieldReferences(), project.getEngine(0)))
+			{
+				log.logError("the changed rule project references fields that are not available in the input rows, continuing with the current rules: " + realFilename);
+				project.release();
+				project = null;
+			}
+			if(project!=null)
+			{
+				// the statistics only apply to the rules they were counted for
+				if(rowsetRuleStatistics!=null && !putRuleStatistics())
+				{
+					project.release();
+					return false;
+				}
+				swapRuleEngine(project);
+			}
+		}
+		
+		// run the rule engine for the row on one of the threads. the rows completed
+		// meanwhile are output, and the step waits if too many rows are submitted
+		if(workers!=null)
+		{
+			if(!putCompletedRows(maximumNumberOfTasks - 1))
+			{
+				return false;
+			}
+			workers.submit(r, getLinesRead(), rowsetRuleResults!=null);
+			return true;
+		}
+		
+		// run the rule engine for the row
+		Object[] outputRow = runRuleEngine(r, getLinesRead(), evaluations[0], null);
+		if(outputRow==null)
+		{
+			return false;
+		}
+		
+		// output the row to the main step
+        try
+        {
+        	// original line with only one output step
+	        // putRow(data.outputRowMeta, outputRow);
+        	putRowTo(data.outputRowMeta, outputRow, getOutputRowSet(outputRow));
+        }
+        catch(Exception ex)
+        {
+       		log.logError("error output to main step", ex.toString());
+       		//log.logError(Const.getStackTracker(ex));
+       		setStopped(true);
+       		setOutputDone();
+       		setErrors(1);
+       		stopAll();
+        	return false;
+        }
+		return true;
+	}
+	
+	/**
+	 * outputs the rows processed by the threads. rows that are completed are always
+	 * output; the method waits for more rows only until no more than the given
+	 * number of rows are submitted.
+	 * 
+	 * @param maximumTasks	the number of rows that may remain submitted
+	 * @return				false if an error occurred
+	 */
+	private boolean putCompletedRows(int maximumTasks) throws KettleException
+	{
+		while(workers.getNumberOfTasks()>0)
+		{
+			RuleEngineWorkers.RowTask task;
+			try
+			{
+				task = workers.getNumberOfTasks()>maximumTasks ? workers.take() : workers.poll();
+			}
+			catch(InterruptedException ie)
+			{
+				throw new KettleException("interrupted while waiting for the rule engine threads", ie);
+			}
+			if(task==null)
+			{
+				return true;
+			}
+			// the error was already logged if the output row is null without an exception
+			if(task.getOutputRow()==null)
+			{
+				if(task.getException()!=null)
+				{
+					log.logError("error running the rule engine for row number: " + task.getLineNumber(), task.getException().toString());
+				}
+	       		setStopped(true);
+	       		setOutputDone();
+	       		setErrors(1);
+	       		stopAll();
+	        	return false;
+			}
+	        try
+	        {
+	        	if(task.getRuleResults()!=null)
+	        	{
+	        		for(int i=0;i<task.getRuleResults().size();i++)
+	        		{
+	        			putRowTo(data.outputRowMetaRuleResults, task.getRuleResults().get(i), rowsetRuleResults);
+	        		}
+	        	}
+	        	putRowTo(data.outputRowMeta, task.getOutputRow(), getOutputRowSet(task.getOutputRow()));
+	        }
+	        catch(Exception ex)
+	        {
+	       		log.logError("error output to main step", ex.toString());
+	       		setStopped(true);
+	       		setOutputDone();
+	       		setErrors(1);
+	       		stopAll();
+	        	return false;
+	        }
+		}
+		return true;
+	}
+	
+	/**
+	 * runs the rule engine for the row, outputs the detailed results to the rule results
+	 * step and adds the results of the rule engine to the row.
+	 * 
+	 * @param r				the input row
+	 * @param lineNumber	the number of the input row
+	 * @param evaluation	the rule engine and fields of the thread
+	 * @param ruleResults	list for the rule results rows or null to output them directly
+	 * @return				the output row for the main step or null if an error occurred
+	 */
+	private Object[] runRuleEngine(Object[] r, long lineNumber, Evaluation evaluation, List<Object[]> ruleResults) throws KettleException
+	{
+		BusinessRulesEngine engine = evaluation.ruleEngine;
+		
         // generate output row, make it correct size
         Object[] outputRow = RowDataUtil.resizeArray(r, data.outputRowMeta.size());
         
-        // generate output row for rule results, make it correct size
-        Object[] outputRowRuleResults = RowDataUtil.resizeArray(r, data.outputRowMetaRuleResults.size());
+        // generate output row for rule results, make it correct size. only required if the
+        // rule results rows contain all input fields. the rows with only the key field are
+        // allocated for each rule result
+        Object[] outputRowRuleResults = rowsetRuleResults!=null && keyFieldIndex<0 ? RowDataUtil.resizeArray(r, data.outputRowMetaRuleResults.size()) : r;
         
-        // object/collection that holds all the fields and their values required for running the rule engine
-        RowFieldCollection fields = new RowFieldCollection(header,outputRow);
+        // rows with the same values in the fields referenced by the rules have the same results
+        if(evaluation.resultCache!=null)
+        {
+        	ResultCache.Result cachedResult = evaluation.resultCache.get(r);
+        	if(cachedResult!=null)
+        	{
+        		return putCachedResult(cachedResult, outputRow, outputRowRuleResults, ruleResults, evaluation);
+        	}
+        }
         
-        log.logDebug("number of fields of the row: " + fields.getNumberOfFields());
+        // object/collection that holds all the fields and their values required for running the rule engine.
+        // it is created once and then set to the values of each row
+        if(evaluation.fields==null)
+        {
+        	evaluation.fields = new ReusableRowFieldCollection(header,outputRow);
+        	evaluation.fields.setFieldIndexes(fieldIndexes);
+        }
+        else
+        {
+        	evaluation.fields.reset(outputRow);
+        }
+        ReusableRowFieldCollection fields = evaluation.fields;
+        
+        // run the rulegroups one after the other until a group fails
+        if(evaluation.groupEngines!=null)
+        {
+        	return runRuleGroups(outputRow, lineNumber, evaluation);
+        }
+        
+        stepLog.logDebug("number of fields of the row: ", fields.getNumberOfFields());
         // run the rule engine
         try
         {
-        	log.logDebug("running the ruleengine");
-        	ruleEngine.run("row number: " + getLinesRead() ,fields);
-        	if(log.isDetailed())
+        	stepLog.logDebug("running the ruleengine");
+        	if(metrics!=null && metrics.isSampled(lineNumber))
         	{
-        		for(int i=0;i<ruleEngine.getGroups().size();i++)
+        		long started = System.nanoTime();
+        		engine.run(getRowLabel(lineNumber), fields);
+        		evaluation.metricsCounters = metrics.getEngineCounters(evaluation.metricsCounters, engine);
+        		metrics.record(evaluation.metricsCounters, System.nanoTime() - started);
+        	}
+        	else
+        	{
+        		engine.run(getRowLabel(lineNumber), fields);
+        	}
+        	if(rowsetRuleStatistics!=null)
+        	{
+        		if(evaluation.statistics==null)
+        		{
+        			evaluation.statistics = new RuleStatistics(engine);
+        		}
+        		evaluation.statistics.count(engine);
+        	}
+        	if(stepLog.isDetailed())
+        	{
+        		for(int i=0;i<engine.getGroups().size();i++)
         		{
-   					String message = "line: " +getLinesRead() + ", group: " + ruleEngine.getGroups().get(i).getId() + ", failed: " + ruleEngine.getGroups().get(i).getFailedAsString();
+   					String message = "line: " +lineNumber + ", group: " + engine.getGroups().get(i).getId() + ", failed: " + engine.getGroups().get(i).getFailedAsString();
    					log.logDetailed(message);
         		}
         	}
-        	else if(log.isDebug())
+        	else if(stepLog.isDebug())
         	{
-        		for(int i=0;i<ruleEngine.getGroups().size();i++)
+        		for(int i=0;i<engine.getGroups().size();i++)
         		{
-        			for (int f=0;f<ruleEngine.getGroups().get(i).getSubGroups().size();f++)
+        			for (int f=0;f<engine.getGroups().get(i).getSubGroups().size();f++)
         			{
-    					String message = "line: " +getLinesRead() + ", group: " + ruleEngine.getGroups().get(i).getId()+ ", failed: " + ruleEngine.getGroups().get(i).getFailedAsString() + ", subgroup: " + ruleEngine.getGroups().get(i).getSubGroups().get(f).getId() + ", failed: " + ruleEngine.getGroups().get(i).getSubGroups().get(f).getFailedAsString();
+    					String message = "line: " +lineNumber + ", group: " + engine.getGroups().get(i).getId()+ ", failed: " + engine.getGroups().get(i).getFailedAsString() + ", subgroup: " + engine.getGroups().get(i).getSubGroups().get(f).getId() + ", failed: " + engine.getGroups().get(i).getSubGroups().get(f).getFailedAsString();
     					log.logDebug(message);
         			}
         		}
-        	}        	
-        	else if(log.isRowLevel())
+        	}
+        	else if(stepLog.isRowLevel())
         	{
-        		for(int i=0;i<ruleEngine.getGroups().size();i++)
+        		for(int i=0;i<engine.getGroups().size();i++)
         		{
-        			for (int f=0;f<ruleEngine.getGroups().get(i).getSubGroups().size();f++)
+        			for (int f=0;f<engine.getGroups().get(i).getSubGroups().size();f++)
         			{
-        				for(int g=0;g<ruleEngine.getGroups().get(i).getSubGroups().get(f).getRulesCollection().size();g++)
+        				for(int g=0;g<engine.getGroups().get(i).getSubGroups().get(f).getRulesCollection().size();g++)
         				{
-        					String message = "line: " +getLinesRead() + ", group: " + ruleEngine.getGroups().get(i).getId() + ", subgroup: " + ruleEngine.getGroups().get(i).getSubGroups().get(f).getId() + ", rule: " + ruleEngine.getGroups().get(i).getSubGroups().get(f).getRulesCollection().get(g).getId() + ", failed: " + ruleEngine.getGroups().get(i).getSubGroups().get(f).getResults().get(g).getFailedAsString() + ", " + ruleEngine.getGroups().get(i).getSubGroups().get(f).getResults().get(g).getMessage();
+        					String message = "line: " +lineNumber + ", group: " + engine.getGroups().get(i).getId() + ", subgroup: " + engine.getGroups().get(i).getSubGroups().get(f).getId() + ", rule: " + engine.getGroups().get(i).getSubGroups().get(f).getRulesCollection().get(g).getId() + ", failed: " + engine.getGroups().get(i).getSubGroups().get(f).getResults().get(g).getFailedAsString() + ", " + engine.getGroups().get(i).getSubGroups().get(f).getResults().get(g).getMessage();
         					log.logRowlevel(message);
         				}
         			}
@@ -331,108 +541,55 @@ public class JarePlugin extends BaseStep implements StepInterface
         {
        		log.logError(ex.getMessage());
        		//log.logError(Const.getStackTracker(ex));
-       		setStopped(true);
-       		setOutputDone();
-       		setErrors(1);
-       		stopAll();
-        	return false;
+       		return stopOnRowError(evaluation);
         }
         
         // process updated fields by the rule engine.
         // if nothing was updated we skip this
+        int numberOfUpdatedFields;
         try
         {
-        	// process only if the collection of fields was changed
-        	if(fields.isCollectionUpdated())
+        	// only the updated fields are converted to the type of the output field
+        	numberOfUpdatedFields = FieldConverter.writeUpdatedFields(fields, converters, outputRow);
+        	if(numberOfUpdatedFields>0)
         	{
-	        	for(int i=0;i<inputSize;i++)
-	            {
-	           		ValueMetaInterface vmi = inputRowMeta.searchValueMeta(header.getFieldName(i));
-	           		int fieldType = vmi.getType();
-	           		RowField rf = fields.getField(i);
-	           		// if the field has been updated, then get the value appropriate to the type
-	           		if(rf.isUpdated())
-	           		{
-	           			log.logRowlevel("field: " + rf.getName() + " [" + fieldType + "] was updated by rule engine");
-	           			if(fieldType == ValueMetaInterface.TYPE_BOOLEAN)
-		           		{
-		           			outputRow[i] = rf.getValue();
-		           		}
-	           			else if(fieldType == ValueMetaInterface.TYPE_STRING)
-		           		{
-		           			outputRow[i] = rf.getValue();
-		           		}
-		           		else if(fieldType == ValueMetaInterface.TYPE_INTEGER) 
-		           		{
-		           			outputRow[i] = (Long)rf.getValue();
-		           		}
-		           		else if(fieldType == ValueMetaInterface.TYPE_NUMBER)
-		           		{
-		           			if(rf.getValue() instanceof Long)
-		           			{
-		           				outputRow[i] = ((Long)rf.getValue()).doubleValue();
-		           			}
-		           			else if(rf.getValue() instanceof Double)
-		           			{
-		           				outputRow[i] = rf.getValue();
-		           			}
-		           			else if(rf.getValue() instanceof Integer)
-		           			{
-		           				outputRow[i] = ((Integer)rf.getValue()).doubleValue();
-		           			}
-		           		}
-		           		else if(fieldType == ValueMetaInterface.TYPE_BIGNUMBER) 
-		           		{
-		           			if(rf.getValue() instanceof Long)
-		           			{
-		           				outputRow[i] = new BigDecimal((Long)rf.getValue());
-		           			}
-		           			else if(rf.getValue() instanceof Double)
-		           			{
-		           				outputRow[i] = new BigDecimal((Double)rf.getValue());
-		           			}
-		           			else if(rf.getValue() instanceof Integer)
-		           			{
-		           				outputRow[i] = new BigDecimal((Integer)rf.getValue());
-		           			} 
-		           		}
-		           		else if(fieldType == ValueMetaInterface.TYPE_DATE)
-		           		{
-		           			outputRow[i] = (Date)rf.getValue(); 
-		           		}
-		           		else
-		           		{
-		           			throw new Exception("invalid output field type: " + fieldType);
-		           		}
-	           		}
-	            }
+        		stepLog.logRowlevel("number of fields updated by rule engine: ", numberOfUpdatedFields);
         	}
         }
         catch(Exception ex)
         {
        		log.logError("error updating output fields", ex.toString());
-       		setStopped(true);
-       		setOutputDone();
-       		setErrors(1);
-       		stopAll();
-        	return false;
+       		return stopOnRowError(evaluation);
         }
         
+        // values of the fields of the rule results rows and the counters of their rules for
+        // the limit of the failed results, if the results are cached
+        List<Object[]> cachedRuleResults = evaluation.resultCache!=null && rowsetRuleResults!=null ? new ArrayList<Object[]>() : null;
+        List<RuleResultsLimiter.RuleCounter> cachedRuleCounters = cachedRuleResults!=null && ruleResultsLimiter!=null ? new ArrayList<RuleResultsLimiter.RuleCounter>() : null;
+        
         // output the detailed rule results 
         try
         {
         	// only if a rule results step is defined and not if we output only
         	// failed groups but there are none
-	        if(rowsetRuleResults!= null && !(meta.getOutputType()==1 && ruleEngine.getNumberOfGroupsFailed()==0))
+	        if(rowsetRuleResults!= null && !(!outputGroup[0] && engine.getNumberOfGroupsFailed()==0))
 	        {
+	        	// time and counters of the rules for limiting the failed results output per rule
+	        	long now = 0;
+	        	if(ruleResultsLimiter!=null)
+	        	{
+	        		now = System.currentTimeMillis();
+	        		evaluation.limiterCounters = ruleResultsLimiter.getEngineCounters(evaluation.limiterCounters, engine);
+	        	}
 	        	// loop over all groups
-	        	log.logDebug("looping all rulegroups");
-	        	for(int f=0;f<ruleEngine.getGroups().size();f++)
+	        	stepLog.logDebug("looping all rulegroups");
+	        	for(int f=0;f<engine.getGroups().size();f++)
 	            {
-	            	RuleGroup group = ruleEngine.getGroups().get(f);
+	            	RuleGroup group = engine.getGroups().get(f);
 	            	// output groups with all rules depending on the output type selection
-		        	if(meta.getOutputType()==0 || (meta.getOutputType()==1 && group.getFailed()==1) || (meta.getOutputType()==2 && group.getFailed()==1) || (meta.getOutputType()==3 && group.getFailed()==0) || (meta.getOutputType()==4 && group.getFailed()==0))
+		        	if(outputGroup[group.getFailed()])
 	            	{
+		        		Long groupFailed = FAILED_VALUES[group.getFailed()];
 		            	// loop over all subgroups
 		        		for(int g=0;g<group.getSubGroups().size();g++)
 		                {
@@ -443,25 +600,43 @@ public class JarePlugin extends BaseStep implements StepInterface
 		                    {
 		            			RuleExecutionResult result = results.get(h);
 		            			XmlRule rule = result.getRule();
-		            			// cloning the original row as we will use the same input row for
-		            			// multiple output rows. without cloning, there are errors with
-		            			// the output rows.
-		            			if(meta.getOutputType()==0 || (meta.getOutputType()==1 && rule.getFailed()==1)|| (meta.getOutputType()==2) || (meta.getOutputType()==3 && rule.getFailed()==1) || (meta.getOutputType()==4))
+		            			if(outputRule[rule.getFailed()])
 		            			{
-			            			Object[] outputRowRuleResultsCloned = outputRowRuleResults.clone();
-		            				outputRowRuleResultsCloned[inputSize] = group.getId();
-		            				outputRowRuleResultsCloned[inputSize+1] = (long)group.getFailed();
-		            				outputRowRuleResultsCloned[inputSize+2] = subgroup.getId();
-		            				outputRowRuleResultsCloned[inputSize+3] = (long)subgroup.getFailed();
-		            				outputRowRuleResultsCloned[inputSize+4] = subgroup.getLogicalOperatorSubGroupAsString();
-		            				outputRowRuleResultsCloned[inputSize+5] = subgroup.getLogicalOperatorRulesAsString();
-		            				outputRowRuleResultsCloned[inputSize+6] = rule.getId();
-		            				outputRowRuleResultsCloned[inputSize+7] = (long)rule.getFailed();
-		            				outputRowRuleResultsCloned[inputSize+8] = result.getMessage();
-		            				// put the row to the output step
-			                    	putRowTo(data.outputRowMetaRuleResults, outputRowRuleResultsCloned, rowsetRuleResults);
-			                    	// set the cloned row to null
-			                    	outputRowRuleResultsCloned=null;
+		            				RuleResultsLimiter.RuleCounter ruleCounter = ruleResultsLimiter!=null ? evaluation.limiterCounters.getRuleCounter(f, g, h, rule) : null;
+		            				// the results are cached before the limit is applied, as the limit depends on the time
+		            				if(cachedRuleResults!=null)
+		            				{
+		            					cachedRuleResults.add(new Object[] {group.getId(), groupFailed, subgroup.getId(), FAILED_VALUES[subgroup.getFailed()], subgroup.getLogicalOperatorSubGroupAsString(), subgroup.getLogicalOperatorRulesAsString(), rule.getId(), FAILED_VALUES[rule.getFailed()], result.getMessage()});
+		            					if(cachedRuleCounters!=null)
+		            					{
+		            						cachedRuleCounters.add(ruleCounter);
+		            					}
+		            				}
+		            				if(ruleResultsLimiter==null || rule.getFailed()==0 || ruleResultsLimiter.accept(ruleCounter, now))
+		            				{
+			            				// cloning the original row as we will use the same input row for
+				            			// multiple output rows. without cloning, there are errors with
+				            			// the output rows.
+			            				Object[] outputRowRuleResultsCloned = getRuleResultsRow(outputRowRuleResults);
+			            				outputRowRuleResultsCloned[ruleResultsOffset] = group.getId();
+			            				outputRowRuleResultsCloned[ruleResultsOffset+1] = groupFailed;
+			            				outputRowRuleResultsCloned[ruleResultsOffset+2] = subgroup.getId();
+			            				outputRowRuleResultsCloned[ruleResultsOffset+3] = FAILED_VALUES[subgroup.getFailed()];
+			            				outputRowRuleResultsCloned[ruleResultsOffset+4] = subgroup.getLogicalOperatorSubGroupAsString();
+			            				outputRowRuleResultsCloned[ruleResultsOffset+5] = subgroup.getLogicalOperatorRulesAsString();
+			            				outputRowRuleResultsCloned[ruleResultsOffset+6] = rule.getId();
+			            				outputRowRuleResultsCloned[ruleResultsOffset+7] = FAILED_VALUES[rule.getFailed()];
+			            				outputRowRuleResultsCloned[ruleResultsOffset+8] = result.getMessage();
+			            				// put the row to the output step
+				                    	if(ruleResults!=null)
+				                    	{
+				                    		ruleResults.add(outputRowRuleResultsCloned);
+				                    	}
+				                    	else
+				                    	{
+				                    		putRowTo(data.outputRowMetaRuleResults, outputRowRuleResultsCloned, rowsetRuleResults);
+				                    	}
+		            				}
 		            			}
 		                    }
 		            		results.clear();
@@ -474,52 +649,602 @@ public class JarePlugin extends BaseStep implements StepInterface
         {
         	log.logError("error output to rule results detailed step", ex.toString());
         	//log.logError(Const.getStackTracker(ex));
-       		setStopped(true);
-       		setOutputDone();
-       		setErrors(1);
-       		stopAll();
-        	return false;
+       		return stopOnRowError(evaluation);
         }
         
         // add the generated field values to the main output row
-        try
-        {
-        	log.logDebug("adding ruleengine fields to output row");
-	        outputRow[inputSize] = (long)ruleEngine.getNumberOfGroups();
-	        outputRow[inputSize +1] = (long)ruleEngine.getNumberOfGroupsFailed();
-	        outputRow[inputSize +2] = (long)ruleEngine.getNumberOfGroupsSkipped();
-	        outputRow[inputSize +3] = (long)ruleEngine.getNumberOfRules();
-	        outputRow[inputSize +4] = (long)ruleEngine.getNumberOfRulesFailed();
-	        outputRow[inputSize +5] = (long)ruleEngine.getNumberOfActions();
-	        
-	        // original line with only one output step
-	        // putRow(data.outputRowMeta, outputRow);
-	         putRowTo(data.outputRowMeta, outputRow, rowsetMain);
-        }
-        catch(Exception ex)
+    	stepLog.logDebug("adding ruleengine fields to output row");
+        outputRow[inputSize] = (long)engine.getNumberOfGroups();
+        outputRow[inputSize +1] = (long)engine.getNumberOfGroupsFailed();
+        outputRow[inputSize +2] = (long)engine.getNumberOfGroupsSkipped();
+        outputRow[inputSize +3] = (long)engine.getNumberOfRules();
+        outputRow[inputSize +4] = (long)engine.getNumberOfRulesFailed();
+        outputRow[inputSize +5] = (long)engine.getNumberOfActions();
+        
+        // cache the results, unless the rule engine updated fields of the row
+        if(evaluation.resultCache!=null && numberOfUpdatedFields==0)
         {
-       		log.logError("error output to main step", ex.toString());
-       		//log.logError(Const.getStackTracker(ex));
-       		setStopped(true);
-       		setOutputDone();
-       		setErrors(1);
-       		stopAll();
-        	return false;
+        	long[] counters = new long[] {engine.getNumberOfGroups(), engine.getNumberOfGroupsFailed(), engine.getNumberOfGroupsSkipped(), engine.getNumberOfRules(), engine.getNumberOfRulesFailed(), engine.getNumberOfActions()};
+        	evaluation.resultCache.put(r, new ResultCache.Result(counters, cachedRuleResults!=null ? cachedRuleResults.toArray(new Object[cachedRuleResults.size()][]) : null, cachedRuleCounters!=null ? cachedRuleCounters.toArray(new RuleResultsLimiter.RuleCounter[cachedRuleCounters.size()]) : null));
         }
         
         // clear the results for the next run. if this is not done, the results
         // of the rule engine will accumulate
-       	ruleEngine.getRuleExecutionCollection().clear();
+       	engine.getRuleExecutionCollection().clear();
         
-		return true;
+		return outputRow;
 	}
 
+	/**
+	 * runs the rulegroups of the rule project one after the other and stops at the first
+	 * failed group. the results added to the row only contain the groups that were run,
+	 * the truncated field of the row indicates that groups were not run.
+	 * 
+	 * @param outputRow		the output row for the main step
+	 * @param lineNumber	the number of the input row
+	 * @param evaluation	the rulegroups and fields of the thread
+	 * @return				the output row for the main step or null if an error occurred
+	 */
+	private Object[] runRuleGroups(Object[] outputRow, long lineNumber, Evaluation evaluation)
+	{
+		RuleGroupEngines groupEngines = evaluation.groupEngines;
+		try
+		{
+			if(metrics!=null && metrics.isSampled(lineNumber))
+			{
+				long started = System.nanoTime();
+				groupEngines.run(getRowLabel(lineNumber), evaluation.fields);
+				metrics.recordTime(System.nanoTime() - started);
+				// the counters are kept in the order the groups are run
+				if(evaluation.groupMetricsCounters==null || evaluation.groupMetricsCounters.length!=groupEngines.getNumberOfEngines())
+				{
+					evaluation.groupMetricsCounters = new RuleEngineMetrics.EngineCounters[groupEngines.getNumberOfEngines()];
+				}
+				for(int i=0;i<groupEngines.getNumberOfEnginesRun();i++)
+				{
+					evaluation.groupMetricsCounters[i] = metrics.getEngineCounters(evaluation.groupMetricsCounters[i], groupEngines.getEngine(i));
+					metrics.recordResults(evaluation.groupMetricsCounters[i]);
+				}
+			}
+			else
+			{
+				groupEngines.run(getRowLabel(lineNumber), evaluation.fields);
+			}
+			if(stepLog.isDetailed() && groupEngines.isTruncated())
+			{
+				log.logDetailed("line: " + lineNumber + ", stopped after failed group number: " + groupEngines.getNumberOfEnginesRun() + " of: " + groupEngines.getNumberOfEngines());
+			}
+		}
+		catch(Exception ex)
+		{
+			log.logError(ex.getMessage());
+			return stopOnRowError(evaluation);
+		}
+		
+		try
+		{
+			int numberOfUpdatedFields = FieldConverter.writeUpdatedFields(evaluation.fields, converters, outputRow);
+			if(numberOfUpdatedFields>0)
+			{
+				stepLog.logRowlevel("number of fields updated by rule engine: ", numberOfUpdatedFields);
+			}
+		}
+		catch(Exception ex)
+		{
+			log.logError("error updating output fields", ex.toString());
+			return stopOnRowError(evaluation);
+		}
+		
+		outputRow[inputSize] = groupEngines.getNumberOfGroups();
+		outputRow[inputSize +1] = groupEngines.getNumberOfGroupsFailed();
+		outputRow[inputSize +2] = groupEngines.getNumberOfGroupsSkipped();
+		outputRow[inputSize +3] = groupEngines.getNumberOfRules();
+		outputRow[inputSize +4] = groupEngines.getNumberOfRulesFailed();
+		outputRow[inputSize +5] = groupEngines.getNumberOfActions();
+		outputRow[inputSize +6] = FAILED_VALUES[groupEngines.isTruncated() ? 1 : 0];
+		return outputRow;
+	}
+	
+	/**
+	 * runs the rulegroups in the order saved by an earlier run or learns their order
+	 * from the first rows, if requested. if the rule project contains actions, the
+	 * rulegroups are run in their original order.
+	 * 
+	 * @param groupEngines	the rule engines of the single rulegroups
+	 */
+	private void orderRuleGroups(RuleGroupEngines groupEngines)
+	{
+		if(meta.getRuleGroupOrderWarmUp()<=0 || groupEngines.getHasActions())
+		{
+			return;
+		}
+		File orderFile = getRuleGroupOrderFile();
+		if(orderFile.exists())
+		{
+			try
+			{
+				// groups not listed in the file, e.g. added to the changed
+				// rule project, require learning the order again
+				if(groupEngines.readOrder(orderFile))
+				{
+					return;
+				}
+			}
+			catch(Exception ex)
+			{
+				log.logError("error reading the order of the rulegroups from: " + orderFile, ex.toString());
+			}
+		}
+		groupEngines.setWarmUpRows(meta.getRuleGroupOrderWarmUp());
+	}
+	
+	/**
+	 * @return	the file next to the rule project containing the learned order of the rulegroups
+	 */
+	private File getRuleGroupOrderFile()
+	{
+		return new File(realFilename + RULEGROUP_ORDER_FILE_EXTENSION);
+	}
+	
+	/**
+	 * reads the names of the fields referenced by the rules of the rule project
+	 * 
+	 * @return	the names of the fields or null if the rule files could not be read
+	 */
+	private RuleFieldReferences readFieldReferences()
+	{
+		try
+		{
+			return new RuleFieldReferences(realFilename);
+		}
+		catch(Exception ex)
+		{
+			log.logBasic("the fields referenced by the rules could not be read and are not checked: " + ex.toString());
+			return null;
+		}
+	}
+	
+	/**
+	 * checks that the fields referenced by the active groups of the rule engine
+	 * are available in the input rows. unknown fields are logged.
+	 * 
+	 * @param references	the names of the fields referenced by the rules or null if they are not checked
+	 * @param engine		the rule engine
+	 * @return				false if unknown fields are referenced
+	 */
+	private boolean checkFieldReferences(RuleFieldReferences references, BusinessRulesEngine engine)
+	{
+		if(references==null)
+		{
+			return true;
+		}
+		List<String> unknownFields = references.getUnknownFields(engine, fieldIndexes);
+		for(int i=0;i<unknownFields.size();i++)
+		{
+			log.logError("unknown field referenced by the rules - " + unknownFields.get(i));
+		}
+		return unknownFields.size()==0;
+	}
+	
+	/**
+	 * outputs the cached rule results of a row and adds the cached results of
+	 * the rule engine to the row.
+	 * 
+	 * @param cachedResult			the cached results
+	 * @param outputRow				the output row for the main step
+	 * @param outputRowRuleResults	the row the rule results rows are created from
+	 * @param ruleResults			list for the rule results rows or null to output them directly
+	 * @param evaluation			the rule engine and fields of the thread
+	 * @return						the output row for the main step or null if an error occurred
+	 */
+	private Object[] putCachedResult(ResultCache.Result cachedResult, Object[] outputRow, Object[] outputRowRuleResults, List<Object[]> ruleResults, Evaluation evaluation)
+	{
+		Object[][] cachedRuleResults = cachedResult.getRuleResults();
+		RuleResultsLimiter.RuleCounter[] cachedRuleCounters = cachedResult.getRuleCounters();
+		if(cachedRuleResults!=null)
+		{
+			try
+			{
+				long now = ruleResultsLimiter!=null ? System.currentTimeMillis() : 0;
+				for(int i=0;i<cachedRuleResults.length;i++)
+				{
+					Object[] values = cachedRuleResults[i];
+					// the values are in the order of the fields: group, group failed, subgroup, ..., rule, rule failed, message
+					if(ruleResultsLimiter==null || FAILED_VALUES[0].equals(values[7]) || ruleResultsLimiter.accept(cachedRuleCounters[i], now))
+					{
+						Object[] outputRowRuleResultsCloned = getRuleResultsRow(outputRowRuleResults);
+						System.arraycopy(values, 0, outputRowRuleResultsCloned, ruleResultsOffset, values.length);
+						if(ruleResults!=null)
+						{
+							ruleResults.add(outputRowRuleResultsCloned);
+						}
+						else
+						{
+							putRowTo(data.outputRowMetaRuleResults, outputRowRuleResultsCloned, rowsetRuleResults);
+						}
+					}
+				}
+			}
+			catch(Exception ex)
+			{
+				log.logError("error output to rule results detailed step", ex.toString());
+				return stopOnRowError(evaluation);
+			}
+		}
+		long[] counters = cachedResult.getCounters();
+		for(int i=0;i<counters.length;i++)
+		{
+			outputRow[inputSize + i] = counters[i];
+		}
+		return outputRow;
+	}
+	
+	/**
+	 * stops the step after an error processing a row. the threads running the
+	 * rule engine only return no output row for the row: the step thread stops
+	 * the step when it takes the row from the threads.
+	 * 
+	 * @param evaluation	the rule engine and fields of the thread
+	 * @return				null as the output row
+	 */
+	private Object[] stopOnRowError(Evaluation evaluation)
+	{
+		if(!evaluation.worker)
+		{
+			setStopped(true);
+			setOutputDone();
+			setErrors(1);
+			stopAll();
+		}
+		return null;
+	}
+	
+	/**
+	 * the rule engine uses the label of a row only to identify it in its own
+	 * log. the label containing the row number is only built, if the log level
+	 * is detailed.
+	 * 
+	 * @param lineNumber	the number of the input row
+	 * @return				the label of the row for the rule engine
+	 */
+	private String getRowLabel(long lineNumber)
+	{
+		if(stepLog.isDetailed())
+		{
+			return "row number: " + lineNumber;
+		}
+		return ROW_LABEL;
+	}
+	
+	/**
+	 * creates a row for the rule results step, to which the results of one rule are added
+	 * 
+	 * @param outputRowRuleResults	the row the rule results rows are created from
+	 * @return						the row with all input fields or with the key field only
+	 */
+	private Object[] getRuleResultsRow(Object[] outputRowRuleResults)
+	{
+		if(keyFieldIndex<0)
+		{
+			return outputRowRuleResults.clone();
+		}
+		Object[] row = RowDataUtil.allocateRowData(data.outputRowMetaRuleResults.size());
+		row[0] = outputRowRuleResults[keyFieldIndex];
+		return row;
+	}
+	
+	/**
+	 * determines the fields referenced by the rules, which are the key of the cached
+	 * results. the results are not cached, if the rule project contains actions or
+	 * references fields in a way that can not be determined from the rule files.
+	 * 
+	 * @param references	the names of the fields referenced by the rules or null if they could not be read
+	 * @param engine		the rule engine
+	 * @return				the indexes of the fields or null if the results are not cached
+	 */
+	private int[] getResultCacheKeyFields(RuleFieldReferences references, BusinessRulesEngine engine)
+	{
+		if(!cacheResults)
+		{
+			return null;
+		}
+		int[] keyFields = references!=null ? references.getReferencedFieldIndexes(engine, fieldIndexes) : null;
+		if(keyFields==null)
+		{
+			log.logBasic("the results of the rule engine are not cached, because the rule project contains actions or the fields referenced by the rules can not be determined: " + realFilename);
+		}
+		return keyFields;
+	}
+	
+	/**
+	 * replaces the cached results of the thread, as they only apply to the rules
+	 * they were cached for.
+	 * 
+	 * @param evaluation	the rule engine and fields of the thread
+	 * @param keyFields		the indexes of the fields referenced by the rules or null if the results are not cached
+	 */
+	private void setResultCache(Evaluation evaluation, int[] keyFields)
+	{
+		evaluation.resultCache = keyFields!=null ? new ResultCache(meta.getResultCacheSize(), keyFields) : null;
+	}
+	
+	/**
+	 * the rule engine is initialized here and not when the first row arrives,
+	 * so that a missing or invalid rule file lets the transformation fail during
+	 * the initialization phase, before any of the other steps start processing
+	 * rows. kettle initializes all step copies in parallel, so the copies load
+	 * their rule engines in parallel as well.
+	 */
 	public boolean init(StepMetaInterface smi, StepDataInterface sdi)
 	{
 	    meta = (JarePluginMeta)smi;
 	    data = (JarePluginData)sdi;
 
-	    return super.init(smi, sdi);
+	    if(!super.init(smi, sdi))
+	    {
+	    	return false;
+	    }
+	    stepLog = new StepLog(log);
+	    
+	    // output for the main step
+	    rowsetMain =  findOutputRowSet(meta.getStepMain());
+	    
+	    // output for the rows routed by their results. the row sets are looked up
+	    // once, so the rows are not filtered by a separate step
+	    try
+	    {
+	    	rowsetPassed = findRouteRowSet(meta.getStepPassed());
+	    	rowsetFailed = findRouteRowSet(meta.getStepFailed());
+	    	rowsetSkipped = findRouteRowSet(meta.getStepSkipped());
+	    }
+	    catch(Exception ex)
+	    {
+	    	log.logError("the step for the passed, failed or skipped rows was not found or is invalid", ex.toString());
+	    	return false;
+	    }
+	    routeByResult = rowsetPassed!=rowsetMain || rowsetFailed!=rowsetMain || rowsetSkipped!=rowsetMain;
+	    if(routeByResult)
+	    {
+	    	log.logBasic("routing the rows by their results - passed: " + meta.getStepPassed() + ", failed: " + meta.getStepFailed() + ", skipped: " + meta.getStepSkipped());
+	    }
+	    //output for the rule engine results (details) step
+	    rowsetRuleResults = null;
+	    
+	    try
+	    {
+	    	// check that the rule results (details) step is defined
+	    	// and it is not set to "no output"
+	    	// and it is not the same as the main output step
+	    	if(meta.getStepRuleResults()!=null && !meta.getStepRuleResults().equals(Messages.getString("JarePluginDialog.Step.RuleResults.Type")) && ! meta.getStepRuleResults().equals(meta.getStepMain()))
+	    	{
+	    		rowsetRuleResults = findOutputRowSet(meta.getStepRuleResults()); 
+	    	}
+	    }
+	    catch(Exception ex)
+	    {
+	    	// when there is no rule results step selected or null
+	    	// nothing is output
+	    }
+	    
+	    // limit the failed results output per rule if requested
+	    if(rowsetRuleResults!=null && meta.getRuleResultsLimit()>0)
+	    {
+	    	ruleResultsLimiter = new RuleResultsLimiter(meta.getRuleResultsLimit(), meta.getRuleResultsLimitInterval());
+	    	log.logBasic("output of failed rule results limited to " + meta.getRuleResultsLimit() + " per rule every " + meta.getRuleResultsLimitInterval() + " seconds");
+	    }
+	    
+	    // output for the rule statistics step. it must not be the same as the
+	    // main or rule results step
+	    rowsetRuleStatistics = null;
+	    String stepRuleStatistics = meta.getStepRuleStatistics();
+	    if(stepRuleStatistics!=null && stepRuleStatistics.length()>0 && !stepRuleStatistics.equals(Messages.getString("JarePluginDialog.Step.RuleResults.Type")) && !stepRuleStatistics.equals(meta.getStepMain()) && !stepRuleStatistics.equals(meta.getStepRuleResults()))
+	    {
+	    	try
+	    	{
+	    		rowsetRuleStatistics = findOutputRowSet(stepRuleStatistics);
+	    	}
+	    	catch(Exception ex)
+	    	{
+	    		log.logError("the step for the rule statistics was not found: " + stepRuleStatistics, ex.toString());
+	    		return false;
+	    	}
+	    	data.outputRowMetaRuleStatistics = new RowMeta();
+	    	addStatisticsFieldstoRowMeta(data.outputRowMetaRuleStatistics, getStepname());
+	    	if(meta.getRuleStatisticsInterval()>0)
+	    	{
+	    		nextRuleStatistics = System.currentTimeMillis() + meta.getRuleStatisticsInterval() * 1000L;
+	    	}
+	    }
+	    
+        // filename of the rule engine file might return an URL
+        environmentFilename = environmentSubstitute(meta.getRuleFileName());
+        try
+        {
+        	URL url = new URL(environmentFilename);
+        	realFilename = url.getPath();
+        }
+        catch(MalformedURLException murl)
+        {
+        	realFilename = environmentFilename;
+        }
+        
+        // each thread running the rule engine requires its own instance
+        int numberOfThreads = Math.max(1, meta.getNumberOfThreads());
+        evaluations = new Evaluation[numberOfThreads];
+        try
+        {
+        	// lease the rule engines from the cache. the rule project is only
+        	// parsed if there is no idle instance of it
+        	for(int i=0;i<numberOfThreads;i++)
+        	{
+        		evaluations[i] = new Evaluation();
+        		evaluations[i].ruleEngine = RuleEngineCache.acquire(realFilename, log);
+        		// in case we do a detailed output we need to preserve the results
+                // of the ruleengine execution.
+        		evaluations[i].ruleEngine.setPreserveRuleExcecutionResults(rowsetRuleResults!=null);
+        	}
+        	log.logBasic("initialized business rule engine version: " + BusinessRulesEngine.getVersion() + " using: " + realFilename);
+        	if(evaluations[0].ruleEngine.getNumberOfGroups()==0)
+    		{
+    			log.logBasic("attention: project zip file contains no rulegroups or no ruleroups that are active based on the valid from/until date");
+    		}
+        }
+        catch(SAXException se)
+        {
+        	log.logError(se.toString());
+        	return false;
+        }
+        catch(FileNotFoundException fnf)
+        {
+        	log.logError(fnf.toString());
+        	return false;
+        }
+        catch(Exception ex)
+        {
+        	log.logError("error initializing business rule engine with rule file: " + realFilename, ex.toString());
+        	return false;
+        }
+        
+        // run the rulegroups separately, so the evaluation of a row stops at the first
+        // failed group. the rule results and statistics require the results of all groups
+        if(meta.getFailFast())
+        {
+        	if(rowsetRuleResults!=null || rowsetRuleStatistics!=null)
+        	{
+        		log.logError("fail-fast can not be used together with a rule results or rule statistics step");
+        		return false;
+        	}
+        	try
+        	{
+        		for(int i=0;i<evaluations.length;i++)
+        		{
+        			evaluations[i].groupEngines = RuleGroupEngines.load(realFilename);
+        			orderRuleGroups(evaluations[i].groupEngines);
+        		}
+        	}
+        	catch(Exception ex)
+        	{
+        		log.logError("error loading the rulegroups separately for fail-fast: " + realFilename, ex.toString());
+        		return false;
+        	}
+        	log.logBasic("fail-fast: running " + evaluations[0].groupEngines.getNumberOfEngines() + " rulegroups separately, the evaluation of a row stops at the first failed group");
+        	if(meta.getRuleGroupOrderWarmUp()>0)
+        	{
+        		if(evaluations[0].groupEngines.getHasActions())
+        		{
+        			log.logBasic("the rulegroups are run in their original order, because the actions of a group may update fields checked by the groups run after it");
+        		}
+        		else if(evaluations[0].groupEngines.isWarmUp())
+        		{
+        			log.logBasic("learning the order of the rulegroups from the first " + meta.getRuleGroupOrderWarmUp() + " rows, all rulegroups are run for these rows");
+        		}
+        		else
+        		{
+        			log.logBasic("running the rulegroups in the order saved in: " + getRuleGroupOrderFile() + ": " + Arrays.toString(evaluations[0].groupEngines.getGroupIds()));
+        		}
+        	}
+        }
+        else if(meta.getRuleGroupOrderWarmUp()>0)
+        {
+        	log.logBasic("the order of the rulegroups is only learned for fail-fast");
+        }
+        
+        // the fields referenced by the rules are checked when the first row arrives
+        fieldReferences = readFieldReferences();
+        
+        // cache the results of the rule engine if requested. the rule statistics
+        // count the results of the rule engine for each row, so they are not cached
+        if(meta.getResultCacheSize()>0)
+        {
+        	if(rowsetRuleStatistics!=null)
+        	{
+        		log.logBasic("the results of the rule engine are not cached, because the rule statistics are output");
+        	}
+        	else if(meta.getFailFast())
+        	{
+        		log.logBasic("the results of the rule engine are not cached, because the rulegroups are run separately for fail-fast");
+        	}
+        	else
+        	{
+        		cacheResults = true;
+        		log.logBasic("caching the results of the rule engine for up to " + meta.getResultCacheSize() + " rows per thread");
+        	}
+        }
+        
+        // collect metrics of sampled rows if requested
+        if(meta.getMetricsSampleInterval()>0)
+        {
+        	metrics = new RuleEngineMetrics(this, meta.getMetricsSampleInterval());
+        	try
+        	{
+        		metrics.register(getTransMeta().getName(), getStepname(), getCopy());
+        	}
+        	catch(Exception ex)
+        	{
+        		log.logError("error registering the metrics of the step with JMX", ex.toString());
+        	}
+        	log.logBasic("collecting metrics for every " + meta.getMetricsSampleInterval() + " rows");
+        }
+        
+        // run the rule engine on multiple threads if requested
+        if(numberOfThreads>1)
+        {
+        	maximumNumberOfTasks = Math.max(numberOfThreads, meta.getQueueSize());
+        	// the threads keep their evaluations, as they may terminate after the step is disposed
+        	final Evaluation[] workerEvaluations = evaluations;
+        	for(int i=0;i<workerEvaluations.length;i++)
+        	{
+        		workerEvaluations[i].worker = true;
+        	}
+        	workers = new RuleEngineWorkers(numberOfThreads, !meta.getUnorderedOutput(), new RuleEngineWorkers.RowProcessor()
+        	{
+        		public void process(RuleEngineWorkers.RowTask task, int worker) throws Exception
+        		{
+        			Evaluation evaluation = workerEvaluations[worker];
+        			// switch to the changed rule project. it was loaded and checked in the background,
+        			// but it is not used if the step has already replaced it with a newer one
+        			RuleFileWatcher.ReloadedProject project = reloadedProject;
+        			if(project!=evaluation.project)
+        			{
+        				evaluation.project = project;
+        				if(project.take(worker))
+        				{
+        					switchRuleEngine(evaluation, project, worker);
+        				}
+        			}
+        			task.setOutputRow(runRuleEngine(task.getRow(), task.getLineNumber(), evaluation, task.getRuleResults()));
+        		}
+        		
+        		public void terminated(int worker)
+        		{
+        			// the rule engine is only returned to the cache when the thread no longer uses it
+        			RuleEngineCache.release(workerEvaluations[worker].ruleEngine);
+        		}
+        	});
+        	workers.start("rule engine - " + getStepname() + "." + getCopy());
+        	log.logBasic("running the rule engine on " + numberOfThreads + " threads, maximum number of rows queued: " + maximumNumberOfTasks + (meta.getUnorderedOutput() ? ", unordered output" : ""));
+        }
+        
+        // watch the rule project for changes if requested
+        if(meta.getWatchRuleFile())
+        {
+        	// the rulegroups for fail-fast are loaded and ordered for the changed rule project as well
+        	RuleFileWatcher.RuleGroupOrder ruleGroupOrder = null;
+        	if(evaluations[0].groupEngines!=null)
+        	{
+        		ruleGroupOrder = new RuleFileWatcher.RuleGroupOrder()
+        		{
+        			public void order(RuleGroupEngines groupEngines)
+        			{
+        				orderRuleGroups(groupEngines);
+        			}
+        		};
+        	}
+        	ruleFileWatcher = new RuleFileWatcher(realFilename, Math.max(1, meta.getWatchInterval()) * 1000L, evaluations.length, ruleGroupOrder, log);
+        	ruleFileWatcher.start("rule file watcher - " + getStepname() + "." + getCopy());
+        	log.logBasic("watching rule file for changes every " + meta.getWatchInterval() + " seconds: " + realFilename);
+        }
+	    return true;
 	}
 
 	public void dispose(StepMetaInterface smi, StepDataInterface sdi)
@@ -527,6 +1252,108 @@ public class JarePlugin extends BaseStep implements StepInterface
 	    meta = (JarePluginMeta)smi;
 	    data = (JarePluginData)sdi;
 
+	    if(ruleFileWatcher!=null)
+	    {
+	    	ruleFileWatcher.stop();
+	    	ruleFileWatcher = null;
+	    	log.logBasic("number of reloads of the rule project: " + numberOfReloads);
+	    }
+	    
+	    // the threads return their rule engines to the cache when they have terminated
+	    boolean releasedByWorkers = false;
+	    boolean workersTerminated = true;
+	    if(workers!=null)
+	    {
+	    	workersTerminated = workers.stop();
+	    	if(!workersTerminated)
+	    	{
+	    		log.logBasic("the rule engine threads are still completing their current rows, they return their rule engines to the cache when they have terminated");
+	    	}
+	    	workers = null;
+	    	releasedByWorkers = true;
+	    }
+	    // return the rule engines of the changed rule project that the threads did not switch to
+	    if(reloadedProject!=null)
+	    {
+	    	reloadedProject.release();
+	    	reloadedProject = null;
+	    }
+	    
+	    // log the failed rule results that were not output because of the limit
+	    if(ruleResultsLimiter!=null)
+	    {
+	    	log.logBasic("number of failed rule results not output because of the limit per rule: " + ruleResultsLimiter.getNumberOfSuppressed());
+	    	if(log.isDetailed())
+	    	{
+	    		List<String> suppressed = ruleResultsLimiter.getSuppressed();
+	    		for(int i=0;i<suppressed.size();i++)
+	    		{
+	    			log.logDetailed(suppressed.get(i));
+	    		}
+	    	}
+	    	ruleResultsLimiter = null;
+	    }
+	    
+	    // log the summary of the metrics and remove them from JMX
+	    if(metrics!=null)
+	    {
+	    	logMetrics();
+	    	try
+	    	{
+	    		metrics.unregister();
+	    	}
+	    	catch(Exception ex)
+	    	{
+	    		log.logError("error removing the metrics of the step from JMX", ex.toString());
+	    	}
+	    	metrics = null;
+	    }
+	    
+	    // return the rule engines to the cache, so they can be reused
+	    // by other step copies or transformations
+	    if(evaluations!=null)
+	    {
+	    	// save the order of the rulegroups learned by the first thread for the next run.
+	    	// only the first step copy saves it, so the copies do not write the same file
+	    	if(getCopy()==0 && workersTerminated && evaluations[0]!=null && evaluations[0].groupEngines!=null && evaluations[0].groupEngines.isOrderLearned())
+	    	{
+	    		File orderFile = getRuleGroupOrderFile();
+	    		try
+	    		{
+	    			evaluations[0].groupEngines.writeOrder(orderFile);
+	    			log.logBasic("saved the learned order of the rulegroups to: " + orderFile + ": " + Arrays.toString(evaluations[0].groupEngines.getGroupIds()));
+	    		}
+	    		catch(Exception ex)
+	    		{
+	    			// the directory of the rule project may be read-only. the order is learned again in the next run
+	    			log.logBasic("the learned order of the rulegroups could not be saved to: " + orderFile + ": " + ex.toString());
+	    		}
+	    	}
+	    	if(cacheResults && evaluations[0]!=null)
+	    	{
+	    		long hits = 0;
+	    		long misses = 0;
+	    		for(int i=0;i<evaluations.length;i++)
+	    		{
+	    			// the results are not cached for a rule project with actions
+	    			if(evaluations[i].resultCache!=null)
+	    			{
+	    				hits += evaluations[i].resultCache.getHits();
+	    				misses += evaluations[i].resultCache.getMisses();
+	    			}
+	    		}
+	    		log.logBasic("number of rows with cached results: " + hits + ", rows without cached results: " + misses);
+	    	}
+	    	for(int i=0;i<evaluations.length && !releasedByWorkers;i++)
+	    	{
+	    		if(evaluations[i]!=null && evaluations[i].ruleEngine!=null)
+	    		{
+	    			RuleEngineCache.release(evaluations[i].ruleEngine);
+	    		}
+	    	}
+	    	evaluations = null;
+	    }
+
 	    super.dispose(smi, sdi);
 	}
 	
@@ -551,6 +1378,221 @@ public class JarePlugin extends BaseStep implements StepInterface
 		}
 	}
 	
+	/**
+	 * outputs the rule statistics counted since they were last output. if the rule
+	 * engine runs on multiple threads, the method waits for the rows still processed
+	 * and adds the statistics of all threads. the threads start counting again with
+	 * the rule engine used for their next row.
+	 * 
+	 * @return	false if an error occurred
+	 */
+	private boolean putRuleStatistics() throws KettleException
+	{
+		if(workers!=null && !putCompletedRows(0))
+		{
+			return false;
+		}
+		try
+		{
+			RuleStatistics total = null;
+			for(int i=0;i<evaluations.length;i++)
+			{
+				RuleStatistics statistics = evaluations[i].statistics;
+				evaluations[i].statistics = null;
+				if(statistics==null)
+				{
+					continue;
+				}
+				if(total==null)
+				{
+					total = statistics;
+				}
+				// a thread that could not switch to the changed rule project
+				// has statistics for different rules
+				else if(!total.add(statistics))
+				{
+					putRuleStatisticsRows(statistics);
+				}
+			}
+			if(total!=null)
+			{
+				putRuleStatisticsRows(total);
+			}
+		}
+		catch(Exception ex)
+		{
+			log.logError("error output to rule statistics step", ex.toString());
+			setStopped(true);
+			setOutputDone();
+			setErrors(1);
+			stopAll();
+			return false;
+		}
+		return true;
+	}
+	
+	private void putRuleStatisticsRows(RuleStatistics statistics) throws KettleException
+	{
+		List<Object[]> rows = statistics.getRows(data.outputRowMetaRuleStatistics.size());
+		for(int i=0;i<rows.size();i++)
+		{
+			putRowTo(data.outputRowMetaRuleStatistics, rows.get(i), rowsetRuleStatistics);
+		}
+	}
+	
+	/**
+	 * logs the summary of the metrics, the statistics of all groups and of
+	 * the rules that failed most often.
+	 */
+	private void logMetrics()
+	{
+		log.logBasic("rule engine metrics - " + metrics.getSummary());
+		String[] groupStatistics = metrics.getGroupStatistics();
+		for(int i=0;i<groupStatistics.length;i++)
+		{
+			log.logBasic("rule engine metrics - " + groupStatistics[i]);
+		}
+		String[] ruleStatistics = metrics.getRuleStatistics();
+		for(int i=0;i<ruleStatistics.length;i++)
+		{
+			if(i<MAXIMUM_RULE_STATISTICS_LOGGED)
+			{
+				log.logBasic("rule engine metrics - " + ruleStatistics[i]);
+			}
+			else
+			{
+				log.logDetailed("rule engine metrics - " + ruleStatistics[i]);
+			}
+		}
+	}
+	
+	/**
+	 * replaces the current rule engine with the one for the changed rule project.
+	 * if the rule engine runs on multiple threads, each thread replaces its rule
+	 * engine before its next row.
+	 * 
+	 * @param project	the rule engines and referenced fields of the changed rule project
+	 */
+	private void swapRuleEngine(RuleFileWatcher.ReloadedProject project)
+	{
+		numberOfReloads++;
+		log.logBasic("switched to changed rule project after " + getLinesRead() + " rows, number of rulegroups: " + project.getEngine(0).getNumberOfGroups() + ", number of reloads: " + numberOfReloads);
+		if(workers!=null)
+		{
+			// the rule engines of a project that the threads did not switch to are returned to the cache
+			RuleFileWatcher.ReloadedProject previousProject = reloadedProject;
+			reloadedProject = project;
+			if(previousProject!=null)
+			{
+				previousProject.release();
+			}
+			return;
+		}
+		project.take(0);
+		project.release();
+		switchRuleEngine(evaluations[0], project, 0);
+	}
+	
+	/**
+	 * replaces the rule engines of the evaluation with the ones of the changed rule
+	 * project. the current rule engine is returned to the cache.
+	 * 
+	 * @param evaluation	the rule engine and fields of the thread
+	 * @param project		the rule engines and referenced fields of the changed rule project
+	 * @param number		the number of the thread
+	 */
+	private void switchRuleEngine(Evaluation evaluation, RuleFileWatcher.ReloadedProject project, int number)
+	{
+		BusinessRulesEngine reloadedEngine = project.getEngine(number);
+		reloadedEngine.setPreserveRuleExcecutionResults(rowsetRuleResults!=null);
+		RuleEngineCache.release(evaluation.ruleEngine);
+		evaluation.ruleEngine = reloadedEngine;
+		if(project.getGroupEngines(number)!=null)
+		{
+			evaluation.groupEngines = project.getGroupEngines(number);
+		}
+		setResultCache(evaluation, getResultCacheKeyFields(project.getFieldReferences(), reloadedEngine));
+	}
+	
+	/**
+	 * looks up the row set for the rows routed to the step
+	 * 
+	 * @param stepname	the name of the selected step
+	 * @return			the row set of the step or of the main step, if no step is selected
+	 */
+	private RowSet findRouteRowSet(String stepname) throws KettleStepException
+	{
+		if(stepname==null || stepname.length()==0 || stepname.equals(Messages.getString("JarePluginDialog.Step.Route.Main")) || stepname.equals(meta.getStepMain()))
+		{
+			return rowsetMain;
+		}
+		// the rule results and statistics rows have different fields
+		if(stepname.equals(meta.getStepRuleResults()) || stepname.equals(meta.getStepRuleStatistics()))
+		{
+			throw new KettleStepException("the step can not be used for the rule results or rule statistics as well: " + stepname);
+		}
+		return findOutputRowSet(stepname);
+	}
+	
+	/**
+	 * determines the step for the output row based on its results: rows with failed
+	 * groups, rows for which all groups were skipped and the other rows, which passed
+	 * 
+	 * @param outputRow	the output row with the results of the rule engine
+	 * @return			the row set of the step for the row
+	 */
+	private RowSet getOutputRowSet(Object[] outputRow)
+	{
+		if(!routeByResult)
+		{
+			return rowsetMain;
+		}
+		if(((Long)outputRow[inputSize + 1]).longValue()>0)
+		{
+			return rowsetFailed;
+		}
+		if(((Long)outputRow[inputSize + 2]).longValue()==((Long)outputRow[inputSize]).longValue())
+		{
+			return rowsetSkipped;
+		}
+		return rowsetPassed;
+	}
+	
+	/**
+	 * determines for the output type, which groups are output to the rule results step
+	 * 
+	 * @param outputType	the output type selected in the dialog
+	 * @return				output of passed groups (index 0) and failed groups (index 1)
+	 */
+	private static boolean[] getOutputGroup(int outputType)
+	{
+		if(outputType==1 || outputType==2)
+		{
+			return new boolean[] {false, true};
+		}
+		else if(outputType==3 || outputType==4)
+		{
+			return new boolean[] {true, false};
+		}
+		return new boolean[] {true, true};
+	}
+	
+	/**
+	 * determines for the output type, which rules of the output groups are output
+	 * to the rule results step
+	 * 
+	 * @param outputType	the output type selected in the dialog
+	 * @return				output of passed rules (index 0) and failed rules (index 1)
+	 */
+	private static boolean[] getOutputRule(int outputType)
+	{
+		if(outputType==1 || outputType==3)
+		{
+			return new boolean[] {false, true};
+		}
+		return new boolean[] {true, true};
+	}
+	
 	private void addFieldstoRowMeta(RowMetaInterface r, String origin, boolean ruleResults)
 	{
 		if(ruleResults)
@@ -616,6 +1658,68 @@ public class JarePlugin extends BaseStep implements StepInterface
 			ValueMetaInterface totalActions=new ValueMetaInteger(FIELDNAME_RULEENGINE_ACTIONS);
 			totalActions.setOrigin(origin);
 			r.addValueMeta( totalActions );
+			
+			if(meta.getFailFast())
+			{
+				ValueMetaInterface truncated=new ValueMetaInteger(FIELDNAME_RULEENGINE_TRUNCATED);
+				truncated.setOrigin(origin);
+				r.addValueMeta( truncated );
+			}
 		}
 	}
+	
+	private void addStatisticsFieldstoRowMeta(RowMetaInterface r, String origin)
+	{
+		ValueMetaInterface group = new ValueMetaString(FIELDNAME_RULEENGINE_GROUP);
+		group.setOrigin(origin);
+		r.addValueMeta( group );
+		
+		ValueMetaInterface subgroup = new ValueMetaString(FIELDNAME_RULEENGINE_SUBGROUP);
+		subgroup.setOrigin(origin);
+		r.addValueMeta( subgroup );
+		
+		ValueMetaInterface rule = new ValueMetaString(FIELDNAME_RULEENGINE_RULE);
+		rule.setOrigin(origin);
+		r.addValueMeta( rule );
+		
+		ValueMetaInterface evaluated = new ValueMetaInteger(FIELDNAME_RULEENGINE_EVALUATED);
+		evaluated.setOrigin(origin);
+		r.addValueMeta( evaluated );
+		
+		ValueMetaInterface failed = new ValueMetaInteger(FIELDNAME_RULEENGINE_FAILED);
+		failed.setOrigin(origin);
+		r.addValueMeta( failed );
+		
+		ValueMetaInterface skipped = new ValueMetaInteger(FIELDNAME_RULEENGINE_SKIPPED);
+		skipped.setOrigin(origin);
+		r.addValueMeta( skipped );
+		
+		ValueMetaInterface failureRate = new ValueMetaNumber(FIELDNAME_RULEENGINE_FAILURE_RATE);
+		failureRate.setOrigin(origin);
+		r.addValueMeta( failureRate );
+	}
+	
+	/**
+	 * the rule engine and the fields used by one thread
+	 */
+	private static class Evaluation
+	{
+		private BusinessRulesEngine ruleEngine;
+		private ReusableRowFieldCollection fields;
+		// counts of the rows processed since the rule statistics were last output
+		private RuleStatistics statistics;
+		// results of the rule engine for rows or null if they are not cached
+		private ResultCache resultCache;
+		// rule engines of the single rulegroups or null if fail-fast is not used
+		private RuleGroupEngines groupEngines;
+		// counters of the metrics for the rule engine and for the rule engines of the rulegroups
+		private RuleEngineMetrics.EngineCounters metricsCounters;
+		private RuleEngineMetrics.EngineCounters[] groupMetricsCounters;
+		// counters of the rules of the rule engine for the limit of the failed rule results
+		private RuleResultsLimiter.EngineCounters limiterCounters;
+		// the changed rule project the thread last switched to
+		private RuleFileWatcher.ReloadedProject project;
+		// if the evaluation runs on one of the threads of the workers
+		private boolean worker;
+	}
 }
@@ -30,6 +30,7 @@ public class JarePluginData extends BaseStepData implements StepDataInterface
 {
 	public RowMetaInterface outputRowMeta;
 	public RowMetaInterface outputRowMetaRuleResults;
+	public RowMetaInterface outputRowMetaRuleStatistics;
 
     public JarePluginData()
 	{
@@ -39,6 +39,7 @@ import org.eclipse.swt.widgets.Shell;
 import org.eclipse.swt.widgets.Text;
 import org.eclipse.swt.widgets.Group;
 import org.pentaho.di.core.Const;
+import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.trans.TransMeta;
 import org.pentaho.di.ui.core.widget.TextVar;
 import org.pentaho.di.ui.trans.step.BaseStepDialog;
@@ -49,12 +50,12 @@ public class JarePluginDialog extends BaseStepDialog implements StepDialogInterf
 {
 	private JarePluginMeta input;
 
-	private Label        wLabelRuleFile, wLabelStepname, wLabelOutputType,wLabelStepMain, wLabelStepRuleResults;
-	private Text         wTextStepname;
-	private Combo		 wComboOutputType, wComboStepRuleResults, wComboStepMain;
-	private FormData     wFormBucket, wFormRuleFile, wFormFileName,wFormStepname, wFormOutputType, wFormStepMain, wFormStepRuleResults, fdbFilename;
+	private Label        wLabelRuleFile, wLabelStepname, wLabelOutputType,wLabelStepMain, wLabelStepRuleResults, wLabelWatchRuleFile, wLabelWatchInterval, wLabelRuleResultsKeyField, wLabelNumberOfThreads, wLabelQueueSize, wLabelUnorderedOutput, wLabelMetricsSampleInterval, wLabelStepRuleStatistics, wLabelRuleStatisticsInterval, wLabelRuleResultsLimit, wLabelRuleResultsLimitInterval, wLabelResultCacheSize, wLabelFailFast, wLabelRuleGroupOrderWarmUp, wLabelStepPassed, wLabelStepFailed, wLabelStepSkipped;
+	private Text         wTextStepname, wTextWatchInterval, wTextNumberOfThreads, wTextQueueSize, wTextMetricsSampleInterval, wTextRuleStatisticsInterval, wTextRuleResultsLimit, wTextRuleResultsLimitInterval, wTextResultCacheSize, wTextRuleGroupOrderWarmUp;
+	private Combo		 wComboOutputType, wComboStepRuleResults, wComboStepMain, wComboRuleResultsKeyField, wComboStepRuleStatistics, wComboStepPassed, wComboStepFailed, wComboStepSkipped;
+	private FormData     wFormBucket, wFormRuleFile, wFormFileName,wFormStepname, wFormOutputType, wFormStepMain, wFormStepRuleResults, fdbFilename, wFormWatchRuleFile, wFormWatchInterval, wFormRuleResultsKeyField, wFormNumberOfThreads, wFormQueueSize, wFormUnorderedOutput, wFormMetricsSampleInterval, wFormStepRuleStatistics, wFormRuleStatisticsInterval, wFormRuleResultsLimit, wFormRuleResultsLimitInterval, wFormResultCacheSize, wFormFailFast, wFormRuleGroupOrderWarmUp, wFormStepPassed, wFormStepFailed, wFormStepSkipped;
 	private TextVar      wTextRuleFile;
-	private Button		 wbFilename;
+	private Button		 wbFilename, wCheckWatchRuleFile, wCheckUnorderedOutput, wCheckFailFast;
 	private Group 		 wFileName;
 
 	
@@ -157,7 +158,192 @@ public class JarePluginDialog extends BaseStepDialog implements StepDialogInterf
 	    wFormBucket.right = new FormAttachment( 90, 0 );
 	    wTextRuleFile.setLayoutData( wFormBucket );
 		
-	    
+	    // Reload the rule file when it is changed
+		wLabelWatchRuleFile=new Label(shell, SWT.RIGHT);
+		wLabelWatchRuleFile.setText(Messages.getString("JarePluginDialog.WatchRuleFile.Label"));
+        props.setLook( wLabelWatchRuleFile );
+        wFormWatchRuleFile=new FormData();
+        wFormWatchRuleFile.left = new FormAttachment(0, 0);
+        wFormWatchRuleFile.right= new FormAttachment(middle, -margin);
+        wFormWatchRuleFile.top  = new FormAttachment(wTextRuleFile, margin);
+        wLabelWatchRuleFile.setLayoutData(wFormWatchRuleFile);
+		wCheckWatchRuleFile=new Button(shell, SWT.CHECK);
+		wCheckWatchRuleFile.setSelection(input.getWatchRuleFile());
+		props.setLook( wCheckWatchRuleFile );
+		wFormWatchRuleFile=new FormData();
+		wFormWatchRuleFile.left = new FormAttachment(middle, 0);
+		wFormWatchRuleFile.top  = new FormAttachment(wTextRuleFile, margin);
+		wFormWatchRuleFile.right= new FormAttachment(100, 0);
+		wCheckWatchRuleFile.setLayoutData(wFormWatchRuleFile);
+		wCheckWatchRuleFile.addSelectionListener( new SelectionAdapter() {
+			public void widgetSelected( SelectionEvent e ) {
+				input.setChanged();
+				wTextWatchInterval.setEnabled(wCheckWatchRuleFile.getSelection());
+			}
+		} );
+		
+		// Interval for checking the rule file for changes
+		wLabelWatchInterval=new Label(shell, SWT.RIGHT);
+		wLabelWatchInterval.setText(Messages.getString("JarePluginDialog.WatchInterval.Label"));
+        props.setLook( wLabelWatchInterval );
+        wFormWatchInterval=new FormData();
+        wFormWatchInterval.left = new FormAttachment(0, 0);
+        wFormWatchInterval.right= new FormAttachment(middle, -margin);
+        wFormWatchInterval.top  = new FormAttachment(wCheckWatchRuleFile, margin);
+        wLabelWatchInterval.setLayoutData(wFormWatchInterval);
+		wTextWatchInterval=new Text(shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+		wTextWatchInterval.setText(String.valueOf(input.getWatchInterval()));
+		wTextWatchInterval.setEnabled(input.getWatchRuleFile());
+        props.setLook( wTextWatchInterval );
+        wTextWatchInterval.addModifyListener(lsMod);
+		wFormWatchInterval=new FormData();
+		wFormWatchInterval.left = new FormAttachment(middle, 0);
+		wFormWatchInterval.top  = new FormAttachment(wCheckWatchRuleFile, margin);
+		wFormWatchInterval.right= new FormAttachment(100, 0);
+		wTextWatchInterval.setLayoutData(wFormWatchInterval);
+		
+		// Number of threads running the rule engine
+		wLabelNumberOfThreads=new Label(shell, SWT.RIGHT);
+		wLabelNumberOfThreads.setText(Messages.getString("JarePluginDialog.NumberOfThreads.Label"));
+        props.setLook( wLabelNumberOfThreads );
+        wFormNumberOfThreads=new FormData();
+        wFormNumberOfThreads.left = new FormAttachment(0, 0);
+        wFormNumberOfThreads.right= new FormAttachment(middle, -margin);
+        wFormNumberOfThreads.top  = new FormAttachment(wTextWatchInterval, margin);
+        wLabelNumberOfThreads.setLayoutData(wFormNumberOfThreads);
+		wTextNumberOfThreads=new Text(shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+		wTextNumberOfThreads.setText(String.valueOf(input.getNumberOfThreads()));
+        props.setLook( wTextNumberOfThreads );
+        wTextNumberOfThreads.addModifyListener(lsMod);
+		wFormNumberOfThreads=new FormData();
+		wFormNumberOfThreads.left = new FormAttachment(middle, 0);
+		wFormNumberOfThreads.top  = new FormAttachment(wTextWatchInterval, margin);
+		wFormNumberOfThreads.right= new FormAttachment(100, 0);
+		wTextNumberOfThreads.setLayoutData(wFormNumberOfThreads);
+		
+		// Maximum number of rows queued for the threads
+		wLabelQueueSize=new Label(shell, SWT.RIGHT);
+		wLabelQueueSize.setText(Messages.getString("JarePluginDialog.QueueSize.Label"));
+        props.setLook( wLabelQueueSize );
+        wFormQueueSize=new FormData();
+        wFormQueueSize.left = new FormAttachment(0, 0);
+        wFormQueueSize.right= new FormAttachment(middle, -margin);
+        wFormQueueSize.top  = new FormAttachment(wTextNumberOfThreads, margin);
+        wLabelQueueSize.setLayoutData(wFormQueueSize);
+		wTextQueueSize=new Text(shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+		wTextQueueSize.setText(String.valueOf(input.getQueueSize()));
+        props.setLook( wTextQueueSize );
+        wTextQueueSize.addModifyListener(lsMod);
+		wFormQueueSize=new FormData();
+		wFormQueueSize.left = new FormAttachment(middle, 0);
+		wFormQueueSize.top  = new FormAttachment(wTextNumberOfThreads, margin);
+		wFormQueueSize.right= new FormAttachment(100, 0);
+		wTextQueueSize.setLayoutData(wFormQueueSize);
+		
+		// Output the rows in the order they are completed by the threads
+		wLabelUnorderedOutput=new Label(shell, SWT.RIGHT);
+		wLabelUnorderedOutput.setText(Messages.getString("JarePluginDialog.UnorderedOutput.Label"));
+        props.setLook( wLabelUnorderedOutput );
+        wFormUnorderedOutput=new FormData();
+        wFormUnorderedOutput.left = new FormAttachment(0, 0);
+        wFormUnorderedOutput.right= new FormAttachment(middle, -margin);
+        wFormUnorderedOutput.top  = new FormAttachment(wTextQueueSize, margin);
+        wLabelUnorderedOutput.setLayoutData(wFormUnorderedOutput);
+		wCheckUnorderedOutput=new Button(shell, SWT.CHECK);
+		wCheckUnorderedOutput.setSelection(input.getUnorderedOutput());
+		props.setLook( wCheckUnorderedOutput );
+		wFormUnorderedOutput=new FormData();
+		wFormUnorderedOutput.left = new FormAttachment(middle, 0);
+		wFormUnorderedOutput.top  = new FormAttachment(wTextQueueSize, margin);
+		wFormUnorderedOutput.right= new FormAttachment(100, 0);
+		wCheckUnorderedOutput.setLayoutData(wFormUnorderedOutput);
+		wCheckUnorderedOutput.addSelectionListener( new SelectionAdapter() {
+			public void widgetSelected( SelectionEvent e ) {
+				input.setChanged();
+			}
+		} );
+		
+		// Rows after which a row is sampled for the metrics
+		wLabelMetricsSampleInterval=new Label(shell, SWT.RIGHT);
+		wLabelMetricsSampleInterval.setText(Messages.getString("JarePluginDialog.MetricsSampleInterval.Label"));
+        props.setLook( wLabelMetricsSampleInterval );
+        wFormMetricsSampleInterval=new FormData();
+        wFormMetricsSampleInterval.left = new FormAttachment(0, 0);
+        wFormMetricsSampleInterval.right= new FormAttachment(middle, -margin);
+        wFormMetricsSampleInterval.top  = new FormAttachment(wCheckUnorderedOutput, margin);
+        wLabelMetricsSampleInterval.setLayoutData(wFormMetricsSampleInterval);
+		wTextMetricsSampleInterval=new Text(shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+		wTextMetricsSampleInterval.setText(String.valueOf(input.getMetricsSampleInterval()));
+        props.setLook( wTextMetricsSampleInterval );
+        wTextMetricsSampleInterval.addModifyListener(lsMod);
+		wFormMetricsSampleInterval=new FormData();
+		wFormMetricsSampleInterval.left = new FormAttachment(middle, 0);
+		wFormMetricsSampleInterval.top  = new FormAttachment(wCheckUnorderedOutput, margin);
+		wFormMetricsSampleInterval.right= new FormAttachment(100, 0);
+		wTextMetricsSampleInterval.setLayoutData(wFormMetricsSampleInterval);
+		
+		// Rows for which the results of the rule engine are cached
+		wLabelResultCacheSize=new Label(shell, SWT.RIGHT);
+		wLabelResultCacheSize.setText(Messages.getString("JarePluginDialog.ResultCacheSize.Label"));
+        props.setLook( wLabelResultCacheSize );
+        wFormResultCacheSize=new FormData();
+        wFormResultCacheSize.left = new FormAttachment(0, 0);
+        wFormResultCacheSize.right= new FormAttachment(middle, -margin);
+        wFormResultCacheSize.top  = new FormAttachment(wTextMetricsSampleInterval, margin);
+        wLabelResultCacheSize.setLayoutData(wFormResultCacheSize);
+		wTextResultCacheSize=new Text(shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+		wTextResultCacheSize.setText(String.valueOf(input.getResultCacheSize()));
+        props.setLook( wTextResultCacheSize );
+        wTextResultCacheSize.addModifyListener(lsMod);
+		wFormResultCacheSize=new FormData();
+		wFormResultCacheSize.left = new FormAttachment(middle, 0);
+		wFormResultCacheSize.top  = new FormAttachment(wTextMetricsSampleInterval, margin);
+		wFormResultCacheSize.right= new FormAttachment(100, 0);
+		wTextResultCacheSize.setLayoutData(wFormResultCacheSize);
+		
+		// Stop the evaluation of a row at the first failed rulegroup
+		wLabelFailFast=new Label(shell, SWT.RIGHT);
+		wLabelFailFast.setText(Messages.getString("JarePluginDialog.FailFast.Label"));
+        props.setLook( wLabelFailFast );
+        wFormFailFast=new FormData();
+        wFormFailFast.left = new FormAttachment(0, 0);
+        wFormFailFast.right= new FormAttachment(middle, -margin);
+        wFormFailFast.top  = new FormAttachment(wTextResultCacheSize, margin);
+        wLabelFailFast.setLayoutData(wFormFailFast);
+		wCheckFailFast=new Button(shell, SWT.CHECK);
+		wCheckFailFast.setSelection(input.getFailFast());
+		props.setLook( wCheckFailFast );
+		wFormFailFast=new FormData();
+		wFormFailFast.left = new FormAttachment(middle, 0);
+		wFormFailFast.top  = new FormAttachment(wTextResultCacheSize, margin);
+		wFormFailFast.right= new FormAttachment(100, 0);
+		wCheckFailFast.setLayoutData(wFormFailFast);
+		wCheckFailFast.addSelectionListener( new SelectionAdapter() {
+			public void widgetSelected( SelectionEvent e ) {
+				input.setChanged();
+				wTextRuleGroupOrderWarmUp.setEnabled(wCheckFailFast.getSelection());
+			}
+		} );
+		
+		// Rows used to learn the order of the rulegroups for fail-fast
+		wLabelRuleGroupOrderWarmUp=new Label(shell, SWT.RIGHT);
+		wLabelRuleGroupOrderWarmUp.setText(Messages.getString("JarePluginDialog.RuleGroupOrderWarmUp.Label"));
+        props.setLook( wLabelRuleGroupOrderWarmUp );
+        wFormRuleGroupOrderWarmUp=new FormData();
+        wFormRuleGroupOrderWarmUp.left = new FormAttachment(0, 0);
+        wFormRuleGroupOrderWarmUp.right= new FormAttachment(middle, -margin);
+        wFormRuleGroupOrderWarmUp.top  = new FormAttachment(wCheckFailFast, margin);
+        wLabelRuleGroupOrderWarmUp.setLayoutData(wFormRuleGroupOrderWarmUp);
+		wTextRuleGroupOrderWarmUp=new Text(shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+		wTextRuleGroupOrderWarmUp.setText(String.valueOf(input.getRuleGroupOrderWarmUp()));
+		wTextRuleGroupOrderWarmUp.setEnabled(input.getFailFast());
+        props.setLook( wTextRuleGroupOrderWarmUp );
+        wTextRuleGroupOrderWarmUp.addModifyListener(lsMod);
+		wFormRuleGroupOrderWarmUp=new FormData();
+		wFormRuleGroupOrderWarmUp.left = new FormAttachment(middle, 0);
+		wFormRuleGroupOrderWarmUp.top  = new FormAttachment(wCheckFailFast, margin);
+		wFormRuleGroupOrderWarmUp.right= new FormAttachment(100, 0);
+		wTextRuleGroupOrderWarmUp.setLayoutData(wFormRuleGroupOrderWarmUp);
 	    
 		// Main Output Step
 		wLabelStepMain=new Label(shell, SWT.RIGHT);
@@ -166,7 +352,7 @@ public class JarePluginDialog extends BaseStepDialog implements StepDialogInterf
         wFormStepMain=new FormData();
         wFormStepMain.left = new FormAttachment(0, 0);
         wFormStepMain.right= new FormAttachment(middle, -margin);
-        wFormStepMain.top  = new FormAttachment(wTextRuleFile, margin);
+        wFormStepMain.top  = new FormAttachment(wTextRuleGroupOrderWarmUp, margin);
         wLabelStepMain.setLayoutData(wFormStepMain);
 		wComboStepMain=new Combo(shell, SWT.VERTICAL | SWT.DROP_DOWN | SWT.BORDER | SWT.READ_ONLY);
 		String outputSteps[] = transMeta.getNextStepNames(stepMeta);
@@ -182,10 +368,103 @@ public class JarePluginDialog extends BaseStepDialog implements StepDialogInterf
 		wComboStepMain.addModifyListener(lsMod);
 		wFormStepMain=new FormData();
 		wFormStepMain.left = new FormAttachment(middle, 0);
-		wFormStepMain.top  = new FormAttachment(wTextRuleFile, margin);
+		wFormStepMain.top  = new FormAttachment(wTextRuleGroupOrderWarmUp, margin);
 		wFormStepMain.right= new FormAttachment(100, 0);
         wComboStepMain.setLayoutData(wFormStepMain);
 		
+		// Output step for the rows without failed groups
+		wLabelStepPassed=new Label(shell, SWT.RIGHT);
+		wLabelStepPassed.setText(Messages.getString("JarePluginDialog.Step.Passed"));
+        props.setLook( wLabelStepPassed );
+        wFormStepPassed=new FormData();
+        wFormStepPassed.left = new FormAttachment(0, 0);
+        wFormStepPassed.right= new FormAttachment(middle, -margin);
+        wFormStepPassed.top  = new FormAttachment(wComboStepMain, margin);
+        wLabelStepPassed.setLayoutData(wFormStepPassed);
+		wComboStepPassed=new Combo(shell, SWT.VERTICAL | SWT.DROP_DOWN | SWT.BORDER | SWT.READ_ONLY);
+		wComboStepPassed.add(Messages.getString("JarePluginDialog.Step.Route.Main"));
+		for(int i=0;i<outputSteps.length;i++)
+		{
+			wComboStepPassed.add(outputSteps[i]);
+		}
+		if(input.getStepPassed()!=null)
+		{
+			wComboStepPassed.setText(input.getStepPassed());
+		}
+		else
+		{
+			wComboStepPassed.select(0);
+		}
+		props.setLook( wComboStepPassed );
+		wComboStepPassed.addModifyListener(lsMod);
+        wFormStepPassed=new FormData();
+        wFormStepPassed.left = new FormAttachment(middle, 0);
+        wFormStepPassed.top  = new FormAttachment(wComboStepMain, margin);
+        wFormStepPassed.right= new FormAttachment(100, 0);
+        wComboStepPassed.setLayoutData(wFormStepPassed);
+		
+		// Output step for the rows with failed groups
+		wLabelStepFailed=new Label(shell, SWT.RIGHT);
+		wLabelStepFailed.setText(Messages.getString("JarePluginDialog.Step.Failed"));
+        props.setLook( wLabelStepFailed );
+        wFormStepFailed=new FormData();
+        wFormStepFailed.left = new FormAttachment(0, 0);
+        wFormStepFailed.right= new FormAttachment(middle, -margin);
+        wFormStepFailed.top  = new FormAttachment(wComboStepPassed, margin);
+        wLabelStepFailed.setLayoutData(wFormStepFailed);
+		wComboStepFailed=new Combo(shell, SWT.VERTICAL | SWT.DROP_DOWN | SWT.BORDER | SWT.READ_ONLY);
+		wComboStepFailed.add(Messages.getString("JarePluginDialog.Step.Route.Main"));
+		for(int i=0;i<outputSteps.length;i++)
+		{
+			wComboStepFailed.add(outputSteps[i]);
+		}
+		if(input.getStepFailed()!=null)
+		{
+			wComboStepFailed.setText(input.getStepFailed());
+		}
+		else
+		{
+			wComboStepFailed.select(0);
+		}
+		props.setLook( wComboStepFailed );
+		wComboStepFailed.addModifyListener(lsMod);
+        wFormStepFailed=new FormData();
+        wFormStepFailed.left = new FormAttachment(middle, 0);
+        wFormStepFailed.top  = new FormAttachment(wComboStepPassed, margin);
+        wFormStepFailed.right= new FormAttachment(100, 0);
+        wComboStepFailed.setLayoutData(wFormStepFailed);
+		
+		// Output step for the rows with only skipped groups
+		wLabelStepSkipped=new Label(shell, SWT.RIGHT);
+		wLabelStepSkipped.setText(Messages.getString("JarePluginDialog.Step.Skipped"));
+        props.setLook( wLabelStepSkipped );
+        wFormStepSkipped=new FormData();
+        wFormStepSkipped.left = new FormAttachment(0, 0);
+        wFormStepSkipped.right= new FormAttachment(middle, -margin);
+        wFormStepSkipped.top  = new FormAttachment(wComboStepFailed, margin);
+        wLabelStepSkipped.setLayoutData(wFormStepSkipped);
+		wComboStepSkipped=new Combo(shell, SWT.VERTICAL | SWT.DROP_DOWN | SWT.BORDER | SWT.READ_ONLY);
+		wComboStepSkipped.add(Messages.getString("JarePluginDialog.Step.Route.Main"));
+		for(int i=0;i<outputSteps.length;i++)
+		{
+			wComboStepSkipped.add(outputSteps[i]);
+		}
+		if(input.getStepSkipped()!=null)
+		{
+			wComboStepSkipped.setText(input.getStepSkipped());
+		}
+		else
+		{
+			wComboStepSkipped.select(0);
+		}
+		props.setLook( wComboStepSkipped );
+		wComboStepSkipped.addModifyListener(lsMod);
+        wFormStepSkipped=new FormData();
+        wFormStepSkipped.left = new FormAttachment(middle, 0);
+        wFormStepSkipped.top  = new FormAttachment(wComboStepFailed, margin);
+        wFormStepSkipped.right= new FormAttachment(100, 0);
+        wComboStepSkipped.setLayoutData(wFormStepSkipped);
+		
 		// Rule Results Output Step
 		wLabelStepRuleResults=new Label(shell, SWT.RIGHT);
 		wLabelStepRuleResults.setText(Messages.getString("JarePluginDialog.Step.RuleResults"));
@@ -193,7 +472,7 @@ public class JarePluginDialog extends BaseStepDialog implements StepDialogInterf
         wFormStepRuleResults=new FormData();
         wFormStepRuleResults.left = new FormAttachment(0, 0);
         wFormStepRuleResults.right= new FormAttachment(middle, -margin);
-        wFormStepRuleResults.top  = new FormAttachment(wComboStepMain, margin);
+        wFormStepRuleResults.top  = new FormAttachment(wComboStepSkipped, margin);
         wLabelStepRuleResults.setLayoutData(wFormStepRuleResults);
 		wComboStepRuleResults=new Combo(shell, SWT.VERTICAL | SWT.DROP_DOWN | SWT.BORDER | SWT.READ_ONLY);
 		wComboStepRuleResults.add(Messages.getString("JarePluginDialog.Step.RuleResults.Type"));
@@ -213,7 +492,7 @@ public class JarePluginDialog extends BaseStepDialog implements StepDialogInterf
 		wComboStepRuleResults.addModifyListener(lsMod);
         wFormStepRuleResults=new FormData();
         wFormStepRuleResults.left = new FormAttachment(middle, 0);
-        wFormStepRuleResults.top  = new FormAttachment(wComboStepMain, margin);
+        wFormStepRuleResults.top  = new FormAttachment(wComboStepSkipped, margin);
         wFormStepRuleResults.right= new FormAttachment(100, 0);
         wComboStepRuleResults.setLayoutData(wFormStepRuleResults);
 		
@@ -240,6 +519,130 @@ public class JarePluginDialog extends BaseStepDialog implements StepDialogInterf
         wFormOutputType.top  = new FormAttachment(wComboStepRuleResults, margin);
         wFormOutputType.right= new FormAttachment(100, 0);
 		wComboOutputType.setLayoutData(wFormOutputType);
+		
+		// Rule Results Output Step Key Field
+		wLabelRuleResultsKeyField=new Label(shell, SWT.RIGHT);
+		wLabelRuleResultsKeyField.setText(Messages.getString("JarePluginDialog.RuleResultsKeyField.Label"));
+        props.setLook( wLabelRuleResultsKeyField );
+        wFormRuleResultsKeyField=new FormData();
+        wFormRuleResultsKeyField.left = new FormAttachment(0, 0);
+        wFormRuleResultsKeyField.right= new FormAttachment(middle, -margin);
+        wFormRuleResultsKeyField.top  = new FormAttachment(wComboOutputType, margin);
+		wLabelRuleResultsKeyField.setLayoutData(wFormRuleResultsKeyField);
+		wComboRuleResultsKeyField=new Combo(shell, SWT.VERTICAL | SWT.DROP_DOWN | SWT.BORDER);
+		// empty entry: the rule results rows contain all input fields
+		wComboRuleResultsKeyField.add("");
+		try
+		{
+			String[] inputFields = transMeta.getPrevStepFields(stepname).getFieldNames();
+			for(int i=0;i<inputFields.length;i++)
+			{
+				wComboRuleResultsKeyField.add(inputFields[i]);
+			}
+		}
+		catch(KettleException ke)
+		{
+			// the field name can still be entered
+		}
+		if(input.getRuleResultsKeyField()!=null)
+		{
+			wComboRuleResultsKeyField.setText(input.getRuleResultsKeyField());
+		}
+		props.setLook( wComboRuleResultsKeyField );
+        wComboRuleResultsKeyField.addModifyListener(lsMod);
+        wFormRuleResultsKeyField=new FormData();
+        wFormRuleResultsKeyField.left = new FormAttachment(middle, 0);
+        wFormRuleResultsKeyField.top  = new FormAttachment(wComboOutputType, margin);
+        wFormRuleResultsKeyField.right= new FormAttachment(100, 0);
+		wComboRuleResultsKeyField.setLayoutData(wFormRuleResultsKeyField);
+		
+		// Maximum number of failed results per rule
+		wLabelRuleResultsLimit=new Label(shell, SWT.RIGHT);
+		wLabelRuleResultsLimit.setText(Messages.getString("JarePluginDialog.RuleResultsLimit.Label"));
+        props.setLook( wLabelRuleResultsLimit );
+        wFormRuleResultsLimit=new FormData();
+        wFormRuleResultsLimit.left = new FormAttachment(0, 0);
+        wFormRuleResultsLimit.right= new FormAttachment(middle, -margin);
+        wFormRuleResultsLimit.top  = new FormAttachment(wComboRuleResultsKeyField, margin);
+        wLabelRuleResultsLimit.setLayoutData(wFormRuleResultsLimit);
+		wTextRuleResultsLimit=new Text(shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+		wTextRuleResultsLimit.setText(String.valueOf(input.getRuleResultsLimit()));
+        props.setLook( wTextRuleResultsLimit );
+        wTextRuleResultsLimit.addModifyListener(lsMod);
+		wFormRuleResultsLimit=new FormData();
+		wFormRuleResultsLimit.left = new FormAttachment(middle, 0);
+		wFormRuleResultsLimit.top  = new FormAttachment(wComboRuleResultsKeyField, margin);
+		wFormRuleResultsLimit.right= new FormAttachment(100, 0);
+		wTextRuleResultsLimit.setLayoutData(wFormRuleResultsLimit);
+		
+		// Time window for the maximum number of failed results per rule
+		wLabelRuleResultsLimitInterval=new Label(shell, SWT.RIGHT);
+		wLabelRuleResultsLimitInterval.setText(Messages.getString("JarePluginDialog.RuleResultsLimitInterval.Label"));
+        props.setLook( wLabelRuleResultsLimitInterval );
+        wFormRuleResultsLimitInterval=new FormData();
+        wFormRuleResultsLimitInterval.left = new FormAttachment(0, 0);
+        wFormRuleResultsLimitInterval.right= new FormAttachment(middle, -margin);
+        wFormRuleResultsLimitInterval.top  = new FormAttachment(wTextRuleResultsLimit, margin);
+        wLabelRuleResultsLimitInterval.setLayoutData(wFormRuleResultsLimitInterval);
+		wTextRuleResultsLimitInterval=new Text(shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+		wTextRuleResultsLimitInterval.setText(String.valueOf(input.getRuleResultsLimitInterval()));
+        props.setLook( wTextRuleResultsLimitInterval );
+        wTextRuleResultsLimitInterval.addModifyListener(lsMod);
+		wFormRuleResultsLimitInterval=new FormData();
+		wFormRuleResultsLimitInterval.left = new FormAttachment(middle, 0);
+		wFormRuleResultsLimitInterval.top  = new FormAttachment(wTextRuleResultsLimit, margin);
+		wFormRuleResultsLimitInterval.right= new FormAttachment(100, 0);
+		wTextRuleResultsLimitInterval.setLayoutData(wFormRuleResultsLimitInterval);
+		
+		// Rule Statistics Output Step
+		wLabelStepRuleStatistics=new Label(shell, SWT.RIGHT);
+		wLabelStepRuleStatistics.setText(Messages.getString("JarePluginDialog.Step.RuleStatistics"));
+        props.setLook( wLabelStepRuleStatistics );
+        wFormStepRuleStatistics=new FormData();
+        wFormStepRuleStatistics.left = new FormAttachment(0, 0);
+        wFormStepRuleStatistics.right= new FormAttachment(middle, -margin);
+        wFormStepRuleStatistics.top  = new FormAttachment(wTextRuleResultsLimitInterval, margin);
+        wLabelStepRuleStatistics.setLayoutData(wFormStepRuleStatistics);
+		wComboStepRuleStatistics=new Combo(shell, SWT.VERTICAL | SWT.DROP_DOWN | SWT.BORDER | SWT.READ_ONLY);
+		wComboStepRuleStatistics.add(Messages.getString("JarePluginDialog.Step.RuleResults.Type"));
+		for(int i=0;i<outputSteps.length;i++)
+		{
+			wComboStepRuleStatistics.add(outputSteps[i]);
+		}
+		if(input.getStepRuleStatistics()!=null)
+		{
+			wComboStepRuleStatistics.setText(input.getStepRuleStatistics());
+		}
+		else
+		{
+			wComboStepRuleStatistics.select(0);
+		}
+		props.setLook( wComboStepRuleStatistics );
+		wComboStepRuleStatistics.addModifyListener(lsMod);
+        wFormStepRuleStatistics=new FormData();
+        wFormStepRuleStatistics.left = new FormAttachment(middle, 0);
+        wFormStepRuleStatistics.top  = new FormAttachment(wTextRuleResultsLimitInterval, margin);
+        wFormStepRuleStatistics.right= new FormAttachment(100, 0);
+        wComboStepRuleStatistics.setLayoutData(wFormStepRuleStatistics);
+		
+		// Interval for the output of the rule statistics
+		wLabelRuleStatisticsInterval=new Label(shell, SWT.RIGHT);
+		wLabelRuleStatisticsInterval.setText(Messages.getString("JarePluginDialog.RuleStatisticsInterval.Label"));
+        props.setLook( wLabelRuleStatisticsInterval );
+        wFormRuleStatisticsInterval=new FormData();
+        wFormRuleStatisticsInterval.left = new FormAttachment(0, 0);
+        wFormRuleStatisticsInterval.right= new FormAttachment(middle, -margin);
+        wFormRuleStatisticsInterval.top  = new FormAttachment(wComboStepRuleStatistics, margin);
+        wLabelRuleStatisticsInterval.setLayoutData(wFormRuleStatisticsInterval);
+		wTextRuleStatisticsInterval=new Text(shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+		wTextRuleStatisticsInterval.setText(String.valueOf(input.getRuleStatisticsInterval()));
+        props.setLook( wTextRuleStatisticsInterval );
+        wTextRuleStatisticsInterval.addModifyListener(lsMod);
+		wFormRuleStatisticsInterval=new FormData();
+		wFormRuleStatisticsInterval.left = new FormAttachment(middle, 0);
+		wFormRuleStatisticsInterval.top  = new FormAttachment(wComboStepRuleStatistics, margin);
+		wFormRuleStatisticsInterval.right= new FormAttachment(100, 0);
+		wTextRuleStatisticsInterval.setLayoutData(wFormRuleStatisticsInterval);
 	
 		// buttons
 		wOK=new Button(shell, SWT.PUSH);
@@ -247,7 +650,7 @@ public class JarePluginDialog extends BaseStepDialog implements StepDialogInterf
 		wCancel=new Button(shell, SWT.PUSH);
 		wCancel.setText(Messages.getString("System.Button.Cancel")); //$NON-NLS-1$
 
-        BaseStepDialog.positionBottomButtons(shell, new Button[] { wOK, wCancel}, margin, wComboOutputType);
+        BaseStepDialog.positionBottomButtons(shell, new Button[] { wOK, wCancel}, margin, wTextRuleStatisticsInterval);
         
 		// Add listeners
 		lsCancel   = new Listener() { public void handleEvent(Event e) { cancel(); } };
@@ -260,9 +663,23 @@ public class JarePluginDialog extends BaseStepDialog implements StepDialogInterf
 		
 		wTextStepname.addSelectionListener( lsDef );
 		wTextRuleFile.addSelectionListener( lsDef );
+		wTextWatchInterval.addSelectionListener( lsDef );
+		wTextNumberOfThreads.addSelectionListener( lsDef );
+		wTextQueueSize.addSelectionListener( lsDef );
+		wTextMetricsSampleInterval.addSelectionListener( lsDef );
+		wTextResultCacheSize.addSelectionListener( lsDef );
+		wTextRuleGroupOrderWarmUp.addSelectionListener( lsDef );
 		wComboOutputType.addSelectionListener( lsDef );
 		wComboStepMain.addSelectionListener( lsDef );
 		wComboStepRuleResults.addSelectionListener( lsDef );
+		wComboRuleResultsKeyField.addSelectionListener( lsDef );
+		wTextRuleResultsLimit.addSelectionListener( lsDef );
+		wTextRuleResultsLimitInterval.addSelectionListener( lsDef );
+		wComboStepRuleStatistics.addSelectionListener( lsDef );
+		wComboStepPassed.addSelectionListener( lsDef );
+		wComboStepFailed.addSelectionListener( lsDef );
+		wComboStepSkipped.addSelectionListener( lsDef );
+		wTextRuleStatisticsInterval.addSelectionListener( lsDef );
 		
 		// Detect X or ALT-F4 or something that kills this window...
 		shell.addShellListener(	new ShellAdapter() { public void shellClosed(ShellEvent e) { cancel(); } } );
@@ -303,6 +720,23 @@ public class JarePluginDialog extends BaseStepDialog implements StepDialogInterf
 		input.setStepMain(wComboStepMain.getText());
 		input.setStepRuleResults(wComboStepRuleResults.getText());
 		input.setOutputType(wComboOutputType.getSelectionIndex());
+		input.setRuleResultsKeyField(wComboRuleResultsKeyField.getText());
+		input.setRuleResultsLimit(Const.toInt(wTextRuleResultsLimit.getText(), 0));
+		input.setRuleResultsLimitInterval(Const.toInt(wTextRuleResultsLimitInterval.getText(), JarePluginMeta.DEFAULT_RULE_RESULTS_LIMIT_INTERVAL));
+		input.setWatchRuleFile(wCheckWatchRuleFile.getSelection());
+		input.setWatchInterval(Const.toInt(wTextWatchInterval.getText(), JarePluginMeta.DEFAULT_WATCH_INTERVAL));
+		input.setNumberOfThreads(Const.toInt(wTextNumberOfThreads.getText(), 1));
+		input.setQueueSize(Const.toInt(wTextQueueSize.getText(), JarePluginMeta.DEFAULT_QUEUE_SIZE));
+		input.setUnorderedOutput(wCheckUnorderedOutput.getSelection());
+		input.setMetricsSampleInterval(Const.toInt(wTextMetricsSampleInterval.getText(), JarePluginMeta.DEFAULT_METRICS_SAMPLE_INTERVAL));
+		input.setResultCacheSize(Const.toInt(wTextResultCacheSize.getText(), 0));
+		input.setFailFast(wCheckFailFast.getSelection());
+		input.setRuleGroupOrderWarmUp(Const.toInt(wTextRuleGroupOrderWarmUp.getText(), 0));
+		input.setStepRuleStatistics(wComboStepRuleStatistics.getText());
+		input.setStepPassed(wComboStepPassed.getText());
+		input.setStepFailed(wComboStepFailed.getText());
+		input.setStepSkipped(wComboStepSkipped.getText());
+		input.setRuleStatisticsInterval(Const.toInt(wTextRuleStatisticsInterval.getText(), 0));
 		
 		dispose();
 	}
@@ -24,6 +24,7 @@ import java.util.Map;
 import org.eclipse.swt.widgets.Shell;
 import org.pentaho.di.core.CheckResult;
 import org.pentaho.di.core.CheckResultInterface;
+import org.pentaho.di.core.Const;
 import org.pentaho.di.core.Counter;
 import org.pentaho.di.core.annotations.Step;
 import org.pentaho.di.core.database.DatabaseMeta;
@@ -36,6 +37,7 @@ import org.pentaho.di.core.injection.InjectionSupported;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.core.row.ValueMetaInterface;
 import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaNumber;
 import org.pentaho.di.core.row.value.ValueMetaString;
 import org.pentaho.di.core.variables.VariableSpace;
 import org.pentaho.di.core.xml.XMLHandler;
@@ -66,10 +68,66 @@ public class JarePluginMeta extends BaseStepMeta implements StepMetaInterface
 	
 	private String stepMain;
 	private String stepRuleResults;
+	private String stepRuleStatistics;
+	// steps for the rows with passed, failed or only skipped groups instead of the main step
+	private String stepPassed;
+	private String stepFailed;
+	private String stepSkipped;
 	
 	@Injection( name = "RULE_RESULTS_STEP_OUTPUT_TYPE" )
 	private int outputType;
 	
+	@Injection( name = "RULE_RESULTS_KEY_FIELD" )
+	private String ruleResultsKeyField;
+	
+	@Injection( name = "WATCH_RULE_FILE" )
+	private boolean watchRuleFile;
+	
+	@Injection( name = "WATCH_INTERVAL" )
+	private int watchInterval;
+	
+	@Injection( name = "NUMBER_OF_THREADS" )
+	private int numberOfThreads;
+	
+	@Injection( name = "QUEUE_SIZE" )
+	private int queueSize;
+	
+	@Injection( name = "UNORDERED_OUTPUT" )
+	private boolean unorderedOutput;
+	
+	@Injection( name = "METRICS_SAMPLE_INTERVAL" )
+	private int metricsSampleInterval;
+	
+	@Injection( name = "RESULT_CACHE_SIZE" )
+	private int resultCacheSize;
+	
+	@Injection( name = "FAIL_FAST" )
+	private boolean failFast;
+	
+	@Injection( name = "RULEGROUP_ORDER_WARM_UP" )
+	private int ruleGroupOrderWarmUp;
+	
+	@Injection( name = "RULE_STATISTICS_INTERVAL" )
+	private int ruleStatisticsInterval;
+	
+	@Injection( name = "RULE_RESULTS_LIMIT" )
+	private int ruleResultsLimit;
+	
+	@Injection( name = "RULE_RESULTS_LIMIT_INTERVAL" )
+	private int ruleResultsLimitInterval;
+	
+	// default interval in seconds for checking the rule file for changes
+	public static final int DEFAULT_WATCH_INTERVAL = 10;
+	
+	// default maximum number of rows queued when running on multiple threads
+	public static final int DEFAULT_QUEUE_SIZE = 1000;
+	
+	// default number of rows after which a row is sampled for the metrics: no metrics are collected
+	public static final int DEFAULT_METRICS_SAMPLE_INTERVAL = 0;
+	
+	// default time window in seconds for limiting the failed rule results per rule
+	public static final int DEFAULT_RULE_RESULTS_LIMIT_INTERVAL = 60;
+	
 	public JarePluginMeta() 
 	{
 		super(); // allocate BaseStepInfo
@@ -116,6 +174,70 @@ public class JarePluginMeta extends BaseStepMeta implements StepMetaInterface
 		return stepRuleResults;
 	}
 	
+	/**
+	 * @param value The value to set.
+	 */
+	public void setStepRuleStatistics(String name)
+	{
+		this.stepRuleStatistics = name;
+	}
+	
+	/**
+	 * @return Returns the value.
+	 */
+	public String getStepRuleStatistics()
+	{
+		return stepRuleStatistics;
+	}
+	
+	/**
+	 * @param value The value to set.
+	 */
+	public void setStepPassed(String name)
+	{
+		this.stepPassed = name;
+	}
+	
+	/**
+	 * @return Returns the step for the rows without failed groups.
+	 */
+	public String getStepPassed()
+	{
+		return stepPassed;
+	}
+	
+	/**
+	 * @param value The value to set.
+	 */
+	public void setStepFailed(String name)
+	{
+		this.stepFailed = name;
+	}
+	
+	/**
+	 * @return Returns the step for the rows with at least one failed group.
+	 */
+	public String getStepFailed()
+	{
+		return stepFailed;
+	}
+	
+	/**
+	 * @param value The value to set.
+	 */
+	public void setStepSkipped(String name)
+	{
+		this.stepSkipped = name;
+	}
+	
+	/**
+	 * @return Returns the step for the rows for which all groups were skipped.
+	 */
+	public String getStepSkipped()
+	{
+		return stepSkipped;
+	}
+	
 	/**
 	 * @param value The value to set.
 	 */
@@ -140,6 +262,214 @@ public class JarePluginMeta extends BaseStepMeta implements StepMetaInterface
 		this.outputType = outputType;
 	}
 	
+	/**
+	 * @return Returns the key field of the rule results rows. if empty, the rows contain all input fields.
+	 */
+	public String getRuleResultsKeyField()
+	{
+		return ruleResultsKeyField;
+	}
+	
+	/**
+	 * @param value The key field of the rule results rows to set.
+	 */
+	public void setRuleResultsKeyField(String ruleResultsKeyField)
+	{
+		this.ruleResultsKeyField = ruleResultsKeyField;
+	}
+	
+	/**
+	 * @return Returns the value.
+	 */
+	public boolean getWatchRuleFile()
+	{
+		return watchRuleFile;
+	}
+	
+	/**
+	 * @param value The value to set.
+	 */
+	public void setWatchRuleFile(boolean watchRuleFile)
+	{
+		this.watchRuleFile = watchRuleFile;
+	}
+	
+	/**
+	 * @return Returns the interval in seconds.
+	 */
+	public int getWatchInterval()
+	{
+		return watchInterval;
+	}
+	
+	/**
+	 * @param value The interval in seconds to set.
+	 */
+	public void setWatchInterval(int watchInterval)
+	{
+		this.watchInterval = watchInterval;
+	}
+	
+	/**
+	 * @return Returns the number of threads that run the rule engine.
+	 */
+	public int getNumberOfThreads()
+	{
+		return numberOfThreads;
+	}
+	
+	/**
+	 * @param value The number of threads that run the rule engine.
+	 */
+	public void setNumberOfThreads(int numberOfThreads)
+	{
+		this.numberOfThreads = numberOfThreads;
+	}
+	
+	/**
+	 * @return Returns the maximum number of rows queued for the threads.
+	 */
+	public int getQueueSize()
+	{
+		return queueSize;
+	}
+	
+	/**
+	 * @param value The maximum number of rows queued for the threads.
+	 */
+	public void setQueueSize(int queueSize)
+	{
+		this.queueSize = queueSize;
+	}
+	
+	/**
+	 * @return Returns if the rows may be output in a different order than they were read.
+	 */
+	public boolean getUnorderedOutput()
+	{
+		return unorderedOutput;
+	}
+	
+	/**
+	 * @param value If the rows may be output in a different order than they were read.
+	 */
+	public void setUnorderedOutput(boolean unorderedOutput)
+	{
+		this.unorderedOutput = unorderedOutput;
+	}
+	
+	/**
+	 * @return Returns the number of rows after which a row is sampled for the metrics. 0 if no metrics are collected.
+	 */
+	public int getMetricsSampleInterval()
+	{
+		return metricsSampleInterval;
+	}
+	
+	/**
+	 * @param value The number of rows after which a row is sampled for the metrics. 0 if no metrics are collected.
+	 */
+	public void setMetricsSampleInterval(int metricsSampleInterval)
+	{
+		this.metricsSampleInterval = metricsSampleInterval;
+	}
+	
+	/**
+	 * @return Returns the maximum number of rows per thread for which the results of the rule engine are cached. 0 if they are not cached.
+	 */
+	public int getResultCacheSize()
+	{
+		return resultCacheSize;
+	}
+	
+	/**
+	 * @param value The maximum number of rows per thread for which the results of the rule engine are cached. 0 if they are not cached.
+	 */
+	public void setResultCacheSize(int resultCacheSize)
+	{
+		this.resultCacheSize = resultCacheSize;
+	}
+	
+	/**
+	 * @return Returns if the evaluation of a row stops at the first failed rulegroup.
+	 */
+	public boolean getFailFast()
+	{
+		return failFast;
+	}
+	
+	/**
+	 * @param value If the evaluation of a row stops at the first failed rulegroup.
+	 */
+	public void setFailFast(boolean failFast)
+	{
+		this.failFast = failFast;
+	}
+	
+	/**
+	 * @return Returns the number of rows used to learn the order of the rulegroups for fail-fast. 0 if the groups are run in their original order.
+	 */
+	public int getRuleGroupOrderWarmUp()
+	{
+		return ruleGroupOrderWarmUp;
+	}
+	
+	/**
+	 * @param value The number of rows used to learn the order of the rulegroups for fail-fast. 0 if the groups are run in their original order.
+	 */
+	public void setRuleGroupOrderWarmUp(int ruleGroupOrderWarmUp)
+	{
+		this.ruleGroupOrderWarmUp = ruleGroupOrderWarmUp;
+	}
+	
+	/**
+	 * @return Returns the interval in seconds for the output of the rule statistics. 0 if they are only output at the end.
+	 */
+	public int getRuleStatisticsInterval()
+	{
+		return ruleStatisticsInterval;
+	}
+	
+	/**
+	 * @param value The interval in seconds for the output of the rule statistics. 0 if they are only output at the end.
+	 */
+	public void setRuleStatisticsInterval(int ruleStatisticsInterval)
+	{
+		this.ruleStatisticsInterval = ruleStatisticsInterval;
+	}
+	
+	/**
+	 * @return Returns the maximum number of failed results output per rule within the time window. 0 if they are not limited.
+	 */
+	public int getRuleResultsLimit()
+	{
+		return ruleResultsLimit;
+	}
+	
+	/**
+	 * @param value The maximum number of failed results output per rule within the time window. 0 if they are not limited.
+	 */
+	public void setRuleResultsLimit(int ruleResultsLimit)
+	{
+		this.ruleResultsLimit = ruleResultsLimit;
+	}
+	
+	/**
+	 * @return Returns the time window in seconds for limiting the failed results per rule.
+	 */
+	public int getRuleResultsLimitInterval()
+	{
+		return ruleResultsLimitInterval;
+	}
+	
+	/**
+	 * @param value The time window in seconds for limiting the failed results per rule.
+	 */
+	public void setRuleResultsLimitInterval(int ruleResultsLimitInterval)
+	{
+		this.ruleResultsLimitInterval = ruleResultsLimitInterval;
+	}
+	
 	public String getXML() throws KettleException
 	{
 		StringBuffer retval = new StringBuffer(150);
@@ -148,6 +478,23 @@ public class JarePluginMeta extends BaseStepMeta implements StepMetaInterface
         retval.append("    ").append(XMLHandler.addTagValue("rule_step_main", stepMain));
         retval.append("    ").append(XMLHandler.addTagValue("rule_step_rule_results", stepRuleResults));
         retval.append("    ").append(XMLHandler.addTagValue("output_type", outputType));
+        retval.append("    ").append(XMLHandler.addTagValue("rule_results_key_field", ruleResultsKeyField));
+        retval.append("    ").append(XMLHandler.addTagValue("watch_rule_file", watchRuleFile));
+        retval.append("    ").append(XMLHandler.addTagValue("watch_interval", watchInterval));
+        retval.append("    ").append(XMLHandler.addTagValue("number_of_threads", numberOfThreads));
+        retval.append("    ").append(XMLHandler.addTagValue("queue_size", queueSize));
+        retval.append("    ").append(XMLHandler.addTagValue("unordered_output", unorderedOutput));
+        retval.append("    ").append(XMLHandler.addTagValue("metrics_sample_interval", metricsSampleInterval));
+        retval.append("    ").append(XMLHandler.addTagValue("result_cache_size", resultCacheSize));
+        retval.append("    ").append(XMLHandler.addTagValue("fail_fast", failFast));
+        retval.append("    ").append(XMLHandler.addTagValue("rulegroup_order_warm_up", ruleGroupOrderWarmUp));
+        retval.append("    ").append(XMLHandler.addTagValue("rule_step_rule_statistics", stepRuleStatistics));
+        retval.append("    ").append(XMLHandler.addTagValue("rule_statistics_interval", ruleStatisticsInterval));
+        retval.append("    ").append(XMLHandler.addTagValue("rule_results_limit", ruleResultsLimit));
+        retval.append("    ").append(XMLHandler.addTagValue("rule_results_limit_interval", ruleResultsLimitInterval));
+        retval.append("    ").append(XMLHandler.addTagValue("rule_step_passed", stepPassed));
+        retval.append("    ").append(XMLHandler.addTagValue("rule_step_failed", stepFailed));
+        retval.append("    ").append(XMLHandler.addTagValue("rule_step_skipped", stepSkipped));
         return retval.toString();
 	}
 
@@ -169,6 +516,23 @@ public class JarePluginMeta extends BaseStepMeta implements StepMetaInterface
 			stepMain =  XMLHandler.getTagValue(stepnode, "rule_step_main");
 			stepRuleResults =  XMLHandler.getTagValue(stepnode, "rule_step_rule_results");
 			outputType =  Integer.parseInt(XMLHandler.getTagValue(stepnode, "output_type"));
+			ruleResultsKeyField =  XMLHandler.getTagValue(stepnode, "rule_results_key_field");
+			watchRuleFile = "Y".equalsIgnoreCase(XMLHandler.getTagValue(stepnode, "watch_rule_file"));
+			watchInterval = Const.toInt(XMLHandler.getTagValue(stepnode, "watch_interval"), DEFAULT_WATCH_INTERVAL);
+			numberOfThreads = Const.toInt(XMLHandler.getTagValue(stepnode, "number_of_threads"), 1);
+			queueSize = Const.toInt(XMLHandler.getTagValue(stepnode, "queue_size"), DEFAULT_QUEUE_SIZE);
+			unorderedOutput = "Y".equalsIgnoreCase(XMLHandler.getTagValue(stepnode, "unordered_output"));
+			metricsSampleInterval = Const.toInt(XMLHandler.getTagValue(stepnode, "metrics_sample_interval"), DEFAULT_METRICS_SAMPLE_INTERVAL);
+			resultCacheSize = Const.toInt(XMLHandler.getTagValue(stepnode, "result_cache_size"), 0);
+			failFast = "Y".equalsIgnoreCase(XMLHandler.getTagValue(stepnode, "fail_fast"));
+			ruleGroupOrderWarmUp = Const.toInt(XMLHandler.getTagValue(stepnode, "rulegroup_order_warm_up"), 0);
+			stepRuleStatistics =  XMLHandler.getTagValue(stepnode, "rule_step_rule_statistics");
+			ruleStatisticsInterval = Const.toInt(XMLHandler.getTagValue(stepnode, "rule_statistics_interval"), 0);
+			ruleResultsLimit = Const.toInt(XMLHandler.getTagValue(stepnode, "rule_results_limit"), 0);
+			ruleResultsLimitInterval = Const.toInt(XMLHandler.getTagValue(stepnode, "rule_results_limit_interval"), DEFAULT_RULE_RESULTS_LIMIT_INTERVAL);
+			stepPassed = XMLHandler.getTagValue(stepnode, "rule_step_passed");
+			stepFailed = XMLHandler.getTagValue(stepnode, "rule_step_failed");
+			stepSkipped = XMLHandler.getTagValue(stepnode, "rule_step_skipped");
 
 		}
 		catch(Exception e)
@@ -183,13 +547,31 @@ public class JarePluginMeta extends BaseStepMeta implements StepMetaInterface
 		stepMain = "";
 		stepRuleResults = Messages.getString("JarePluginDialog.Step.RuleResults.Type");
 		outputType=0;
+		ruleResultsKeyField = "";
+		watchRuleFile = false;
+		watchInterval = DEFAULT_WATCH_INTERVAL;
+		numberOfThreads = 1;
+		queueSize = DEFAULT_QUEUE_SIZE;
+		unorderedOutput = false;
+		metricsSampleInterval = DEFAULT_METRICS_SAMPLE_INTERVAL;
+		resultCacheSize = 0;
+		failFast = false;
+		ruleGroupOrderWarmUp = 0;
+		stepRuleStatistics = Messages.getString("JarePluginDialog.Step.RuleResults.Type");
+		ruleStatisticsInterval = 0;
+		ruleResultsLimit = 0;
+		ruleResultsLimitInterval = DEFAULT_RULE_RESULTS_LIMIT_INTERVAL;
+		stepPassed = Messages.getString("JarePluginDialog.Step.Route.Main");
+		stepFailed = Messages.getString("JarePluginDialog.Step.Route.Main");
+		stepSkipped = Messages.getString("JarePluginDialog.Step.Route.Main");
 	}
 	
 	public void getFields(RowMetaInterface rowMeta, String origin, RowMetaInterface[] info, StepMeta nextStep, VariableSpace space) throws KettleStepException
 	{
 		//depending on who calls this method (preview, show output/input fields, etc)
 		// we need to give back the appropriate information
-		if( nextStep==null || nextStep.getName().equals(stepMain))
+		// the rows routed by their results have the same fields as the main output
+		if( nextStep==null || nextStep.getName().equals(stepMain) || nextStep.getName().equals(stepPassed) || nextStep.getName().equals(stepFailed) || nextStep.getName().equals(stepSkipped))
 		{
 			//ValueMetaInterface totalGroups=new ValueMeta("ruleengine_groups", ValueMeta.TYPE_INTEGER);
 			ValueMetaInterface totalGroups=new ValueMetaInteger("ruleengine_groups");
@@ -220,9 +602,32 @@ public class JarePluginMeta extends BaseStepMeta implements StepMetaInterface
 			ValueMetaInterface totalActions=new ValueMetaInteger("ruleengine_actions");
 			totalActions.setOrigin(origin);
 			rowMeta.addValueMeta( totalActions );
+			
+			// indicates that rulegroups were not run, because a group failed
+			if(failFast)
+			{
+				ValueMetaInterface truncated=new ValueMetaInteger("ruleengine_truncated");
+				truncated.setOrigin(origin);
+				rowMeta.addValueMeta( truncated );
+			}
 		}
 		else if(nextStep.getName().equals(stepRuleResults))
 		{
+			// if a key field is defined, the rule results rows only contain
+			// the key field instead of all input fields
+			if(ruleResultsKeyField!=null && ruleResultsKeyField.trim().length()>0)
+			{
+				String keyField = space!=null ? space.environmentSubstitute(ruleResultsKeyField) : ruleResultsKeyField;
+				ValueMetaInterface key = rowMeta.searchValueMeta(keyField);
+				if(key==null)
+				{
+					throw new KettleStepException("the key field for the rule results was not found in the input fields: " + keyField);
+				}
+				key = key.clone();
+				rowMeta.clear();
+				rowMeta.addValueMeta( key );
+			}
+			
 			//ValueMetaInterface group = new ValueMeta("ruleengine_group", ValueMeta.TYPE_STRING);
 			ValueMetaInterface group = new ValueMetaString("ruleengine_group");
 			group.setOrigin(origin);
@@ -268,6 +673,39 @@ public class JarePluginMeta extends BaseStepMeta implements StepMetaInterface
 			ruleMessage.setOrigin(origin);
 			rowMeta.addValueMeta( ruleMessage );
 		}
+		else if(nextStep.getName().equals(stepRuleStatistics))
+		{
+			// the rule statistics rows do not contain any input fields
+			rowMeta.clear();
+			
+			ValueMetaInterface group = new ValueMetaString("ruleengine_group");
+			group.setOrigin(origin);
+			rowMeta.addValueMeta( group );
+			
+			ValueMetaInterface subgroup = new ValueMetaString("ruleengine_subgroup");
+			subgroup.setOrigin(origin);
+			rowMeta.addValueMeta( subgroup );
+			
+			ValueMetaInterface rule = new ValueMetaString("ruleengine_rule");
+			rule.setOrigin(origin);
+			rowMeta.addValueMeta( rule );
+			
+			ValueMetaInterface evaluated = new ValueMetaInteger("ruleengine_evaluated");
+			evaluated.setOrigin(origin);
+			rowMeta.addValueMeta( evaluated );
+			
+			ValueMetaInterface failed = new ValueMetaInteger("ruleengine_failed");
+			failed.setOrigin(origin);
+			rowMeta.addValueMeta( failed );
+			
+			ValueMetaInterface skipped = new ValueMetaInteger("ruleengine_skipped");
+			skipped.setOrigin(origin);
+			rowMeta.addValueMeta( skipped );
+			
+			ValueMetaInterface failureRate = new ValueMetaNumber("ruleengine_failure_rate");
+			failureRate.setOrigin(origin);
+			rowMeta.addValueMeta( failureRate );
+		}
 	}
 
 	public void readRep(Repository rep, ObjectId id_step, List<DatabaseMeta> databases, Map<String,Counter> counters) throws KettleException
@@ -278,6 +716,40 @@ public class JarePluginMeta extends BaseStepMeta implements StepMetaInterface
 			stepMain = rep.getStepAttributeString(id_step, "rule_step_main");
 			stepRuleResults = rep.getStepAttributeString(id_step, "rule_step_rule_results");
 			outputType = Integer.parseInt(rep.getStepAttributeString(id_step, "output_type"));
+			ruleResultsKeyField = rep.getStepAttributeString(id_step, "rule_results_key_field");
+			watchRuleFile = rep.getStepAttributeBoolean(id_step, "watch_rule_file");
+			watchInterval = (int)rep.getStepAttributeInteger(id_step, "watch_interval");
+			if(watchInterval<=0)
+			{
+				watchInterval = DEFAULT_WATCH_INTERVAL;
+			}
+			numberOfThreads = (int)rep.getStepAttributeInteger(id_step, "number_of_threads");
+			if(numberOfThreads<=0)
+			{
+				numberOfThreads = 1;
+			}
+			queueSize = (int)rep.getStepAttributeInteger(id_step, "queue_size");
+			if(queueSize<=0)
+			{
+				queueSize = DEFAULT_QUEUE_SIZE;
+			}
+			unorderedOutput = rep.getStepAttributeBoolean(id_step, "unordered_output");
+			// 0 is a valid value, so a missing attribute is detected using its string value
+			metricsSampleInterval = Const.toInt(rep.getStepAttributeString(id_step, "metrics_sample_interval"), DEFAULT_METRICS_SAMPLE_INTERVAL);
+			resultCacheSize = (int)rep.getStepAttributeInteger(id_step, "result_cache_size");
+			failFast = rep.getStepAttributeBoolean(id_step, "fail_fast");
+			ruleGroupOrderWarmUp = (int)rep.getStepAttributeInteger(id_step, "rulegroup_order_warm_up");
+			stepRuleStatistics = rep.getStepAttributeString(id_step, "rule_step_rule_statistics");
+			ruleStatisticsInterval = (int)rep.getStepAttributeInteger(id_step, "rule_statistics_interval");
+			ruleResultsLimit = (int)rep.getStepAttributeInteger(id_step, "rule_results_limit");
+			ruleResultsLimitInterval = (int)rep.getStepAttributeInteger(id_step, "rule_results_limit_interval");
+			if(ruleResultsLimitInterval<=0)
+			{
+				ruleResultsLimitInterval = DEFAULT_RULE_RESULTS_LIMIT_INTERVAL;
+			}
+			stepPassed = rep.getStepAttributeString(id_step, "rule_step_passed");
+			stepFailed = rep.getStepAttributeString(id_step, "rule_step_failed");
+			stepSkipped = rep.getStepAttributeString(id_step, "rule_step_skipped");
 			
 		}
 		catch(KettleDatabaseException dbe)
@@ -298,6 +770,23 @@ public class JarePluginMeta extends BaseStepMeta implements StepMetaInterface
 			rep.saveStepAttribute(id_transformation, id_step, "rule_step_main", stepMain);
 			rep.saveStepAttribute(id_transformation, id_step, "rule_step_rule_results", stepRuleResults);
 			rep.saveStepAttribute(id_transformation, id_step, "output_type", outputType);
+			rep.saveStepAttribute(id_transformation, id_step, "rule_results_key_field", ruleResultsKeyField);
+			rep.saveStepAttribute(id_transformation, id_step, "watch_rule_file", watchRuleFile);
+			rep.saveStepAttribute(id_transformation, id_step, "watch_interval", watchInterval);
+			rep.saveStepAttribute(id_transformation, id_step, "number_of_threads", numberOfThreads);
+			rep.saveStepAttribute(id_transformation, id_step, "queue_size", queueSize);
+			rep.saveStepAttribute(id_transformation, id_step, "unordered_output", unorderedOutput);
+			rep.saveStepAttribute(id_transformation, id_step, "metrics_sample_interval", metricsSampleInterval);
+			rep.saveStepAttribute(id_transformation, id_step, "result_cache_size", resultCacheSize);
+			rep.saveStepAttribute(id_transformation, id_step, "fail_fast", failFast);
+			rep.saveStepAttribute(id_transformation, id_step, "rulegroup_order_warm_up", ruleGroupOrderWarmUp);
+			rep.saveStepAttribute(id_transformation, id_step, "rule_step_rule_statistics", stepRuleStatistics);
+			rep.saveStepAttribute(id_transformation, id_step, "rule_statistics_interval", ruleStatisticsInterval);
+			rep.saveStepAttribute(id_transformation, id_step, "rule_results_limit", ruleResultsLimit);
+			rep.saveStepAttribute(id_transformation, id_step, "rule_results_limit_interval", ruleResultsLimitInterval);
+			rep.saveStepAttribute(id_transformation, id_step, "rule_step_passed", stepPassed);
+			rep.saveStepAttribute(id_transformation, id_step, "rule_step_failed", stepFailed);
+			rep.saveStepAttribute(id_transformation, id_step, "rule_step_skipped", stepSkipped);
 		}
 		catch(KettleDatabaseException dbe)
 		{
@@ -350,6 +839,28 @@ public class JarePluginMeta extends BaseStepMeta implements StepMetaInterface
 	        cr = new CheckResult(CheckResult.TYPE_RESULT_WARNING, "Rule results output step undefined", stepMeta);
 	        remarks.add(cr);
 	    } 
+	    // the rule statistics need their own output stream
+	    if (stepRuleStatistics!=null && stepRuleStatistics.length()>0 && !stepRuleStatistics.equals(Messages.getString("JarePluginDialog.Step.RuleResults.Type")) && (stepRuleStatistics.equals(stepMain) || stepRuleStatistics.equals(stepRuleResults)))
+	    {
+	        cr = new CheckResult(CheckResult.TYPE_RESULT_ERROR, "Rule statistics output step must be different from the main and rule results output steps", stepMeta);
+	        remarks.add(cr);
+	    }
+	    // fail-fast does not run all groups, so there are no complete rule results or statistics
+	    if (failFast && ((stepRuleResults!=null && stepRuleResults.length()>0 && !stepRuleResults.equals(Messages.getString("JarePluginDialog.Step.RuleResults.Type"))) || (stepRuleStatistics!=null && stepRuleStatistics.length()>0 && !stepRuleStatistics.equals(Messages.getString("JarePluginDialog.Step.RuleResults.Type")))))
+	    {
+	        cr = new CheckResult(CheckResult.TYPE_RESULT_ERROR, "Fail-fast can not be used together with a rule results or rule statistics output step", stepMeta);
+	        remarks.add(cr);
+	    }
+	    // the rows routed by their results can not be output to the rule results or statistics steps
+	    String[] routeSteps = new String[] {stepPassed, stepFailed, stepSkipped};
+	    for(int i=0;i<routeSteps.length;i++)
+	    {
+	    	if (routeSteps[i]!=null && routeSteps[i].length()>0 && (routeSteps[i].equals(stepRuleResults) || routeSteps[i].equals(stepRuleStatistics)))
+	    	{
+	    		cr = new CheckResult(CheckResult.TYPE_RESULT_ERROR, "Output step for passed, failed or skipped rows must be different from the rule results and rule statistics output steps: " + routeSteps[i], stepMeta);
+	    		remarks.add(cr);
+	    	}
+	    }
 	}
 	
 	public StepDialogInterface getDialog(Shell shell, StepMetaInterface meta, TransMeta transMeta, String name)
@@ -0,0 +1,190 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.datamelt.kettle.jare;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Caches the results of the rule engine for rows with the same values in the
+ * fields read by the rules, so repeated rows - e.g. from change data capture or
+ * slowly changing dimensions - do not run the rule engine again.
+ * 
+ * The key of a row consists of the values of the fields referenced by the rules
+ * of the rule project. The rule engine evaluates the rules of a row only based on
+ * these fields, so a row with the same values in these fields has the same results.
+ * The fields are determined from the rule files before the first row, so the
+ * results must not be cached for rule projects with actions or with references
+ * to fields that can not be determined.
+ * 
+ * Results of rows for which the rule engine updated fields must not be cached.
+ * The least recently used entries are removed when the cache is full. Each thread
+ * running the rule engine uses its own cache.
+ * 
+ * @author uwe geercken - uwe.geercken@web.de
+ */
+public class ResultCache
+{
+	private final LinkedHashMap<Key, Result> entries;
+	
+	// indexes of the fields the key consists of
+	private final int[] keyFields;
+	
+	private long hits = 0;
+	private long misses = 0;
+	
+	/**
+	 * @param maximumSize	the maximum number of rows cached
+	 * @param keyFields		the indexes of the fields referenced by the rules
+	 */
+	public ResultCache(final int maximumSize, int[] keyFields)
+	{
+		this.keyFields = keyFields.clone();
+		this.entries = new LinkedHashMap<Key, Result>(16, 0.75f, true)
+		{
+			private static final long serialVersionUID = 1L;
+			
+			protected boolean removeEldestEntry(Map.Entry<Key, Result> eldest)
+			{
+				return size()>maximumSize;
+			}
+		};
+	}
+	
+	/**
+	 * @param row	the input row
+	 * @return		the cached results for the row or null
+	 */
+	public Result get(Object[] row)
+	{
+		Result result = entries.get(new Key(row, keyFields));
+		if(result!=null)
+		{
+			hits++;
+		}
+		else
+		{
+			misses++;
+		}
+		return result;
+	}
+	
+	/**
+	 * caches the results of the row
+	 * 
+	 * @param row		the input row
+	 * @param result	the results of the rule engine for the row
+	 */
+	public void put(Object[] row, Result result)
+	{
+		entries.put(new Key(row, keyFields), result);
+	}
+	
+	/**
+	 * @return	the number of rows for which the results were cached
+	 */
+	public long getHits()
+	{
+		return hits;
+	}
+	
+	/**
+	 * @return	the number of rows for which the results were not cached
+	 */
+	public long getMisses()
+	{
+		return misses;
+	}
+	
+	/**
+	 * the results of the rule engine for a row
+	 */
+	public static class Result
+	{
+		private final long[] counters;
+		private final Object[][] ruleResults;
+		private final RuleResultsLimiter.RuleCounter[] ruleCounters;
+		
+		/**
+		 * @param counters		the values of the fields added to the main output row
+		 * @param ruleResults	the values of the fields of the rule results rows or null
+		 * @param ruleCounters	the counters of the rules of the rule results rows for the limit of the failed results or null
+		 */
+		public Result(long[] counters, Object[][] ruleResults, RuleResultsLimiter.RuleCounter[] ruleCounters)
+		{
+			this.counters = counters;
+			this.ruleResults = ruleResults;
+			this.ruleCounters = ruleCounters;
+		}
+		
+		/**
+		 * @return	the values of the fields added to the main output row
+		 */
+		public long[] getCounters()
+		{
+			return counters;
+		}
+		
+		/**
+		 * @return	the values of the fields of the rule results rows or null
+		 */
+		public Object[][] getRuleResults()
+		{
+			return ruleResults;
+		}
+		
+		/**
+		 * @return	the counters of the rules of the rule results rows or null
+		 */
+		public RuleResultsLimiter.RuleCounter[] getRuleCounters()
+		{
+			return ruleCounters;
+		}
+	}
+	
+	/**
+	 * the values of the fields referenced by the rules
+	 */
+	private static class Key
+	{
+		private final Object[] values;
+		private final int hashCode;
+		
+		private Key(Object[] row, int[] keyFields)
+		{
+			values = new Object[keyFields.length];
+			for(int i=0;i<keyFields.length;i++)
+			{
+				values[i] = row[keyFields[i]];
+			}
+			hashCode = Arrays.hashCode(values);
+		}
+		
+		public int hashCode()
+		{
+			return hashCode;
+		}
+		
+		public boolean equals(Object object)
+		{
+			return object instanceof Key && hashCode==((Key)object).hashCode && Arrays.equals(values, ((Key)object).values);
+		}
+	}
+}
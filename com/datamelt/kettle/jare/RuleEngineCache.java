@@ -0,0 +1,377 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.datamelt.kettle.jare;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FilenameFilter;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.zip.ZipFile;
+
+import org.pentaho.di.core.logging.LogChannelInterface;
+
+import com.datamelt.rules.engine.BusinessRulesEngine;
+
+/**
+ * JVM-wide cache of parsed rule engines, shared by all copies of the
+ * rule engine step and by all transformations running in the same JVM.
+ *
+ * Entries are keyed by the canonical path of the rule file, zip file or
+ * folder. Each entry carries a signature made of the size and the
+ * modification time of the file(s), so a changed rule project is parsed
+ * again instead of being served from the cache.
+ *
+ * The rule engine only loads the rulegroups that are valid on the day the
+ * rule project is parsed. Each entry therefore also carries the date it was
+ * parsed on, and entries parsed on an earlier day are parsed again, so a
+ * long running JVM activates groups that became valid in the meantime.
+ *
+ * A rule engine keeps the results of the last execution, so an instance
+ * can only be used by one step copy at a time. Each step copy leases its
+ * own instance when it is initialized and returns it when it is disposed.
+ * Returned instances are kept and handed out to the next step copy or
+ * transformation that uses the same rule project, so that the rule
+ * project is only parsed when no idle instance is available. The number
+ * of leased instances is the reference count of the entry; entries
+ * without references are evicted after an idle timeout by a daemon timer,
+ * which ends when the cache is empty.
+ *
+ * @author uwe geercken - uwe.geercken@web.de
+ */
+public class RuleEngineCache
+{
+	// idle rule engines are evicted after this time without any reference
+	private static final long IDLE_TIMEOUT_MILLIS = 10 * 60 * 1000;
+
+	// current entry per canonical path of the rule project
+	private static final Map<String, Entry> entries = new HashMap<String, Entry>();
+	// entry that a leased rule engine was taken from
+	private static final Map<BusinessRulesEngine, Entry> leases = new IdentityHashMap<BusinessRulesEngine, Entry>();
+	// evicts the entries without references when their idle timeout has passed
+	private static Timer evictionTimer;
+	private static boolean evictionScheduled;
+
+	private RuleEngineCache()
+	{
+	}
+
+	/**
+	 * leases a rule engine for the given rule file, zip file or folder.
+	 *
+	 * an idle instance of the same, unchanged rule project is reused. if
+	 * there is none, the rule project is parsed. parsing happens outside of
+	 * the lock, so multiple step copies may load their instances in parallel.
+	 *
+	 * the rule engine has to be returned using the release() method.
+	 *
+	 * @param realFilename	the rule file, zip file or folder
+	 * @param log			the log channel of the calling step
+	 * @return				a rule engine for exclusive use by the caller
+	 * @throws Exception	when the rule project can not be found or parsed
+	 */
+	public static BusinessRulesEngine acquire(String realFilename, LogChannelInterface log) throws Exception
+	{
+		File f = new File(realFilename);
+		if(!f.exists())
+		{
+			throw new FileNotFoundException("the specified rule file was not found: " + realFilename);
+		}
+		String path = f.getCanonicalPath();
+		String signature = getSignature(f);
+		LocalDate today = LocalDate.now();
+
+		Entry entry;
+		synchronized(entries)
+		{
+			evictIdleEntries();
+			entry = entries.get(path);
+			if(entry!=null && !entry.signature.equals(signature))
+			{
+				// the rule project has changed. instances that are still leased
+				// are discarded when they are released
+				log.logDebug("rule project has changed since it was cached: " + realFilename);
+				entries.remove(path);
+				entry = null;
+			}
+			else if(entry!=null && !entry.parseDate.equals(today))
+			{
+				// the valid rulegroups depend on the date the project was parsed on
+				log.logDebug("rule project was cached on an earlier day and is parsed again: " + realFilename);
+				entries.remove(path);
+				entry = null;
+			}
+			if(entry==null)
+			{
+				entry = new Entry(path, signature, today);
+				entries.put(path, entry);
+			}
+			entry.references++;
+			BusinessRulesEngine idleEngine = entry.idle.poll();
+			if(idleEngine!=null)
+			{
+				leases.put(idleEngine, entry);
+				log.logDebug("reusing cached business rule engine for: " + realFilename);
+				return idleEngine;
+			}
+		}
+
+		BusinessRulesEngine engine = null;
+		try
+		{
+			engine = load(f, realFilename, log);
+		}
+		finally
+		{
+			synchronized(entries)
+			{
+				if(engine!=null)
+				{
+					leases.put(engine, entry);
+				}
+				else
+				{
+					entry.references--;
+					entry.lastReleased = System.currentTimeMillis();
+					scheduleEviction();
+				}
+			}
+		}
+		return engine;
+	}
+
+	/**
+	 * returns a rule engine that was leased using the acquire() method.
+	 *
+	 * the results of the last execution are cleared and the instance is kept
+	 * for reuse unless the rule project has changed in the meantime.
+	 *
+	 * @param engine		the rule engine to return
+	 */
+	public static void release(BusinessRulesEngine engine)
+	{
+		synchronized(entries)
+		{
+			Entry entry = leases.remove(engine);
+			if(entry==null)
+			{
+				return;
+			}
+			entry.references--;
+			entry.lastReleased = System.currentTimeMillis();
+			if(entries.get(entry.path)==entry)
+			{
+				engine.getRuleExecutionCollection().clear();
+				entry.idle.push(engine);
+			}
+			evictIdleEntries();
+			scheduleEviction();
+		}
+	}
+
+	/**
+	 * removes all entries that have no references and have been idle
+	 * for longer than the timeout. must be called holding the lock.
+	 */
+	private static void evictIdleEntries()
+	{
+		long now = System.currentTimeMillis();
+		Iterator<Entry> iterator = entries.values().iterator();
+		while(iterator.hasNext())
+		{
+			Entry entry = iterator.next();
+			if(entry.references==0 && now - entry.lastReleased > IDLE_TIMEOUT_MILLIS)
+			{
+				iterator.remove();
+			}
+		}
+	}
+
+	/**
+	 * schedules the eviction of the entries without references for the time the
+	 * first of them reaches the idle timeout. the timer is ended when there is no
+	 * such entry. must be called holding the lock.
+	 */
+	private static void scheduleEviction()
+	{
+		if(evictionScheduled)
+		{
+			return;
+		}
+		long nextEviction = Long.MAX_VALUE;
+		Iterator<Entry> iterator = entries.values().iterator();
+		while(iterator.hasNext())
+		{
+			Entry entry = iterator.next();
+			if(entry.references==0)
+			{
+				nextEviction = Math.min(nextEviction, entry.lastReleased + IDLE_TIMEOUT_MILLIS);
+			}
+		}
+		if(nextEviction==Long.MAX_VALUE)
+		{
+			if(evictionTimer!=null)
+			{
+				evictionTimer.cancel();
+				evictionTimer = null;
+			}
+			return;
+		}
+		if(evictionTimer==null)
+		{
+			evictionTimer = new Timer("rule engine cache - idle rule engines", true);
+		}
+		evictionScheduled = true;
+		evictionTimer.schedule(new TimerTask()
+		{
+			public void run()
+			{
+				synchronized(entries)
+				{
+					evictionScheduled = false;
+					evictIdleEntries();
+					scheduleEviction();
+				}
+			}
+		}, Math.max(1, nextEviction + 1 - System.currentTimeMillis()));
+	}
+
+	/**
+	 * the signature of a rule project consists of the size and the last modification
+	 * time of the file. for a folder the number of xml files, their total size and the
+	 * latest modification time are used, as modifying a file does not change the
+	 * modification time of the folder itself.
+	 */
+	static String getSignature(File f)
+	{
+		if(f.isDirectory())
+		{
+			File[] listOfFiles = f.listFiles(XML_FILE_FILTER);
+			if(listOfFiles==null)
+			{
+				listOfFiles = new File[0];
+			}
+			long totalLength = 0;
+			long lastModified = f.lastModified();
+			for(int i=0;i<listOfFiles.length;i++)
+			{
+				totalLength = totalLength + listOfFiles[i].length();
+				lastModified = Math.max(lastModified, listOfFiles[i].lastModified());
+			}
+			return listOfFiles.length + ":" + totalLength + ":" + lastModified;
+		}
+		else
+		{
+			return f.length() + ":" + f.lastModified();
+		}
+	}
+
+	/**
+	 * parses the rule project. a zip file containing all rules, a folder containing
+	 * xml rule files or a single xml rule file may be used.
+	 */
+	private static BusinessRulesEngine load(File f, String realFilename, LogChannelInterface log) throws Exception
+	{
+		log.logDebug("trying to use file for the ruleengine: " + realFilename);
+
+		// we can use a zip file containing all rules
+		if(f.isFile() && realFilename.endsWith(".zip"))
+		{
+			log.logDebug("found zip file to read xml rule files: " + realFilename);
+			// the rule files are parsed when the rule engine is created
+			ZipFile zip = new ZipFile(realFilename);
+			try
+			{
+				return new BusinessRulesEngine(zip);
+			}
+			finally
+			{
+				zip.close();
+			}
+		}
+		// we can also use a directory and read all files from there
+		else if(f.isDirectory())
+		{
+			// use a filter - we only want to read xml files
+			log.logDebug("found folder to read xml rules files: " + realFilename);
+			// get list of files for the given filter
+			File[] listOfFiles = f.listFiles(XML_FILE_FILTER);
+			// initialize rule engine with list of files
+			return new BusinessRulesEngine(listOfFiles);
+		}
+		else
+		{
+			log.logDebug("found single xml rules file: " + realFilename);
+			return new BusinessRulesEngine(realFilename);
+		}
+	}
+
+	/**
+	 * filter for reading the xml rule files from a folder
+	 */
+	static final FilenameFilter XML_FILE_FILTER = new FilenameFilter()
+	{
+		@Override
+		public boolean accept(File dir, String name)
+		{
+			if(name.lastIndexOf('.')>0)
+			{
+				// get last index for '.' char
+				int lastIndex = name.lastIndexOf('.');
+
+				// get extension
+				String str = name.substring(lastIndex);
+
+				// match path name extension
+				if(str.equals(".xml"))
+				{
+					return true;
+				}
+			}
+			return false;
+		}
+	};
+
+	/**
+	 * cached instances of one version of a rule project
+	 */
+	private static class Entry
+	{
+		private final String path;
+		private final String signature;
+		// day on which the instances were parsed, as it determines the active rulegroups
+		private final LocalDate parseDate;
+		private final ArrayDeque<BusinessRulesEngine> idle = new ArrayDeque<BusinessRulesEngine>();
+		private int references;
+		private long lastReleased = System.currentTimeMillis();
+
+		private Entry(String path, String signature, LocalDate parseDate)
+		{
+			this.path = path;
+			this.signature = signature;
+			this.parseDate = parseDate;
+		}
+	}
+}
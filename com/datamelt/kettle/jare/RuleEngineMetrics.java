@@ -0,0 +1,447 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.datamelt.kettle.jare;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.pentaho.di.trans.step.StepInterface;
+
+import com.datamelt.rules.core.RuleGroup;
+import com.datamelt.rules.core.RuleSubGroup;
+import com.datamelt.rules.core.XmlRule;
+import com.datamelt.rules.engine.BusinessRulesEngine;
+
+/**
+ * Collects metrics of a rule engine step copy: the throughput of the step, the
+ * time the rule engine takes per row and how often each group and rule fails.
+ *
+ * To keep the overhead low, only every n-th row is sampled: the time of the rule
+ * engine is measured and the results of the groups and rules are counted. The
+ * times are kept in a histogram with eight buckets per power of two, so the
+ * percentiles are accurate to about 12 percent.
+ *
+ * JaRE runs all groups of a row in one call, so the time is measured per row and
+ * not per group or rule.
+ *
+ * The counters of the groups and rules of a rule engine are looked up once per
+ * rule engine and kept by the caller, so recording the results of a sampled row
+ * does not build the keys of the rules again.
+ *
+ * The rows may be sampled by multiple threads; the metrics may be read at any time.
+ *
+ * @author uwe geercken - uwe.geercken@web.de
+ */
+public class RuleEngineMetrics implements RuleEngineMetricsMBean
+{
+	// domain of the names of the JMX beans
+	public static final String JMX_DOMAIN = "com.datamelt.kettle";
+
+	// buckets of the histogram: 8 for the values 0 to 7, then 8 per power of two
+	private static final int NUMBER_OF_BUCKETS = 61 * 8;
+
+	private final StepInterface step;
+	private final int sampleInterval;
+	private final long started = System.nanoTime();
+
+	private final AtomicLong sampledRows = new AtomicLong();
+	private final AtomicLong engineNanos = new AtomicLong();
+	private final AtomicLong engineNanosMax = new AtomicLong();
+	private final AtomicLongArray histogram = new AtomicLongArray(NUMBER_OF_BUCKETS);
+
+	// counters by the id of the group and of the rule
+	private final ConcurrentHashMap<String, Counter> groups = new ConcurrentHashMap<String, Counter>();
+	private final ConcurrentHashMap<String, Counter> rules = new ConcurrentHashMap<String, Counter>();
+
+	private ObjectName objectName;
+
+	/**
+	 * @param step				the step the metrics are collected for
+	 * @param sampleInterval	the number of rows after which a row is sampled
+	 */
+	public RuleEngineMetrics(StepInterface step, int sampleInterval)
+	{
+		this.step = step;
+		this.sampleInterval = Math.max(1, sampleInterval);
+	}
+
+	/**
+	 * @param lineNumber	the number of the row
+	 * @return				true if the row is sampled
+	 */
+	public boolean isSampled(long lineNumber)
+	{
+		return lineNumber % sampleInterval == 0;
+	}
+
+	/**
+	 * returns the counters of the groups and rules of the rule engine
+	 *
+	 * @param counters	the counters returned for the last rule engine or null
+	 * @param engine	the rule engine
+	 * @return			the given counters if they belong to the rule engine, otherwise the counters looked up for it
+	 */
+	public EngineCounters getEngineCounters(EngineCounters counters, BusinessRulesEngine engine)
+	{
+		if(counters!=null && counters.engine==engine)
+		{
+			return counters;
+		}
+		return new EngineCounters(engine, groups, rules);
+	}
+
+	/**
+	 * records the time the rule engine took for a sampled row and the results
+	 * of its groups and rules.
+	 *
+	 * @param counters	the counters of the rule engine after running the row
+	 * @param nanos		the time the rule engine took for the row
+	 */
+	public void record(EngineCounters counters, long nanos)
+	{
+		recordTime(nanos);
+		recordResults(counters);
+	}
+
+	/**
+	 * records the time the rule engines took for a sampled row.
+	 *
+	 * @param nanos		the time the rule engines took for the row
+	 */
+	public void recordTime(long nanos)
+	{
+		sampledRows.incrementAndGet();
+		engineNanos.addAndGet(nanos);
+		histogram.incrementAndGet(getBucket(nanos));
+		long max = engineNanosMax.get();
+		while(nanos>max && !engineNanosMax.compareAndSet(max, nanos))
+		{
+			max = engineNanosMax.get();
+		}
+	}
+
+	/**
+	 * records the results of the groups and rules of a rule engine for a sampled row.
+	 *
+	 * @param counters	the counters of the rule engine after running the row
+	 */
+	public void recordResults(EngineCounters counters)
+	{
+		BusinessRulesEngine engine = counters.engine;
+		for(int i=0;i<counters.groupCounters.length;i++)
+		{
+			RuleGroup group = engine.getGroups().get(i);
+			Counter groupCounter = counters.groupCounters[i];
+			groupCounter.evaluated.incrementAndGet();
+			if(group.getSkipped()==1)
+			{
+				// the rules of a skipped group are not evaluated
+				groupCounter.skipped.incrementAndGet();
+				continue;
+			}
+			if(group.getFailed()==1)
+			{
+				groupCounter.failed.incrementAndGet();
+			}
+			Counter[][] ruleCountersOfGroup = counters.ruleCounters[i];
+			for(int f=0;f<ruleCountersOfGroup.length;f++)
+			{
+				RuleSubGroup subgroup = group.getSubGroups().get(f);
+				Counter[] ruleCountersOfSubgroup = ruleCountersOfGroup[f];
+				for(int g=0;g<ruleCountersOfSubgroup.length;g++)
+				{
+					Counter ruleCounter = ruleCountersOfSubgroup[g];
+					ruleCounter.evaluated.incrementAndGet();
+					if(subgroup.getRulesCollection().get(g).getFailed()==1)
+					{
+						ruleCounter.failed.incrementAndGet();
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * registers the metrics as JMX bean. a bean registered for the same step copy
+	 * by an earlier run of the transformation is replaced.
+	 *
+	 * @param transformationName	the name of the transformation
+	 * @param stepName				the name of the step
+	 * @param copy					the number of the step copy
+	 * @throws Exception			when the bean can not be registered
+	 */
+	public void register(String transformationName, String stepName, int copy) throws Exception
+	{
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName(JMX_DOMAIN + ":type=RuleEngine,transformation=" + ObjectName.quote(String.valueOf(transformationName)) + ",step=" + ObjectName.quote(stepName) + ",copy=" + copy);
+		if(server.isRegistered(name))
+		{
+			server.unregisterMBean(name);
+		}
+		server.registerMBean(this, name);
+		objectName = name;
+	}
+
+	/**
+	 * removes the JMX bean, if it was registered
+	 *
+	 * @throws Exception	when the bean can not be removed
+	 */
+	public void unregister() throws Exception
+	{
+		if(objectName!=null)
+		{
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+			objectName = null;
+		}
+	}
+
+	public long getRowsProcessed()
+	{
+		return step.getLinesRead();
+	}
+
+	public double getRowsPerSecond()
+	{
+		long nanos = System.nanoTime() - started;
+		return nanos>0 ? step.getLinesRead() * 1000000000.0 / nanos : 0;
+	}
+
+	public int getSampleInterval()
+	{
+		return sampleInterval;
+	}
+
+	public long getSampledRows()
+	{
+		return sampledRows.get();
+	}
+
+	public long getEngineNanosMean()
+	{
+		long rows = sampledRows.get();
+		return rows>0 ? engineNanos.get() / rows : 0;
+	}
+
+	public long getEngineNanosP50()
+	{
+		return getPercentile(0.5);
+	}
+
+	public long getEngineNanosP90()
+	{
+		return getPercentile(0.9);
+	}
+
+	public long getEngineNanosP99()
+	{
+		return getPercentile(0.99);
+	}
+
+	public long getEngineNanosMax()
+	{
+		return engineNanosMax.get();
+	}
+
+	public String[] getGroupStatistics()
+	{
+		List<Map.Entry<String, Counter>> entries = getSortedEntries(groups);
+		String[] statistics = new String[entries.size()];
+		for(int i=0;i<entries.size();i++)
+		{
+			Counter counter = entries.get(i).getValue();
+			statistics[i] = "group: " + entries.get(i).getKey() + ", evaluated: " + counter.evaluated.get() + ", failed: " + counter.failed.get() + " (" + counter.getFailedPercent() + "%), skipped: " + counter.skipped.get();
+		}
+		return statistics;
+	}
+
+	public String[] getRuleStatistics()
+	{
+		List<Map.Entry<String, Counter>> entries = getSortedEntries(rules);
+		String[] statistics = new String[entries.size()];
+		for(int i=0;i<entries.size();i++)
+		{
+			Counter counter = entries.get(i).getValue();
+			statistics[i] = "rule: " + entries.get(i).getKey() + ", evaluated: " + counter.evaluated.get() + ", failed: " + counter.failed.get() + " (" + counter.getFailedPercent() + "%)";
+		}
+		return statistics;
+	}
+
+	/**
+	 * @return	a summary of the throughput and the times of the rule engine
+	 */
+	public String getSummary()
+	{
+		return "rows: " + getRowsProcessed() + ", rows per second: " + Math.round(getRowsPerSecond()) + ", sampled rows: " + getSampledRows() + " (every " + sampleInterval + " rows)"
+			+ ", rule engine time per row (ns) - mean: " + getEngineNanosMean() + ", p50: " + getEngineNanosP50() + ", p90: " + getEngineNanosP90() + ", p99: " + getEngineNanosP99() + ", max: " + getEngineNanosMax();
+	}
+
+	/**
+	 * returns the upper bound of the bucket containing the given percentile
+	 */
+	private long getPercentile(double percentile)
+	{
+		long rows = sampledRows.get();
+		if(rows==0)
+		{
+			return 0;
+		}
+		long rank = (long)Math.ceil(rows * percentile);
+		long count = 0;
+		for(int i=0;i<NUMBER_OF_BUCKETS;i++)
+		{
+			count += histogram.get(i);
+			if(count>=rank)
+			{
+				return Math.min(getLowerBound(i + 1) - 1, engineNanosMax.get());
+			}
+		}
+		return engineNanosMax.get();
+	}
+
+	/**
+	 * @param nanos	the time in nanoseconds
+	 * @return		the bucket of the histogram containing the time
+	 */
+	static int getBucket(long nanos)
+	{
+		if(nanos<8)
+		{
+			return (int)Math.max(0, nanos);
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+		int subBucket = (int)((nanos >>> (exponent - 3)) & 7);
+		return (exponent - 2) * 8 + subBucket;
+	}
+
+	/**
+	 * @param bucket	the bucket of the histogram
+	 * @return			the lowest time in nanoseconds contained in the bucket
+	 */
+	static long getLowerBound(int bucket)
+	{
+		if(bucket<8)
+		{
+			return bucket;
+		}
+		int exponent = bucket / 8 + 2;
+		return (long)(8 + bucket % 8) << (exponent - 3);
+	}
+
+	private static Counter getCounter(ConcurrentHashMap<String, Counter> counters, String id)
+	{
+		Counter counter = counters.get(id);
+		if(counter==null)
+		{
+			counter = new Counter();
+			Counter existing = counters.putIfAbsent(id, counter);
+			if(existing!=null)
+			{
+				counter = existing;
+			}
+		}
+		return counter;
+	}
+
+	/**
+	 * returns the entries ordered by the number of failures, the highest first
+	 */
+	private static List<Map.Entry<String, Counter>> getSortedEntries(Map<String, Counter> counters)
+	{
+		List<Map.Entry<String, Counter>> entries = new ArrayList<Map.Entry<String, Counter>>();
+		Iterator<Map.Entry<String, Counter>> iterator = counters.entrySet().iterator();
+		while(iterator.hasNext())
+		{
+			entries.add(iterator.next());
+		}
+		Collections.sort(entries, new Comparator<Map.Entry<String, Counter>>()
+		{
+			public int compare(Map.Entry<String, Counter> entry1, Map.Entry<String, Counter> entry2)
+			{
+				int result = Long.compare(entry2.getValue().failed.get(), entry1.getValue().failed.get());
+				return result!=0 ? result : entry1.getKey().compareTo(entry2.getKey());
+			}
+		});
+		return entries;
+	}
+
+	/**
+	 * the counters of the groups and rules of one rule engine, in the order of
+	 * its groups, subgroups and rules
+	 */
+	public static class EngineCounters
+	{
+		private final BusinessRulesEngine engine;
+		private final Counter[] groupCounters;
+		private final Counter[][][] ruleCounters;
+
+		private EngineCounters(BusinessRulesEngine engine, ConcurrentHashMap<String, Counter> groups, ConcurrentHashMap<String, Counter> rules)
+		{
+			this.engine = engine;
+			int numberOfGroups = engine.getGroups().size();
+			groupCounters = new Counter[numberOfGroups];
+			ruleCounters = new Counter[numberOfGroups][][];
+			for(int i=0;i<numberOfGroups;i++)
+			{
+				RuleGroup group = engine.getGroups().get(i);
+				groupCounters[i] = getCounter(groups, group.getId());
+				int numberOfSubgroups = group.getSubGroups().size();
+				ruleCounters[i] = new Counter[numberOfSubgroups][];
+				for(int f=0;f<numberOfSubgroups;f++)
+				{
+					RuleSubGroup subgroup = group.getSubGroups().get(f);
+					int numberOfRules = subgroup.getRulesCollection().size();
+					ruleCounters[i][f] = new Counter[numberOfRules];
+					for(int g=0;g<numberOfRules;g++)
+					{
+						XmlRule rule = subgroup.getRulesCollection().get(g);
+						ruleCounters[i][f][g] = getCounter(rules, group.getId() + "/" + subgroup.getId() + "/" + rule.getId());
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * the number of sampled rows a group or rule was evaluated, failed and skipped for
+	 */
+	private static class Counter
+	{
+		private final AtomicLong evaluated = new AtomicLong();
+		private final AtomicLong failed = new AtomicLong();
+		private final AtomicLong skipped = new AtomicLong();
+
+		private long getFailedPercent()
+		{
+			long count = evaluated.get();
+			return count>0 ? Math.round(failed.get() * 100.0 / count) : 0;
+		}
+	}
+}
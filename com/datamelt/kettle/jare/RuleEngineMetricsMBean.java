@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.datamelt.kettle.jare;
+
+/**
+ * Metrics of a rule engine step copy, exposed using JMX while the
+ * transformation runs.
+ *
+ * @author uwe geercken - uwe.geercken@web.de
+ */
+public interface RuleEngineMetricsMBean
+{
+	/**
+	 * @return	the number of rows read by the step
+	 */
+	long getRowsProcessed();
+
+	/**
+	 * @return	the number of rows read per second since the step was started
+	 */
+	double getRowsPerSecond();
+
+	/**
+	 * @return	the number of rows after which a row is sampled
+	 */
+	int getSampleInterval();
+
+	/**
+	 * @return	the number of rows sampled
+	 */
+	long getSampledRows();
+
+	/**
+	 * @return	the mean time in nanoseconds the rule engine took for a sampled row
+	 */
+	long getEngineNanosMean();
+
+	/**
+	 * @return	the median time in nanoseconds the rule engine took for a sampled row
+	 */
+	long getEngineNanosP50();
+
+	/**
+	 * @return	the 90th percentile of the time in nanoseconds the rule engine took for a sampled row
+	 */
+	long getEngineNanosP90();
+
+	/**
+	 * @return	the 99th percentile of the time in nanoseconds the rule engine took for a sampled row
+	 */
+	long getEngineNanosP99();
+
+	/**
+	 * @return	the maximum time in nanoseconds the rule engine took for a sampled row
+	 */
+	long getEngineNanosMax();
+
+	/**
+	 * @return	the number of sampled rows each group was evaluated, failed and skipped for,
+	 * 			ordered by the number of failures
+	 */
+	String[] getGroupStatistics();
+
+	/**
+	 * @return	the number of sampled rows each rule was evaluated and failed for,
+	 * 			ordered by the number of failures
+	 */
+	String[] getRuleStatistics();
+}
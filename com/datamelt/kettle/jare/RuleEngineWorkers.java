@@ -0,0 +1,359 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.datamelt.kettle.jare;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Runs the rule engine for the rows of a step on multiple threads. Each thread
+ * uses its own rule engine, as a rule engine can only process one row at a time.
+ *
+ * The step submits the rows and takes the completed rows to put them to the
+ * output, so only the step thread writes to the output row sets. The completed
+ * rows are returned either in the order they were submitted or in the order they
+ * were completed. In the first case, a row that takes long to process holds back
+ * the rows submitted after it; the number of rows that the step keeps submitted
+ * limits the memory used for them.
+ *
+ * The methods - except those of the RowTask class - must only be called from
+ * the step thread.
+ *
+ * @author uwe geercken - uwe.geercken@web.de
+ */
+public class RuleEngineWorkers
+{
+	private final Thread[] threads;
+	private final boolean ordered;
+	private final RowProcessor processor;
+
+	// rows waiting to be processed
+	private final LinkedBlockingQueue<RowTask> tasks = new LinkedBlockingQueue<RowTask>();
+	// rows submitted and not yet returned to the step, in the order they were submitted
+	private final ArrayDeque<RowTask> submittedTasks = new ArrayDeque<RowTask>();
+	// rows completed, in the order they were completed. only used for unordered output
+	private final LinkedBlockingQueue<RowTask> completedTasks = new LinkedBlockingQueue<RowTask>();
+	private int numberOfTasks = 0;
+
+	private volatile boolean stopped;
+
+	/**
+	 * processes a row on one of the threads
+	 */
+	public interface RowProcessor
+	{
+		/**
+		 * processes the row of the task and sets the output row of the task
+		 *
+		 * @param task			the task
+		 * @param worker		the number of the thread, from 0 to the number of threads - 1
+		 * @throws Exception	when the row can not be processed
+		 */
+		void process(RowTask task, int worker) throws Exception;
+
+		/**
+		 * called on the thread when it terminates, after it has processed its last row
+		 *
+		 * @param worker		the number of the thread, from 0 to the number of threads - 1
+		 */
+		void terminated(int worker);
+	}
+
+	/**
+	 * a row to be processed and the results of processing it
+	 */
+	public static class RowTask
+	{
+		private final Object[] row;
+		private final long lineNumber;
+		private final ArrayList<Object[]> ruleResults;
+		private Object[] outputRow;
+		private Throwable exception;
+		private boolean done;
+
+		private RowTask(Object[] row, long lineNumber, boolean ruleResults)
+		{
+			this.row = row;
+			this.lineNumber = lineNumber;
+			this.ruleResults = ruleResults ? new ArrayList<Object[]>() : null;
+		}
+
+		/**
+		 * @return	the input row
+		 */
+		public Object[] getRow()
+		{
+			return row;
+		}
+
+		/**
+		 * @return	the number of the input row
+		 */
+		public long getLineNumber()
+		{
+			return lineNumber;
+		}
+
+		/**
+		 * @return	the rows for the rule results step or null if there is no rule results step
+		 */
+		public ArrayList<Object[]> getRuleResults()
+		{
+			return ruleResults;
+		}
+
+		/**
+		 * @return	the output row for the main step or null if the row could not be processed
+		 */
+		public Object[] getOutputRow()
+		{
+			return outputRow;
+		}
+
+		/**
+		 * @param outputRow	the output row for the main step or null if the row could not be processed
+		 */
+		public void setOutputRow(Object[] outputRow)
+		{
+			this.outputRow = outputRow;
+		}
+
+		/**
+		 * @return	the error that occurred processing the row or null
+		 */
+		public Throwable getException()
+		{
+			return exception;
+		}
+	}
+
+	/**
+	 * @param numberOfThreads	the number of threads
+	 * @param ordered			if the rows are returned in the order they were submitted
+	 * @param processor			the processing of a row
+	 */
+	public RuleEngineWorkers(int numberOfThreads, boolean ordered, RowProcessor processor)
+	{
+		this.threads = new Thread[numberOfThreads];
+		this.ordered = ordered;
+		this.processor = processor;
+	}
+
+	/**
+	 * starts the threads as daemon threads
+	 *
+	 * @param name	prefix of the names of the threads
+	 */
+	public void start(String name)
+	{
+		for(int i=0;i<threads.length;i++)
+		{
+			final int worker = i;
+			threads[i] = new Thread(new Runnable()
+			{
+				public void run()
+				{
+					processTasks(worker);
+				}
+			}, name + " - " + i);
+			threads[i].setDaemon(true);
+			threads[i].start();
+		}
+	}
+
+	/**
+	 * stops the threads. rows that have not been processed are discarded. a thread
+	 * completes the row it is processing; the method waits for this only for a
+	 * limited time.
+	 *
+	 * @return	true if all threads have terminated
+	 */
+	public boolean stop()
+	{
+		stopped = true;
+		boolean terminated = true;
+		for(int i=0;i<threads.length;i++)
+		{
+			if(threads[i]!=null)
+			{
+				threads[i].interrupt();
+			}
+		}
+		for(int i=0;i<threads.length;i++)
+		{
+			if(threads[i]!=null)
+			{
+				try
+				{
+					threads[i].join(1000);
+				}
+				catch(InterruptedException ie)
+				{
+					Thread.currentThread().interrupt();
+					return false;
+				}
+				if(threads[i].isAlive())
+				{
+					terminated = false;
+				}
+			}
+		}
+		return terminated;
+	}
+
+	/**
+	 * @return	the number of rows submitted and not yet returned
+	 */
+	public int getNumberOfTasks()
+	{
+		return numberOfTasks;
+	}
+
+	/**
+	 * submits a row to be processed by one of the threads
+	 *
+	 * @param row			the input row
+	 * @param lineNumber	the number of the input row
+	 * @param ruleResults	if rows for the rule results step are collected
+	 */
+	public void submit(Object[] row, long lineNumber, boolean ruleResults)
+	{
+		RowTask task = new RowTask(row, lineNumber, ruleResults);
+		if(ordered)
+		{
+			submittedTasks.add(task);
+		}
+		numberOfTasks++;
+		tasks.add(task);
+	}
+
+	/**
+	 * returns the next completed row, if there is one
+	 *
+	 * @return	the completed row or null
+	 */
+	public RowTask poll()
+	{
+		RowTask task;
+		if(ordered)
+		{
+			task = submittedTasks.peek();
+			if(task==null || !isDone(task))
+			{
+				return null;
+			}
+			submittedTasks.poll();
+		}
+		else
+		{
+			task = completedTasks.poll();
+			if(task==null)
+			{
+				return null;
+			}
+		}
+		numberOfTasks--;
+		return task;
+	}
+
+	/**
+	 * waits for the next completed row. at least one row must have been submitted
+	 * and not yet returned.
+	 *
+	 * @return						the completed row
+	 * @throws InterruptedException	when the step thread is interrupted
+	 */
+	public RowTask take() throws InterruptedException
+	{
+		RowTask task;
+		if(ordered)
+		{
+			task = submittedTasks.poll();
+			synchronized(task)
+			{
+				while(!task.done)
+				{
+					task.wait();
+				}
+			}
+		}
+		else
+		{
+			task = completedTasks.take();
+		}
+		numberOfTasks--;
+		return task;
+	}
+
+	private boolean isDone(RowTask task)
+	{
+		synchronized(task)
+		{
+			return task.done;
+		}
+	}
+
+	private void processTasks(int worker)
+	{
+		try
+		{
+			while(!stopped)
+			{
+				RowTask task;
+				try
+				{
+					task = tasks.take();
+				}
+				catch(InterruptedException ie)
+				{
+					// the step is disposed
+					return;
+				}
+				try
+				{
+					processor.process(task, worker);
+				}
+				catch(Throwable t)
+				{
+					// errors are passed to the step thread as well, which stops the step
+					task.exception = t;
+					task.outputRow = null;
+				}
+				finally
+				{
+					// the step thread waits for the task, so it is always marked as done
+					synchronized(task)
+					{
+						task.done = true;
+						task.notifyAll();
+					}
+					if(!ordered)
+					{
+						completedTasks.add(task);
+					}
+				}
+			}
+		}
+		finally
+		{
+			processor.terminated(worker);
+		}
+	}
+}
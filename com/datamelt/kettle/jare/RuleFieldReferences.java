@@ -0,0 +1,242 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.datamelt.kettle.jare;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.DefaultHandler;
+
+import com.datamelt.rules.engine.BusinessRulesEngine;
+
+/**
+ * Reads the names of the fields referenced by the rules of a rule project, so
+ * that references to fields that do not exist in the input rows are detected
+ * before any row is processed.
+ * 
+ * A rule references a field using an object of the class RowFieldCollection with
+ * the method getFieldValue and the name of the field as parameter. The rule files
+ * are read in the same way as by the rule engine: a zip file, a folder of xml files
+ * or a single xml file.
+ * 
+ * The results of the rule engine for a row only depend on the referenced fields,
+ * unless a group contains actions or uses the RowFieldCollection in another way,
+ * e.g. with a different method. Such groups are recorded as well.
+ * 
+ * @author uwe geercken - uwe.geercken@web.de
+ */
+public class RuleFieldReferences
+{
+	private static final String CLASSNAME_ROW_FIELD_COLLECTION = "RowFieldCollection";
+	private static final String METHOD_GET_FIELD_VALUE = "getFieldValue";
+	
+	private static final String TAG_RULEGROUP = "rulegroup";
+	private static final String TAG_ACTION = "action";
+	
+	// names of the fields referenced by the id of the group
+	private final Map<String, Set<String>> references = new LinkedHashMap<String, Set<String>>();
+	// ids of the groups with actions or with references to fields that can not be determined
+	private final Set<String> unresolvedGroups = new LinkedHashSet<String>();
+	
+	/**
+	 * reads the rule files of the project
+	 * 
+	 * @param realFilename	the zip file, folder or xml file of the rule project
+	 * @throws Exception	when the files can not be read
+	 */
+	public RuleFieldReferences(String realFilename) throws Exception
+	{
+		SAXParser parser = SAXParserFactory.newInstance().newSAXParser();
+		File f = new File(realFilename);
+		if(f.isFile() && realFilename.endsWith(".zip"))
+		{
+			ZipFile zip = new ZipFile(realFilename);
+			try
+			{
+				Enumeration<? extends ZipEntry> entries = zip.entries();
+				while(entries.hasMoreElements())
+				{
+					ZipEntry entry = entries.nextElement();
+					if(!entry.isDirectory() && entry.getName().toLowerCase().endsWith(".xml"))
+					{
+						read(parser, zip.getInputStream(entry));
+					}
+				}
+			}
+			finally
+			{
+				zip.close();
+			}
+		}
+		else if(f.isDirectory())
+		{
+			File[] listOfFiles = f.listFiles(RuleEngineCache.XML_FILE_FILTER);
+			for(int i=0;listOfFiles!=null && i<listOfFiles.length;i++)
+			{
+				read(parser, new FileInputStream(listOfFiles[i]));
+			}
+		}
+		else
+		{
+			read(parser, new FileInputStream(f));
+		}
+	}
+	
+	/**
+	 * returns the references to fields that are not in the given fields. only the
+	 * groups of the rule engine are checked, so groups that are not active based on
+	 * their valid from and until dates are ignored.
+	 * 
+	 * @param engine		the rule engine for the rule project
+	 * @param fieldIndexes	the indexes of the fields by name
+	 * @return				the group and name of each field that was not found
+	 */
+	public List<String> getUnknownFields(BusinessRulesEngine engine, Map<String, Integer> fieldIndexes)
+	{
+		List<String> unknownFields = new ArrayList<String>();
+		for(int i=0;i<engine.getGroups().size();i++)
+		{
+			String groupId = engine.getGroups().get(i).getId();
+			Set<String> fieldNames = references.get(groupId);
+			if(fieldNames==null)
+			{
+				continue;
+			}
+			Iterator<String> iterator = fieldNames.iterator();
+			while(iterator.hasNext())
+			{
+				String fieldName = iterator.next();
+				if(!fieldIndexes.containsKey(fieldName))
+				{
+					unknownFields.add("group: " + groupId + ", field: " + fieldName);
+				}
+			}
+		}
+		return unknownFields;
+	}
+	
+	/**
+	 * returns the indexes of the fields referenced by the groups of the rule engine,
+	 * which are the only fields the results of the rule engine for a row depend on.
+	 * only the groups of the rule engine are checked, so groups that are not active
+	 * based on their valid from and until dates are ignored.
+	 * 
+	 * @param engine		the rule engine for the rule project
+	 * @param fieldIndexes	the indexes of the fields by name
+	 * @return				the indexes of the referenced fields in ascending order or null if
+	 * 						a group contains actions, references fields in a way that can not be
+	 * 						determined or references an unknown field
+	 */
+	public int[] getReferencedFieldIndexes(BusinessRulesEngine engine, Map<String, Integer> fieldIndexes)
+	{
+		Set<Integer> indexes = new TreeSet<Integer>();
+		for(int i=0;i<engine.getGroups().size();i++)
+		{
+			String groupId = engine.getGroups().get(i).getId();
+			Set<String> fieldNames = references.get(groupId);
+			if(fieldNames==null || unresolvedGroups.contains(groupId))
+			{
+				return null;
+			}
+			Iterator<String> iterator = fieldNames.iterator();
+			while(iterator.hasNext())
+			{
+				Integer index = fieldIndexes.get(iterator.next());
+				if(index==null)
+				{
+					return null;
+				}
+				indexes.add(index);
+			}
+		}
+		int[] referencedFieldIndexes = new int[indexes.size()];
+		Iterator<Integer> iterator = indexes.iterator();
+		for(int i=0;i<referencedFieldIndexes.length;i++)
+		{
+			referencedFieldIndexes[i] = iterator.next().intValue();
+		}
+		return referencedFieldIndexes;
+	}
+	
+	private void read(SAXParser parser, InputStream in) throws Exception
+	{
+		try
+		{
+			parser.parse(in, new DefaultHandler()
+			{
+				private String groupId;
+				private Set<String> fieldNames;
+				
+				public void startElement(String uri, String localName, String qName, Attributes attributes)
+				{
+					if(qName.equals(TAG_RULEGROUP))
+					{
+						groupId = attributes.getValue("id");
+						fieldNames = references.get(groupId);
+						if(fieldNames==null)
+						{
+							fieldNames = new LinkedHashSet<String>();
+							references.put(groupId, fieldNames);
+						}
+					}
+					else if(fieldNames!=null && qName.equals(TAG_ACTION))
+					{
+						unresolvedGroups.add(groupId);
+					}
+					else if(fieldNames!=null)
+					{
+						String classname = attributes.getValue("classname");
+						if(classname!=null && classname.endsWith(CLASSNAME_ROW_FIELD_COLLECTION))
+						{
+							String parameter = attributes.getValue("parameter");
+							if(METHOD_GET_FIELD_VALUE.equals(attributes.getValue("method")) && parameter!=null)
+							{
+								fieldNames.add(parameter);
+							}
+							else
+							{
+								unresolvedGroups.add(groupId);
+							}
+						}
+					}
+				}
+			});
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,376 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.datamelt.kettle.jare;
+
+import java.io.File;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.pentaho.di.core.logging.LogChannelInterface;
+
+import com.datamelt.rules.engine.BusinessRulesEngine;
+
+/**
+ * Watches the rule project of a rule engine step for changes and parses
+ * the changed project in the background.
+ *
+ * A folder is watched using a WatchService. A zip file or a single xml
+ * file is checked for a changed size or modification time in the given
+ * interval.
+ *
+ * The rule engines for all threads of the step, the rule engines of the
+ * single rulegroups for fail-fast and the names of the fields referenced by
+ * the rules are loaded in the background as well. The step picks them up
+ * between two rows using the poll() method, so rows are never held back
+ * while the rule project is parsed. When the changed project can not be
+ * parsed, the error is logged and the step continues to use the rule engine
+ * it has.
+ *
+ * @author uwe geercken - uwe.geercken@web.de
+ */
+public class RuleFileWatcher implements Runnable
+{
+	// time without further changes before a folder is reloaded. the maintenance
+	// tool writes multiple files when a project is exported
+	private static final long QUIET_PERIOD_MILLIS = 1000;
+
+	private final String realFilename;
+	private final long intervalMillis;
+	private final int numberOfEngines;
+	private final RuleGroupOrder ruleGroupOrder;
+	private final LogChannelInterface log;
+
+	// rule project that was loaded but not yet picked up by the step
+	private final AtomicReference<ReloadedProject> reloadedProject = new AtomicReference<ReloadedProject>();
+
+	private Thread thread;
+	private volatile boolean stopped;
+	private String signature;
+
+	/**
+	 * @param realFilename		the rule file, zip file or folder to watch
+	 * @param intervalMillis	the interval for checking a file for changes
+	 * @param numberOfEngines	the number of rule engines to load, one per thread of the step
+	 * @param ruleGroupOrder	orders the rule engines of the single rulegroups or null if they are not loaded
+	 * @param log				the log channel of the step
+	 */
+	public RuleFileWatcher(String realFilename, long intervalMillis, int numberOfEngines, RuleGroupOrder ruleGroupOrder, LogChannelInterface log)
+	{
+		this.realFilename = realFilename;
+		this.intervalMillis = intervalMillis;
+		this.numberOfEngines = numberOfEngines;
+		this.ruleGroupOrder = ruleGroupOrder;
+		this.log = log;
+	}
+
+	/**
+	 * starts watching the rule project in a daemon thread
+	 *
+	 * @param name	name of the thread
+	 */
+	public void start(String name)
+	{
+		signature = RuleEngineCache.getSignature(new File(realFilename));
+		thread = new Thread(this, name);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * stops watching and returns the rule engines that were loaded but
+	 * not picked up to the cache.
+	 */
+	public void stop()
+	{
+		stopped = true;
+		if(thread!=null)
+		{
+			thread.interrupt();
+			try
+			{
+				thread.join(intervalMillis);
+			}
+			catch(InterruptedException ie)
+			{
+				Thread.currentThread().interrupt();
+			}
+		}
+		ReloadedProject project = reloadedProject.getAndSet(null);
+		if(project!=null)
+		{
+			project.release();
+		}
+	}
+
+	/**
+	 * returns the changed rule project, if one was loaded since the last call.
+	 * the caller has to release the rule project, when it is no longer used.
+	 *
+	 * @return	the reloaded rule project or null
+	 */
+	public ReloadedProject poll()
+	{
+		if(reloadedProject.get()==null)
+		{
+			return null;
+		}
+		return reloadedProject.getAndSet(null);
+	}
+
+	public void run()
+	{
+		File f = new File(realFilename);
+		try
+		{
+			if(f.isDirectory())
+			{
+				watchFolder(f);
+			}
+			else
+			{
+				watchFile(f);
+			}
+		}
+		catch(InterruptedException ie)
+		{
+			// the step is disposed
+		}
+		catch(Exception ex)
+		{
+			log.logError("error watching rule file for changes: " + realFilename, ex.toString());
+		}
+	}
+
+	private void watchFolder(File folder) throws Exception
+	{
+		WatchService watchService = FileSystems.getDefault().newWatchService();
+		try
+		{
+			Path path = folder.toPath();
+			path.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+			while(!stopped)
+			{
+				WatchKey key = watchService.take();
+				key.pollEvents();
+				key.reset();
+				// wait until all files of the project have been written
+				WatchKey nextKey;
+				while((nextKey = watchService.poll(QUIET_PERIOD_MILLIS, TimeUnit.MILLISECONDS))!=null)
+				{
+					nextKey.pollEvents();
+					nextKey.reset();
+				}
+				reloadIfChanged(folder);
+			}
+		}
+		finally
+		{
+			watchService.close();
+		}
+	}
+
+	private void watchFile(File file) throws Exception
+	{
+		while(!stopped)
+		{
+			Thread.sleep(intervalMillis);
+			if(file.exists() && !RuleEngineCache.getSignature(file).equals(signature))
+			{
+				// wait until the file is completely written
+				Thread.sleep(QUIET_PERIOD_MILLIS);
+				reloadIfChanged(file);
+			}
+		}
+	}
+
+	private void reloadIfChanged(File f)
+	{
+		if(stopped || !f.exists())
+		{
+			return;
+		}
+		String newSignature = RuleEngineCache.getSignature(f);
+		if(newSignature.equals(signature))
+		{
+			return;
+		}
+		signature = newSignature;
+		log.logBasic("rule project has changed, loading rule engine using: " + realFilename);
+		try
+		{
+			long start = System.currentTimeMillis();
+			ReloadedProject project = load();
+			log.logBasic("loaded changed rule project in " + (System.currentTimeMillis() - start) + " ms, number of rulegroups: " + project.getEngine(0).getNumberOfGroups());
+			// replace a rule project that the step has not picked up yet
+			ReloadedProject previousProject = reloadedProject.getAndSet(project);
+			if(previousProject!=null)
+			{
+				previousProject.release();
+			}
+			// the step may have been disposed while the project was loaded
+			if(stopped)
+			{
+				ReloadedProject unusedProject = reloadedProject.getAndSet(null);
+				if(unusedProject!=null)
+				{
+					unusedProject.release();
+				}
+			}
+		}
+		catch(Exception ex)
+		{
+			log.logError("error loading changed rule project, continuing with the current rules: " + realFilename, ex.toString());
+		}
+	}
+
+	/**
+	 * loads the rule engines, the rule engines of the single rulegroups and the
+	 * names of the fields referenced by the rules of the changed rule project
+	 */
+	private ReloadedProject load() throws Exception
+	{
+		BusinessRulesEngine[] engines = new BusinessRulesEngine[numberOfEngines];
+		RuleGroupEngines[] groupEngines = ruleGroupOrder!=null ? new RuleGroupEngines[numberOfEngines] : null;
+		RuleFieldReferences fieldReferences = null;
+		try
+		{
+			fieldReferences = new RuleFieldReferences(realFilename);
+		}
+		catch(Exception ex)
+		{
+			log.logBasic("the fields referenced by the rules could not be read and are not checked: " + ex.toString());
+		}
+		ReloadedProject project = new ReloadedProject(engines, groupEngines, fieldReferences);
+		try
+		{
+			for(int i=0;i<numberOfEngines;i++)
+			{
+				engines[i] = RuleEngineCache.acquire(realFilename, log);
+				if(groupEngines!=null)
+				{
+					groupEngines[i] = RuleGroupEngines.load(realFilename);
+					ruleGroupOrder.order(groupEngines[i]);
+				}
+			}
+		}
+		catch(Exception ex)
+		{
+			project.release();
+			throw ex;
+		}
+		return project;
+	}
+
+	/**
+	 * orders the rule engines of the single rulegroups loaded for the changed rule project
+	 */
+	public interface RuleGroupOrder
+	{
+		/**
+		 * @param groupEngines	the rule engines of the single rulegroups
+		 */
+		void order(RuleGroupEngines groupEngines);
+	}
+
+	/**
+	 * the rule engines and the names of the referenced fields of a changed rule
+	 * project. each thread of the step takes over the rule engine with its number.
+	 */
+	public static class ReloadedProject
+	{
+		private final BusinessRulesEngine[] engines;
+		private final RuleGroupEngines[] groupEngines;
+		private final RuleFieldReferences fieldReferences;
+		// the rule engines taken over by the threads of the step
+		private final boolean[] taken;
+		private boolean released;
+
+		private ReloadedProject(BusinessRulesEngine[] engines, RuleGroupEngines[] groupEngines, RuleFieldReferences fieldReferences)
+		{
+			this.engines = engines;
+			this.groupEngines = groupEngines;
+			this.fieldReferences = fieldReferences;
+			this.taken = new boolean[engines.length];
+		}
+
+		/**
+		 * takes over the rule engine with the given number. the caller has to
+		 * release the rule engine to the cache.
+		 *
+		 * @param number	the number of the thread
+		 * @return			false if the rule project was already released
+		 */
+		public synchronized boolean take(int number)
+		{
+			if(released)
+			{
+				return false;
+			}
+			taken[number] = true;
+			return true;
+		}
+
+		/**
+		 * returns the rule engines that were not taken over to the cache.
+		 * rule engines can not be taken over afterwards.
+		 */
+		public synchronized void release()
+		{
+			released = true;
+			for(int i=0;i<engines.length;i++)
+			{
+				if(!taken[i] && engines[i]!=null)
+				{
+					RuleEngineCache.release(engines[i]);
+				}
+			}
+		}
+
+		/**
+		 * @param number	the number of the thread
+		 * @return			the rule engine
+		 */
+		public BusinessRulesEngine getEngine(int number)
+		{
+			return engines[number];
+		}
+
+		/**
+		 * @param number	the number of the thread
+		 * @return			the rule engines of the single rulegroups or null if they were not loaded
+		 */
+		public RuleGroupEngines getGroupEngines(int number)
+		{
+			return groupEngines!=null ? groupEngines[number] : null;
+		}
+
+		/**
+		 * @return	the names of the fields referenced by the rules or null if they could not be read
+		 */
+		public RuleFieldReferences getFieldReferences()
+		{
+			return fieldReferences;
+		}
+	}
+}
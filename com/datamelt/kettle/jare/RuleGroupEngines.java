@@ -0,0 +1,568 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.datamelt.kettle.jare;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.DefaultHandler;
+
+import com.datamelt.rules.engine.BusinessRulesEngine;
+import com.datamelt.util.RowFieldCollection;
+
+/**
+ * Runs the rulegroups of a rule project one after the other and stops at the
+ * first group that fails. JaRE runs all groups of a project in one call, so each
+ * rule file - containing one rulegroup - is loaded into its own rule engine.
+ * 
+ * The groups that were not run are neither counted as run nor as failed, so the
+ * numbers of groups, rules and actions are minimum values if the evaluation
+ * was stopped. Fields updated by the actions of a group are visible to the groups
+ * run after it.
+ * 
+ * Groups that depend on the result of another group can not be run separately,
+ * so rule projects containing them can not be loaded.
+ * 
+ * The groups can be ordered by their cost and failure rate, so the groups most
+ * likely to fail for the least time are run first. During a warm-up all groups are
+ * run for each row and the time and failures of each group are counted. Groups
+ * with actions are not reordered, as their actions may update fields checked by
+ * the groups run after them.
+ * 
+ * @author uwe geercken - uwe.geercken@web.de
+ */
+public class RuleGroupEngines
+{
+	private static final String TAG_RULEGROUP = "rulegroup";
+	private static final String ATTRIBUTE_DEPENDENT_RULEGROUP_ID = "dependentrulegroupid";
+	private static final String TAG_ACTION = "action";
+	private static final String ENCODING = "UTF-8";
+	
+	// the rule engines and the ids of their groups in the order they are run
+	private final BusinessRulesEngine[] engines;
+	private final String[] groupIds;
+	private final boolean hasActions;
+	
+	// number of rows for which all groups are run to learn their cost and failure rate
+	private long warmUpRows;
+	private long rowsRun;
+	private long[] nanos;
+	private long[] failures;
+	
+	// results of the groups run for the last row
+	private int numberOfEnginesRun;
+	private long numberOfGroups;
+	private long numberOfGroupsFailed;
+	private long numberOfGroupsSkipped;
+	private long numberOfRules;
+	private long numberOfRulesFailed;
+	private long numberOfActions;
+	
+	private RuleGroupEngines(BusinessRulesEngine[] engines, boolean hasActions)
+	{
+		this.engines = engines;
+		this.hasActions = hasActions;
+		this.groupIds = new String[engines.length];
+		for(int i=0;i<engines.length;i++)
+		{
+			groupIds[i] = engines[i].getGroups().get(0).getId();
+		}
+	}
+	
+	/**
+	 * loads one rule engine per rule file of the rule project. rule files
+	 * without a group that is active based on the valid from and until dates
+	 * are ignored.
+	 * 
+	 * @param realFilename	the zip file, folder or xml file of the rule project
+	 * @return				the rule engines of the groups
+	 * @throws Exception	when the rule project can not be read or contains dependent groups
+	 */
+	public static RuleGroupEngines load(String realFilename) throws Exception
+	{
+		List<byte[]> ruleFiles = readRuleFiles(realFilename);
+		SAXParser parser = SAXParserFactory.newInstance().newSAXParser();
+		List<BusinessRulesEngine> engines = new ArrayList<BusinessRulesEngine>();
+		boolean hasActions = false;
+		for(int i=0;i<ruleFiles.size();i++)
+		{
+			hasActions = checkDependentGroups(parser, ruleFiles.get(i)) || hasActions;
+			
+			// the rule engine can only load a single rule file by its name
+			File file = File.createTempFile("jare-rulegroup", ".xml");
+			try
+			{
+				OutputStream out = new FileOutputStream(file);
+				try
+				{
+					out.write(ruleFiles.get(i));
+				}
+				finally
+				{
+					out.close();
+				}
+				BusinessRulesEngine engine = new BusinessRulesEngine(file.getPath());
+				if(engine.getNumberOfGroups()>0)
+				{
+					engine.setPreserveRuleExcecutionResults(false);
+					engines.add(engine);
+				}
+			}
+			finally
+			{
+				file.delete();
+			}
+		}
+		return new RuleGroupEngines(engines.toArray(new BusinessRulesEngine[engines.size()]), hasActions);
+	}
+	
+	/**
+	 * runs the groups in their order until a group fails
+	 * 
+	 * @param label			the label of the row used by the rule engine
+	 * @param fields		the fields of the row
+	 * @throws Exception	when running a rule engine fails
+	 */
+	public void run(String label, RowFieldCollection fields) throws Exception
+	{
+		numberOfEnginesRun = 0;
+		numberOfGroups = 0;
+		numberOfGroupsFailed = 0;
+		numberOfGroupsSkipped = 0;
+		numberOfRules = 0;
+		numberOfRulesFailed = 0;
+		numberOfActions = 0;
+		boolean warmUp = rowsRun<warmUpRows;
+		for(int i=0;i<engines.length;i++)
+		{
+			BusinessRulesEngine engine = engines[i];
+			engine.getRuleExecutionCollection().clear();
+			if(warmUp)
+			{
+				long started = System.nanoTime();
+				engine.run(label, fields);
+				nanos[i] += System.nanoTime() - started;
+				if(engine.getNumberOfGroupsFailed()>0)
+				{
+					failures[i]++;
+				}
+			}
+			else
+			{
+				engine.run(label, fields);
+			}
+			numberOfEnginesRun++;
+			numberOfGroups += engine.getNumberOfGroups();
+			numberOfGroupsFailed += engine.getNumberOfGroupsFailed();
+			numberOfGroupsSkipped += engine.getNumberOfGroupsSkipped();
+			numberOfRules += engine.getNumberOfRules();
+			numberOfRulesFailed += engine.getNumberOfRulesFailed();
+			numberOfActions += engine.getNumberOfActions();
+			if(!warmUp && engine.getNumberOfGroupsFailed()>0)
+			{
+				break;
+			}
+		}
+		if(warmUp)
+		{
+			rowsRun++;
+			if(rowsRun==warmUpRows)
+			{
+				orderByCost();
+			}
+		}
+	}
+	
+	/**
+	 * runs all groups for the given number of rows and then orders them by their
+	 * mean time divided by their failure rate. groups that did not fail are run last,
+	 * ordered by their mean time.
+	 * 
+	 * @param rows	the number of rows of the warm-up
+	 */
+	public void setWarmUpRows(long rows)
+	{
+		warmUpRows = rows;
+		rowsRun = 0;
+		nanos = new long[engines.length];
+		failures = new long[engines.length];
+	}
+	
+	/**
+	 * @return	true if the groups are run for all rows to learn their cost and failure rate
+	 */
+	public boolean isWarmUp()
+	{
+		return rowsRun<warmUpRows;
+	}
+	
+	/**
+	 * @return	true if the order of the groups was learned from the warm-up
+	 */
+	public boolean isOrderLearned()
+	{
+		return warmUpRows>0 && rowsRun==warmUpRows;
+	}
+	
+	/**
+	 * @return	true if the rule project contains actions, so the groups must run in their original order
+	 */
+	public boolean getHasActions()
+	{
+		return hasActions;
+	}
+	
+	/**
+	 * @return	the ids of the groups in the order they are run
+	 */
+	public String[] getGroupIds()
+	{
+		return groupIds.clone();
+	}
+	
+	/**
+	 * orders the groups as listed in the file. groups not listed keep their
+	 * order and are run after the listed groups.
+	 * 
+	 * @param file			the file containing one group id per line
+	 * @return				true if all groups are listed in the file
+	 * @throws Exception	when the file can not be read
+	 */
+	public boolean readOrder(File file) throws Exception
+	{
+		final List<String> ids = new ArrayList<String>();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), ENCODING));
+		try
+		{
+			String line;
+			while((line = reader.readLine())!=null)
+			{
+				if(line.trim().length()>0)
+				{
+					ids.add(line.trim());
+				}
+			}
+		}
+		finally
+		{
+			reader.close();
+		}
+		final int[] rank = new int[engines.length];
+		boolean complete = true;
+		for(int i=0;i<engines.length;i++)
+		{
+			int index = ids.indexOf(groupIds[i]);
+			rank[i] = index>=0 ? index : ids.size() + i;
+			complete = complete && index>=0;
+		}
+		reorder(new Comparator<Integer>()
+		{
+			public int compare(Integer index1, Integer index2)
+			{
+				return Integer.compare(rank[index1], rank[index2]);
+			}
+		});
+		return complete;
+	}
+	
+	/**
+	 * writes the ids of the groups in the order they are run. the ids are written
+	 * to a temporary file in the same directory, which then replaces the file, so
+	 * a reader never sees a partly written file.
+	 * 
+	 * @param file			the file to write
+	 * @throws Exception	when the file can not be written
+	 */
+	public void writeOrder(File file) throws Exception
+	{
+		File directory = file.getAbsoluteFile().getParentFile();
+		File temporaryFile = File.createTempFile(file.getName(), ".tmp", directory);
+		try
+		{
+			Writer writer = new OutputStreamWriter(new FileOutputStream(temporaryFile), ENCODING);
+			try
+			{
+				for(int i=0;i<groupIds.length;i++)
+				{
+					writer.write(groupIds[i]);
+					writer.write("\n");
+				}
+			}
+			finally
+			{
+				writer.close();
+			}
+			try
+			{
+				Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+			}
+			catch(AtomicMoveNotSupportedException amns)
+			{
+				Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		finally
+		{
+			// only left if the file was not replaced
+			temporaryFile.delete();
+		}
+	}
+	
+	/**
+	 * orders the groups by the expected time spent until a group fails: the group with
+	 * the lowest mean time per failure first
+	 */
+	private void orderByCost()
+	{
+		final double[] cost = new double[engines.length];
+		for(int i=0;i<engines.length;i++)
+		{
+			cost[i] = failures[i]>0 ? (double)nanos[i] / failures[i] : Double.MAX_VALUE;
+		}
+		reorder(new Comparator<Integer>()
+		{
+			public int compare(Integer index1, Integer index2)
+			{
+				int result = Double.compare(cost[index1], cost[index2]);
+				if(result==0)
+				{
+					result = Long.compare(nanos[index1], nanos[index2]);
+				}
+				return result;
+			}
+		});
+	}
+	
+	/**
+	 * sorts the engines, the ids of their groups and their counters. the sort
+	 * is stable, so groups that compare equal keep their order.
+	 */
+	private void reorder(Comparator<Integer> comparator)
+	{
+		Integer[] indexes = new Integer[engines.length];
+		for(int i=0;i<indexes.length;i++)
+		{
+			indexes[i] = i;
+		}
+		Arrays.sort(indexes, comparator);
+		BusinessRulesEngine[] sortedEngines = new BusinessRulesEngine[engines.length];
+		String[] sortedGroupIds = new String[engines.length];
+		long[] sortedNanos = nanos!=null ? new long[engines.length] : null;
+		long[] sortedFailures = failures!=null ? new long[engines.length] : null;
+		for(int i=0;i<indexes.length;i++)
+		{
+			sortedEngines[i] = engines[indexes[i]];
+			sortedGroupIds[i] = groupIds[indexes[i]];
+			if(nanos!=null)
+			{
+				sortedNanos[i] = nanos[indexes[i]];
+				sortedFailures[i] = failures[indexes[i]];
+			}
+		}
+		System.arraycopy(sortedEngines, 0, engines, 0, engines.length);
+		System.arraycopy(sortedGroupIds, 0, groupIds, 0, groupIds.length);
+		if(nanos!=null)
+		{
+			nanos = sortedNanos;
+			failures = sortedFailures;
+		}
+	}
+	
+	/**
+	 * @return	the number of groups that can be run
+	 */
+	public int getNumberOfEngines()
+	{
+		return engines.length;
+	}
+	
+	/**
+	 * @return	the number of groups run for the last row
+	 */
+	public int getNumberOfEnginesRun()
+	{
+		return numberOfEnginesRun;
+	}
+	
+	/**
+	 * @param index	the index of the group
+	 * @return		the rule engine of the group
+	 */
+	public BusinessRulesEngine getEngine(int index)
+	{
+		return engines[index];
+	}
+	
+	/**
+	 * @return	true if groups were not run for the last row, because a group failed
+	 */
+	public boolean isTruncated()
+	{
+		return numberOfEnginesRun<engines.length;
+	}
+	
+	public long getNumberOfGroups()
+	{
+		return numberOfGroups;
+	}
+	
+	public long getNumberOfGroupsFailed()
+	{
+		return numberOfGroupsFailed;
+	}
+	
+	public long getNumberOfGroupsSkipped()
+	{
+		return numberOfGroupsSkipped;
+	}
+	
+	public long getNumberOfRules()
+	{
+		return numberOfRules;
+	}
+	
+	public long getNumberOfRulesFailed()
+	{
+		return numberOfRulesFailed;
+	}
+	
+	public long getNumberOfActions()
+	{
+		return numberOfActions;
+	}
+	
+	/**
+	 * reads the rule files in the same way as the rule engine: a zip file,
+	 * a folder of xml files or a single xml file
+	 */
+	private static List<byte[]> readRuleFiles(String realFilename) throws Exception
+	{
+		List<byte[]> ruleFiles = new ArrayList<byte[]>();
+		File f = new File(realFilename);
+		if(f.isFile() && realFilename.endsWith(".zip"))
+		{
+			ZipFile zip = new ZipFile(realFilename);
+			try
+			{
+				Enumeration<? extends ZipEntry> entries = zip.entries();
+				while(entries.hasMoreElements())
+				{
+					ZipEntry entry = entries.nextElement();
+					if(!entry.isDirectory() && entry.getName().toLowerCase().endsWith(".xml"))
+					{
+						ruleFiles.add(read(zip.getInputStream(entry)));
+					}
+				}
+			}
+			finally
+			{
+				zip.close();
+			}
+		}
+		else if(f.isDirectory())
+		{
+			File[] listOfFiles = f.listFiles(RuleEngineCache.XML_FILE_FILTER);
+			for(int i=0;listOfFiles!=null && i<listOfFiles.length;i++)
+			{
+				ruleFiles.add(read(new FileInputStream(listOfFiles[i])));
+			}
+		}
+		else
+		{
+			ruleFiles.add(read(new FileInputStream(f)));
+		}
+		return ruleFiles;
+	}
+	
+	private static byte[] read(InputStream in) throws Exception
+	{
+		try
+		{
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int length;
+			while((length = in.read(buffer))>0)
+			{
+				out.write(buffer, 0, length);
+			}
+			return out.toByteArray();
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+	
+	/**
+	 * checks that the group of the rule file does not depend on another group
+	 * 
+	 * @return	true if the rule file contains actions
+	 */
+	private static boolean checkDependentGroups(SAXParser parser, byte[] ruleFile) throws Exception
+	{
+		final List<String> dependentGroups = new ArrayList<String>();
+		final boolean[] hasActions = new boolean[1];
+		parser.parse(new ByteArrayInputStream(ruleFile), new DefaultHandler()
+		{
+			public void startElement(String uri, String localName, String qName, Attributes attributes)
+			{
+				if(qName.equals(TAG_ACTION))
+				{
+					hasActions[0] = true;
+				}
+				else if(qName.equals(TAG_RULEGROUP))
+				{
+					String dependentGroupId = attributes.getValue(ATTRIBUTE_DEPENDENT_RULEGROUP_ID);
+					if(dependentGroupId!=null && dependentGroupId.trim().length()>0)
+					{
+						dependentGroups.add("group: " + attributes.getValue("id") + " depends on group: " + dependentGroupId);
+					}
+				}
+			}
+		});
+		if(dependentGroups.size()>0)
+		{
+			throw new Exception("the rulegroups can not be run separately, as the result of a group depends on another group - " + dependentGroups.get(0));
+		}
+		return hasActions[0];
+	}
+}
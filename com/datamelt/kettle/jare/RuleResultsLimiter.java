@@ -0,0 +1,242 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.datamelt.kettle.jare;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.datamelt.rules.core.RuleGroup;
+import com.datamelt.rules.core.RuleSubGroup;
+import com.datamelt.rules.core.XmlRule;
+import com.datamelt.rules.engine.BusinessRulesEngine;
+
+/**
+ * Limits the number of failed results of each rule that are output to the rule
+ * results step within a time window. The results exceeding the limit are counted
+ * as suppressed, so the volume of the rule results does not grow with the number
+ * of rows that fail, e.g. when a source delivers invalid data.
+ * 
+ * The rules are identified by the ids of their group, subgroup and rule. The
+ * counters of the rules are looked up once per rule engine and then accessed
+ * by the position of the rule in the rule engine. The limiter may be used by
+ * multiple threads.
+ * 
+ * @author uwe geercken - uwe.geercken@web.de
+ */
+public class RuleResultsLimiter
+{
+	private final int limit;
+	private final long windowMillis;
+	
+	// counters by the ids of the group, subgroup and rule
+	private final ConcurrentHashMap<String, RuleCounter> rules = new ConcurrentHashMap<String, RuleCounter>();
+	
+	/**
+	 * @param limit			the maximum number of failed results output per rule and window
+	 * @param windowSeconds	the length of the time window in seconds
+	 */
+	public RuleResultsLimiter(int limit, int windowSeconds)
+	{
+		this.limit = limit;
+		this.windowMillis = Math.max(1, windowSeconds) * 1000L;
+	}
+	
+	/**
+	 * returns the counters of the rules of the rule engine
+	 * 
+	 * @param counters	the counters returned for the last rule engine or null
+	 * @param engine	the rule engine
+	 * @return			the given counters if they belong to the rule engine, otherwise the counters looked up for it
+	 */
+	public EngineCounters getEngineCounters(EngineCounters counters, BusinessRulesEngine engine)
+	{
+		if(counters!=null && counters.engine==engine)
+		{
+			return counters;
+		}
+		return new EngineCounters(engine, this);
+	}
+	
+	/**
+	 * @param groupId		the id of the group
+	 * @param subgroupId	the id of the subgroup
+	 * @param ruleId		the id of the rule
+	 * @return				the counter of the rule
+	 */
+	RuleCounter getRuleCounter(String groupId, String subgroupId, String ruleId)
+	{
+		String key = groupId + "/" + subgroupId + "/" + ruleId;
+		RuleCounter counter = rules.get(key);
+		if(counter==null)
+		{
+			counter = new RuleCounter();
+			RuleCounter existing = rules.putIfAbsent(key, counter);
+			if(existing!=null)
+			{
+				counter = existing;
+			}
+		}
+		return counter;
+	}
+	
+	/**
+	 * determines if a failed result of the rule is output. if not, it is counted
+	 * as suppressed.
+	 * 
+	 * @param counter	the counter of the rule
+	 * @param now		the current time in milliseconds
+	 * @return			true if the result is output
+	 */
+	public boolean accept(RuleCounter counter, long now)
+	{
+		synchronized(counter)
+		{
+			// a new window starts with the first result after the current window ended
+			if(!counter.started || now - counter.windowStart>=windowMillis)
+			{
+				counter.started = true;
+				counter.windowStart = now;
+				counter.output = 0;
+			}
+			if(counter.output<limit)
+			{
+				counter.output++;
+				return true;
+			}
+			counter.suppressed++;
+			return false;
+		}
+	}
+	
+	/**
+	 * @return	the number of failed results that were not output
+	 */
+	public long getNumberOfSuppressed()
+	{
+		long total = 0;
+		Iterator<RuleCounter> iterator = rules.values().iterator();
+		while(iterator.hasNext())
+		{
+			RuleCounter counter = iterator.next();
+			synchronized(counter)
+			{
+				total += counter.suppressed;
+			}
+		}
+		return total;
+	}
+	
+	/**
+	 * @return	the number of suppressed results for each rule with suppressed results, ordered by the rule
+	 */
+	public List<String> getSuppressed()
+	{
+		List<String> suppressed = new ArrayList<String>();
+		Iterator<Map.Entry<String, RuleCounter>> iterator = rules.entrySet().iterator();
+		while(iterator.hasNext())
+		{
+			Map.Entry<String, RuleCounter> entry = iterator.next();
+			long count;
+			synchronized(entry.getValue())
+			{
+				count = entry.getValue().suppressed;
+			}
+			if(count>0)
+			{
+				suppressed.add("rule: " + entry.getKey() + ", suppressed: " + count);
+			}
+		}
+		Collections.sort(suppressed);
+		return suppressed;
+	}
+	
+	/**
+	 * the counters of the rules of a rule engine by the position of the group,
+	 * the subgroup and the rule
+	 */
+	public static class EngineCounters
+	{
+		private final BusinessRulesEngine engine;
+		private final RuleCounter[][][] ruleCounters;
+		
+		private EngineCounters(BusinessRulesEngine engine, RuleResultsLimiter limiter)
+		{
+			this.engine = engine;
+			int numberOfGroups = engine.getGroups().size();
+			ruleCounters = new RuleCounter[numberOfGroups][][];
+			for(int i=0;i<numberOfGroups;i++)
+			{
+				RuleGroup group = engine.getGroups().get(i);
+				int numberOfSubgroups = group.getSubGroups().size();
+				ruleCounters[i] = new RuleCounter[numberOfSubgroups][];
+				for(int f=0;f<numberOfSubgroups;f++)
+				{
+					RuleSubGroup subgroup = group.getSubGroups().get(f);
+					int numberOfRules = subgroup.getRulesCollection().size();
+					ruleCounters[i][f] = new RuleCounter[numberOfRules];
+					for(int g=0;g<numberOfRules;g++)
+					{
+						XmlRule rule = subgroup.getRulesCollection().get(g);
+						ruleCounters[i][f][g] = limiter.getRuleCounter(group.getId(), subgroup.getId(), rule.getId());
+					}
+				}
+			}
+		}
+		
+		/**
+		 * returns the counter of the rule of a result. the results of a subgroup are
+		 * in the order of its rules, otherwise the rule is searched in the subgroup.
+		 * 
+		 * @param groupIndex	the position of the group in the rule engine
+		 * @param subgroupIndex	the position of the subgroup in the group
+		 * @param resultIndex	the position of the result in the results of the subgroup
+		 * @param rule			the rule of the result
+		 * @return				the counter of the rule
+		 */
+		public RuleCounter getRuleCounter(int groupIndex, int subgroupIndex, int resultIndex, XmlRule rule)
+		{
+			RuleSubGroup subgroup = engine.getGroups().get(groupIndex).getSubGroups().get(subgroupIndex);
+			int ruleIndex = resultIndex;
+			if(ruleIndex>=subgroup.getRulesCollection().size() || subgroup.getRulesCollection().get(ruleIndex)!=rule)
+			{
+				ruleIndex = subgroup.getRulesCollection().indexOf(rule);
+			}
+			return ruleCounters[groupIndex][subgroupIndex][ruleIndex];
+		}
+	}
+	
+	/**
+	 * the results of a rule output in the current window and suppressed in total
+	 */
+	public static class RuleCounter
+	{
+		private boolean started;
+		private long windowStart;
+		private int output;
+		private long suppressed;
+		
+		private RuleCounter()
+		{
+		}
+	}
+}
@@ -0,0 +1,249 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.datamelt.kettle.jare;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.pentaho.di.core.row.RowDataUtil;
+
+import com.datamelt.rules.core.RuleGroup;
+import com.datamelt.rules.core.RuleSubGroup;
+import com.datamelt.rules.engine.BusinessRulesEngine;
+
+/**
+ * Counts for each group, subgroup and rule of a rule project how often it was
+ * evaluated, failed or skipped. The counts are kept in arrays in the order of
+ * the groups, subgroups and rules of the rule engine, so counting a row does
+ * not create any objects.
+ * 
+ * The counts can only be used with rule engines of the same rule project they
+ * were created for. Each thread running the rule engine uses its own instance.
+ * 
+ * @author uwe geercken - uwe.geercken@web.de
+ */
+public class RuleStatistics
+{
+	private final String[] groupIds;
+	private final String[][] subgroupIds;
+	private final String[][][] ruleIds;
+	
+	private final long[] groupEvaluated;
+	private final long[] groupFailed;
+	private final long[] groupSkipped;
+	private final long[][] subgroupEvaluated;
+	private final long[][] subgroupFailed;
+	private final long[][] subgroupSkipped;
+	private final long[][][] ruleEvaluated;
+	private final long[][][] ruleFailed;
+	private final long[][][] ruleSkipped;
+	
+	/**
+	 * @param engine	the rule engine the groups, subgroups and rules are taken from
+	 */
+	public RuleStatistics(BusinessRulesEngine engine)
+	{
+		int numberOfGroups = engine.getGroups().size();
+		groupIds = new String[numberOfGroups];
+		subgroupIds = new String[numberOfGroups][];
+		ruleIds = new String[numberOfGroups][][];
+		groupEvaluated = new long[numberOfGroups];
+		groupFailed = new long[numberOfGroups];
+		groupSkipped = new long[numberOfGroups];
+		subgroupEvaluated = new long[numberOfGroups][];
+		subgroupFailed = new long[numberOfGroups][];
+		subgroupSkipped = new long[numberOfGroups][];
+		ruleEvaluated = new long[numberOfGroups][][];
+		ruleFailed = new long[numberOfGroups][][];
+		ruleSkipped = new long[numberOfGroups][][];
+		for(int i=0;i<numberOfGroups;i++)
+		{
+			RuleGroup group = engine.getGroups().get(i);
+			groupIds[i] = group.getId();
+			int numberOfSubgroups = group.getSubGroups().size();
+			subgroupIds[i] = new String[numberOfSubgroups];
+			ruleIds[i] = new String[numberOfSubgroups][];
+			subgroupEvaluated[i] = new long[numberOfSubgroups];
+			subgroupFailed[i] = new long[numberOfSubgroups];
+			subgroupSkipped[i] = new long[numberOfSubgroups];
+			ruleEvaluated[i] = new long[numberOfSubgroups][];
+			ruleFailed[i] = new long[numberOfSubgroups][];
+			ruleSkipped[i] = new long[numberOfSubgroups][];
+			for(int f=0;f<numberOfSubgroups;f++)
+			{
+				RuleSubGroup subgroup = group.getSubGroups().get(f);
+				subgroupIds[i][f] = subgroup.getId();
+				int numberOfRules = subgroup.getRulesCollection().size();
+				ruleIds[i][f] = new String[numberOfRules];
+				for(int g=0;g<numberOfRules;g++)
+				{
+					ruleIds[i][f][g] = subgroup.getRulesCollection().get(g).getId();
+				}
+				ruleEvaluated[i][f] = new long[numberOfRules];
+				ruleFailed[i][f] = new long[numberOfRules];
+				ruleSkipped[i][f] = new long[numberOfRules];
+			}
+		}
+	}
+	
+	/**
+	 * counts the results of the row the rule engine was last run for
+	 * 
+	 * @param engine	the rule engine after running the row
+	 */
+	public void count(BusinessRulesEngine engine)
+	{
+		for(int i=0;i<groupIds.length;i++)
+		{
+			RuleGroup group = engine.getGroups().get(i);
+			// the rules of a skipped group are not evaluated
+			boolean skipped = group.getSkipped()==1;
+			if(skipped)
+			{
+				groupSkipped[i]++;
+			}
+			else
+			{
+				groupEvaluated[i]++;
+				groupFailed[i] += group.getFailed();
+			}
+			for(int f=0;f<subgroupIds[i].length;f++)
+			{
+				RuleSubGroup subgroup = group.getSubGroups().get(f);
+				long[] evaluated = ruleEvaluated[i][f];
+				if(skipped)
+				{
+					subgroupSkipped[i][f]++;
+					long[] ruleSkippedOfSubgroup = ruleSkipped[i][f];
+					for(int g=0;g<ruleSkippedOfSubgroup.length;g++)
+					{
+						ruleSkippedOfSubgroup[g]++;
+					}
+				}
+				else
+				{
+					subgroupEvaluated[i][f]++;
+					subgroupFailed[i][f] += subgroup.getFailed();
+					long[] failed = ruleFailed[i][f];
+					for(int g=0;g<evaluated.length;g++)
+					{
+						evaluated[g]++;
+						failed[g] += subgroup.getRulesCollection().get(g).getFailed();
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * adds the counts of other statistics to these statistics
+	 * 
+	 * @param other		the statistics to add
+	 * @return			false if the other statistics are for a different rule project and were not added
+	 */
+	public boolean add(RuleStatistics other)
+	{
+		if(!hasSameRules(other))
+		{
+			return false;
+		}
+		for(int i=0;i<groupIds.length;i++)
+		{
+			groupEvaluated[i] += other.groupEvaluated[i];
+			groupFailed[i] += other.groupFailed[i];
+			groupSkipped[i] += other.groupSkipped[i];
+			for(int f=0;f<subgroupIds[i].length;f++)
+			{
+				subgroupEvaluated[i][f] += other.subgroupEvaluated[i][f];
+				subgroupFailed[i][f] += other.subgroupFailed[i][f];
+				subgroupSkipped[i][f] += other.subgroupSkipped[i][f];
+				for(int g=0;g<ruleIds[i][f].length;g++)
+				{
+					ruleEvaluated[i][f][g] += other.ruleEvaluated[i][f][g];
+					ruleFailed[i][f][g] += other.ruleFailed[i][f][g];
+					ruleSkipped[i][f][g] += other.ruleSkipped[i][f][g];
+				}
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * creates one row per group, per subgroup and per rule, each followed by the rows
+	 * of its subgroups or rules. the rows contain the fields: group, subgroup, rule,
+	 * evaluated, failed, skipped and failure rate. the subgroup and rule fields of the
+	 * row of a group and the rule field of the row of a subgroup are null.
+	 * 
+	 * @param rowSize	the size of the rows to allocate
+	 * @return			the rows
+	 */
+	public List<Object[]> getRows(int rowSize)
+	{
+		List<Object[]> rows = new ArrayList<Object[]>();
+		for(int i=0;i<groupIds.length;i++)
+		{
+			rows.add(getRow(rowSize, groupIds[i], null, null, groupEvaluated[i], groupFailed[i], groupSkipped[i]));
+			for(int f=0;f<subgroupIds[i].length;f++)
+			{
+				rows.add(getRow(rowSize, groupIds[i], subgroupIds[i][f], null, subgroupEvaluated[i][f], subgroupFailed[i][f], subgroupSkipped[i][f]));
+				for(int g=0;g<ruleIds[i][f].length;g++)
+				{
+					rows.add(getRow(rowSize, groupIds[i], subgroupIds[i][f], ruleIds[i][f][g], ruleEvaluated[i][f][g], ruleFailed[i][f][g], ruleSkipped[i][f][g]));
+				}
+			}
+		}
+		return rows;
+	}
+	
+	private static Object[] getRow(int rowSize, String group, String subgroup, String rule, long evaluated, long failed, long skipped)
+	{
+		Object[] row = RowDataUtil.allocateRowData(rowSize);
+		row[0] = group;
+		row[1] = subgroup;
+		row[2] = rule;
+		row[3] = evaluated;
+		row[4] = failed;
+		row[5] = skipped;
+		row[6] = evaluated>0 ? (double)failed / evaluated : 0.0;
+		return row;
+	}
+	
+	private boolean hasSameRules(RuleStatistics other)
+	{
+		if(groupIds.length!=other.groupIds.length)
+		{
+			return false;
+		}
+		for(int i=0;i<groupIds.length;i++)
+		{
+			if(!groupIds[i].equals(other.groupIds[i]) || subgroupIds[i].length!=other.subgroupIds[i].length)
+			{
+				return false;
+			}
+			for(int f=0;f<subgroupIds[i].length;f++)
+			{
+				if(ruleIds[i][f].length!=other.ruleIds[i][f].length)
+				{
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+}
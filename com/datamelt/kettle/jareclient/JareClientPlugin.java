@@ -18,8 +18,8 @@
  */ 
 package com.datamelt.kettle.jareclient;
 
-import java.math.BigDecimal;
-import java.util.Date;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.row.RowDataUtil;
@@ -34,12 +34,12 @@ import org.pentaho.di.trans.step.StepInterface;
 import org.pentaho.di.trans.step.StepMeta;
 import org.pentaho.di.trans.step.StepMetaInterface;
 
+import com.datamelt.kettle.util.FieldConverter;
+import com.datamelt.kettle.util.StepLog;
 import com.datamelt.rules.engine.BusinessRulesEngine;
 import com.datamelt.server.ClientHandler;
-import com.datamelt.server.RuleEngineClient;
 import com.datamelt.server.RuleEngineServerObject;
 import com.datamelt.util.HeaderRow;
-import com.datamelt.util.RowField;
 import com.datamelt.util.RowFieldCollection;
 
 /**
@@ -77,10 +77,34 @@ public class JareClientPlugin extends BaseStep implements StepInterface
 	
 	private RowMetaInterface inputRowMeta;
 	
-	private RuleEngineClient client = null;
+	private RuleEngineConnection connection = null;
 	private HeaderRow header;
+	private FieldConverter[] converters;
 	private int inputSize=0;
 	
+	// rows waiting to be sent to the server in the next batch
+	private ArrayList<Object[]> pendingRows = new ArrayList<Object[]>();
+	private int batchSize=1;
+	private int batchLinger=0;
+	private long batchStarted;
+	
+	// rows sent to the server for which the result has not been received yet
+	private ArrayDeque<Object[]> inFlightRows = new ArrayDeque<Object[]>();
+	private int window=1;
+	private ResponseReader responseReader = null;
+	
+	// connections to the servers, shared by all step copies
+	private RuleEngineConnectionPool pool;
+	// number of failed connections since the last result was received
+	private int failovers=0;
+	
+	// rows sent as concurrent requests, each on its own connection
+	private RequestExecutor requestExecutor = null;
+	private int concurrentRequests=0;
+	
+	// logging of the messages for each row
+	private StepLog stepLog;
+	
 	public JareClientPlugin(StepMeta s, StepDataInterface stepDataInterface, int c, TransMeta t, Trans dis)
 	{
 		super(s,stepDataInterface,c,t,dis);
@@ -91,22 +115,70 @@ public class JareClientPlugin extends BaseStep implements StepInterface
 		meta = (JareClientPluginMeta)smi;
 	    data = (JareClientPluginData)sdi;
 	    
+	    // when no rows are waiting, output the rows of the completed requests,
+	    // so that rows are not held back while the input is idle
+	    if(requestExecutor!=null)
+	    {
+	    	while(rowsetInputSize()==0 && requestExecutor.getNumberOfRequests()>0 && !isStopped())
+	    	{
+	    		if(!putCompletedRequests(requestExecutor.getNumberOfRequests() - 1))
+	    		{
+	    			return false;
+	    		}
+	    	}
+	    }
+	    // when no rows are waiting, send the pending batch after the linger time
+	    // and complete the rows in flight, so that rows are not held back while
+	    // the input is idle
+	    else if(!first && rowsetInputSize()==0)
+	    {
+	    	if(!pendingRows.isEmpty() && !waitForRow() && !sendBatch())
+	    	{
+	    		return false;
+	    	}
+	    	if(rowsetInputSize()==0 && !receiveResults(0))
+	    	{
+	    		return false;
+	    	}
+	    }
+	    
 	    // get the row
 		Object[] r=getRow();
 		
 		// if no more rows, we are done
 		if (r==null)
 		{
-			try
+			// wait for the results of the concurrent requests
+			if(requestExecutor!=null)
 			{
-				// close the output stream and socket to server
-				client.getServerObject("exit");
-				client.closeOutputStream();
-				client.closeSocket();
+				if(!putCompletedRequests(0))
+				{
+					return false;
+				}
+				requestExecutor.stop();
+				requestExecutor = null;
 			}
-			catch(Exception ex)
+			// send the remaining rows of the last batch and wait for
+			// all results
+			if(!pendingRows.isEmpty() && !sendBatch())
+			{
+				return false;
+			}
+			if(!receiveResults(0))
+			{
+				return false;
+			}
+			if(responseReader!=null)
+			{
+				responseReader.stop();
+				responseReader = null;
+			}
+			// return the connection to the pool, so it can be reused
+			// by other step copies or transformations
+			if(connection!=null)
 			{
-				ex.printStackTrace();
+				pool.release(connection);
+				connection = null;
 			}
 			setOutputDone();
 			return false;
@@ -124,128 +196,360 @@ public class JareClientPlugin extends BaseStep implements StepInterface
             inputRowMeta = getInputRowMeta();
             // names of the header fields
             header = new HeaderRow(inputRowMeta.getFieldNames());
+            // converters for the values updated by the rule engine
+            converters = FieldConverter.getConverters(inputRowMeta);
+            
+            // number of rows sent to the server at once
+            batchSize = Math.max(1, meta.getBatchSize());
+            batchLinger = Math.max(0, meta.getBatchLinger());
+            // number of rows that may be sent before their results are received
+            window = Math.max(batchSize, meta.getWindow());
+            // number of rows sent as concurrent requests
+            concurrentRequests = Math.max(0, meta.getConcurrentRequests());
             
             String serverName = environmentSubstitute(meta.getServer());
             String serverPort = environmentSubstitute(meta.getServerPort());
             try
             {
-            	// create client connection to server
-            	client = new RuleEngineClient(serverName,Integer.parseInt(serverPort));
-            	log.logBasic("server is running business rule engine version: " + client.getServerObject(ClientHandler.RESPONSE_RULEENGINE_VERSION) + " - using: " + client.getServerObject(ClientHandler.RESPONSE_RULEFILE));
-            	if(Long.parseLong(client.getServerObject(ClientHandler.RESPONSE_NUMBER_OF_GROUPS))==0)
-        		{
-        			log.logBasic("attention: project zip file contains no rulegroups or no ruleroups that are active based on the valid from/until date");
-        		}
+            	// the server may be a comma separated list of servers. connections
+            	// are shared with the other step copies using the same servers
+            	pool = RuleEngineConnectionPool.getPool(serverName, serverPort);
+            	if(batchSize>1)
+            	{
+            		log.logBasic("sending rows to the server in batches of " + batchSize + " rows, linger time: " + batchLinger + " ms");
+            	}
+            	if(window>batchSize)
+            	{
+            		log.logBasic("keeping up to " + window + " rows in flight to the server");
+            	}
+            	connect();
+            	String version = null;
+            	while(version==null)
+            	{
+            		try
+            		{
+            			version = connection.getServerObject(ClientHandler.RESPONSE_RULEENGINE_VERSION);
+            			log.logBasic("server " + connection + " is running business rule engine version: " + version + " - using: " + connection.getServerObject(ClientHandler.RESPONSE_RULEFILE));
+                    	if(Long.parseLong(connection.getServerObject(ClientHandler.RESPONSE_NUMBER_OF_GROUPS))==0)
+                		{
+                			log.logBasic("attention: project zip file contains no rulegroups or no ruleroups that are active based on the valid from/until date");
+                		}
+            		}
+            		catch(Exception ex)
+            		{
+            			// try the next server
+            			version = null;
+            			if(!failover(ex))
+            			{
+            				throw ex;
+            			}
+            		}
+            	}
+            	failovers = 0;
+            	
+            	// each concurrent request leases its own connection, so the connection
+            	// used to check the server is returned to the pool
+            	if(concurrentRequests>0)
+            	{
+            		pool.release(connection);
+            		connection = null;
+            		requestExecutor = new RequestExecutor(pool, meta.getRouting(), header, concurrentRequests, "rule engine client request - " + getStepname() + "." + getCopy());
+            		log.logBasic("sending up to " + concurrentRequests + " rows as concurrent requests" + (requestExecutor.getVirtualThreads() ? " on virtual threads" : ""));
+            	}
             }
             catch(Exception ex)
             {
             	log.logError("error creating ruleengine client instance",ex.fillInStackTrace());
+            	setStopped(true);
+           		setOutputDone();
+           		setErrors(1);
+           		stopAll();
+           		return false;
             }
              
             first = false;
         }
-
+		
+		// send the row as a request of its own. the rows of completed requests are
+		// output meanwhile, and the step waits if too many requests are in flight
+		if(requestExecutor!=null)
+		{
+			if(!putCompletedRequests(concurrentRequests - 1))
+			{
+				return false;
+			}
+			requestExecutor.submit(r);
+			return true;
+		}
+		
+		// collect the row for the next batch
+		if(pendingRows.isEmpty())
+		{
+			batchStarted = System.currentTimeMillis();
+		}
+		pendingRows.add(r);
+		
+		if(pendingRows.size()>=batchSize)
+		{
+			// send the batch and make room for the next one
+			return sendBatch() && receiveResults(window - batchSize);
+		}
+		return true;
+	}
+	
+	/**
+	 * waits for the next row to arrive, but at most until the linger time
+	 * of the pending batch is over.
+	 * 
+	 * @return	true if a row is available, false if the linger time is over
+	 */
+	private boolean waitForRow() throws KettleException
+	{
+		while(rowsetInputSize()==0 && !isStopped())
+		{
+			if(System.currentTimeMillis() - batchStarted >= batchLinger)
+			{
+				return false;
+			}
+			try
+			{
+				Thread.sleep(1);
+			}
+			catch(InterruptedException ie)
+			{
+				throw new KettleException("interrupted while waiting for rows", ie);
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * sends all pending rows to the server in one frame. the rows
+	 * are then in flight until their results are received.
+	 * 
+	 * @return	false if an error occurred
+	 */
+	private boolean sendBatch()
+	{
+		while(true)
+		{
+			int numberOfRows = pendingRows.size();
+			try
+			{
+				for(int i=0;i<numberOfRows;i++)
+				{
+					// object/collection that holds all the fields and their values required for running the rule engine.
+					connection.send(new RowFieldCollection(header,pendingRows.get(i)));
+				}
+				connection.flush();
+				if(responseReader!=null)
+				{
+					responseReader.requestSent(numberOfRows);
+				}
+				inFlightRows.addAll(pendingRows);
+				pendingRows.clear();
+				return true;
+			}
+			catch(Exception ex)
+			{
+				// send the rows to another server
+				if(!failover(ex))
+				{
+		       		log.logError("error sending rows to ruleengine server", ex.fillInStackTrace());
+		       		setStopped(true);
+		       		setOutputDone();
+		       		setErrors(1);
+		       		stopAll();
+		       		return false;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * leases a connection to one of the servers from the pool. if more rows may be
+	 * in flight than are sent at once, the results are read on a separate thread.
+	 */
+	private void connect() throws Exception
+	{
+		connection = pool.lease(meta.getRouting());
+		log.logDetailed("using connection to rule engine server: " + connection);
+		if(window>batchSize && concurrentRequests==0)
+		{
+			responseReader = new ResponseReader(connection);
+			responseReader.start("rule engine client reader - " + getStepname() + "." + getCopy());
+		}
+	}
+	
+	/**
+	 * replaces a failed connection with a connection to another server. the rows
+	 * that were in flight on the failed connection are sent again, before the
+	 * pending rows.
+	 * 
+	 * @param ex	the error of the failed connection
+	 * @return		false if no other server is available
+	 */
+	private boolean failover(Exception ex)
+	{
+		if(connection==null || failovers>=pool.getNumberOfServers())
+		{
+			return false;
+		}
+		failovers++;
+		log.logError("connection to rule engine server " + connection + " failed, switching to another server", ex.toString());
+		if(responseReader!=null)
+		{
+			responseReader.stop();
+			responseReader = null;
+		}
+		pool.invalidate(connection);
+		connection = null;
+		try
+		{
+			connect();
+		}
+		catch(Exception ce)
+		{
+			log.logError("no other rule engine server available", ce.toString());
+			return false;
+		}
+		// the rows without a result are sent again
+		pendingRows.addAll(0, inFlightRows);
+		inFlightRows.clear();
+		return true;
+	}
+	
+	/**
+	 * receives the results for the rows in flight and puts the rows to the output
+	 * in the order they were received. results that have already arrived are always
+	 * processed; the method waits for more results only until no more than the given
+	 * number of rows are in flight.
+	 * 
+	 * @param maxRowsInFlight	the number of rows that may remain in flight
+	 * @return					false if an error occurred
+	 */
+	private boolean receiveResults(int maxRowsInFlight) throws KettleException
+	{
+		while(!inFlightRows.isEmpty())
+		{
+			RuleEngineServerObject response;
+	        try
+	        {
+	        	if(inFlightRows.size()>maxRowsInFlight)
+	        	{
+	        		response = responseReader!=null ? responseReader.take() : connection.receive();
+	        	}
+	        	else if(responseReader!=null)
+	        	{
+	        		response = responseReader.poll();
+	        		if(response==null)
+	        		{
+	        			return true;
+	        		}
+	        	}
+	        	else
+	        	{
+	        		return true;
+	        	}
+	        }
+	        catch(Exception ex)
+	        {
+	        	// send the rows in flight to another server
+	        	if(failover(ex))
+	        	{
+	        		if(!sendBatch())
+	        		{
+	        			return false;
+	        		}
+	        		continue;
+	        	}
+	       		log.logError("error receiving object from ruleengine server", ex.fillInStackTrace());
+	       		setStopped(true);
+	       		setOutputDone();
+	       		setErrors(1);
+	       		stopAll();
+	       		
+	        	return false;
+	        }
+	        failovers = 0;
+	        if(!putResult(inFlightRows.poll(), response))
+	        {
+	        	return false;
+	        }
+		}
+		return true;
+	}
+	
+	/**
+	 * puts the rows of the concurrent requests to the output in the order they were
+	 * read. results that have already arrived are always processed; the method waits
+	 * for more results only until no more than the given number of requests are in flight.
+	 * 
+	 * @param maxRequests	the number of requests that may remain in flight
+	 * @return				false if an error occurred
+	 */
+	private boolean putCompletedRequests(int maxRequests) throws KettleException
+	{
+		while(requestExecutor.getNumberOfRequests()>0)
+		{
+			RequestExecutor.Request request = requestExecutor.getNumberOfRequests()>maxRequests ? requestExecutor.take() : requestExecutor.poll();
+			if(request==null)
+			{
+				return true;
+			}
+			RuleEngineServerObject response;
+			try
+			{
+				response = request.getResult();
+			}
+			catch(Exception ex)
+			{
+	       		log.logError("error receiving object from ruleengine server", ex.fillInStackTrace());
+	       		setStopped(true);
+	       		setOutputDone();
+	       		setErrors(1);
+	       		stopAll();
+	       		return false;
+			}
+			if(!putResult(request.getRow(), response))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * puts the row to the output, adding the results of the rule engine
+	 * and the values of the fields that were updated by it.
+	 * 
+	 * @param r			the input row
+	 * @param response	the result received from the server for the row
+	 * @return			false if an error occurred
+	 */
+	private boolean putResult(Object[] r, RuleEngineServerObject response) throws KettleException
+	{
         // generate output row, make it correct size
         Object[] outputRow = RowDataUtil.resizeArray(r, data.outputRowMeta.size());
         
-        // object/collection that holds all the fields and their values required for running the rule engine
-        RowFieldCollection fields = new RowFieldCollection(header,r);
-        
-        // send row to server and receive the result
-        try
-        {
-        	RuleEngineServerObject response = client.getServerObject(fields);
-        	// set the output row fields to the values received by the rule engine server
-        	outputRow[inputSize]   = (long)response.getTotalGroups();
-        	outputRow[inputSize+1] = (long)response.getGroupsFailed(); 
-        	outputRow[inputSize+2] = (long)response.getGroupsSkipped();
-        	outputRow[inputSize+3] = (long)response.getTotalRules();
-        	outputRow[inputSize+4] = (long)response.getRulesFailed();
-        	outputRow[inputSize+5] = (long)response.getTotalActions();
-        	
-        	// set the rowfield collection to the rowfield collection of the received object, as it was
-        	// run through the ruleengine and possibly contains updates
-        	fields = response.getFields();
-        }
-        catch(Exception ex)
-        {        	
-       		log.logError("error receiving object from ruleengine server", ex.fillInStackTrace());
-       		setStopped(true);
-       		setOutputDone();
-       		setErrors(1);
-       		stopAll();
-       		
-        	return false;
-        }
+    	// set the output row fields to the values received by the rule engine server
+    	outputRow[inputSize]   = (long)response.getTotalGroups();
+    	outputRow[inputSize+1] = (long)response.getGroupsFailed(); 
+    	outputRow[inputSize+2] = (long)response.getGroupsSkipped();
+    	outputRow[inputSize+3] = (long)response.getTotalRules();
+    	outputRow[inputSize+4] = (long)response.getRulesFailed();
+    	outputRow[inputSize+5] = (long)response.getTotalActions();
         
         // process only updated fields by the rule engine
         // if there have been actions defined in the rule files
         try
         {
-        	// process only if the collection of fields was changed
-        	if(fields.isCollectionUpdated())
+        	// the rowfield collection of the received object was run
+        	// through the ruleengine and possibly contains updates
+        	int numberOfUpdatedFields = FieldConverter.writeUpdatedFields(response.getFields(), converters, outputRow);
+        	if(numberOfUpdatedFields>0)
         	{
-	        	for(int i=0;i<inputSize;i++)
-	            {
-	           		ValueMetaInterface vmi = inputRowMeta.searchValueMeta(header.getFieldName(i));
-	           		int fieldType = vmi.getType();
-	           		RowField rf = fields.getField(i);
-	           		// if the field has been updated, then get the value appropriate to the type
-	           		if(rf.isUpdated())
-	           		{
-	           			log.logRowlevel("field: " + rf.getName() + " [" + fieldType + "] updated from rule engine");
-	           			if(fieldType == ValueMetaInterface.TYPE_BOOLEAN)
-		           		{
-		           			outputRow[i] = rf.getValue();
-		           		}
-	           			else if(fieldType == ValueMetaInterface.TYPE_STRING)
-		           		{
-		           			outputRow[i] = rf.getValue();
-		           		}
-		           		else if(fieldType == ValueMetaInterface.TYPE_INTEGER) 
-		           		{
-		           			outputRow[i] = (Long)rf.getValue();
-		           		}
-		           		else if(fieldType == ValueMetaInterface.TYPE_NUMBER)
-		           		{
-		           			if(rf.getValue() instanceof Long)
-		           			{
-		           				outputRow[i] = ((Long)rf.getValue()).doubleValue();
-		           			}
-		           			else if(rf.getValue() instanceof Double)
-		           			{
-		           				outputRow[i] = rf.getValue();
-		           			}
-		           			else if(rf.getValue() instanceof Integer)
-		           			{
-		           				outputRow[i] = ((Integer)rf.getValue()).doubleValue();
-		           			}
-		           		}
-		           		else if(fieldType == ValueMetaInterface.TYPE_BIGNUMBER) 
-		           		{
-		           			if(rf.getValue() instanceof Long)
-		           			{
-		           				outputRow[i] = new BigDecimal((Long)rf.getValue());
-		           			}
-		           			else if(rf.getValue() instanceof Double)
-		           			{
-		           				outputRow[i] = new BigDecimal((Double)rf.getValue());
-		           			}
-		           			else if(rf.getValue() instanceof Integer)
-		           			{
-		           				outputRow[i] = new BigDecimal((Integer)rf.getValue());
-		           			} 
-		           		}
-		           		else if(fieldType == ValueMetaInterface.TYPE_DATE)
-		           		{
-		           			outputRow[i] = (Date)rf.getValue(); 
-		           		}
-		           		else
-		           		{
-		           			throw new Exception("invalid output field type: " + fieldType);
-		           		}
-	           		}
-	            }
+        		stepLog.logRowlevel("number of fields updated from rule engine: ", numberOfUpdatedFields);
         	}
         }
         catch(Exception ex)
@@ -261,13 +565,18 @@ public class JareClientPlugin extends BaseStep implements StepInterface
         putRow(data.outputRowMeta, outputRow);
 		return true;
 	}
-
+	
 	public boolean init(StepMetaInterface smi, StepDataInterface sdi)
 	{
 	    meta = (JareClientPluginMeta)smi;
 	    data = (JareClientPluginData)sdi;
 
-	    return super.init(smi, sdi);
+	    if(!super.init(smi, sdi))
+	    {
+	    	return false;
+	    }
+	    stepLog = new StepLog(log);
+	    return true;
 	}
 
 	public void dispose(StepMetaInterface smi, StepDataInterface sdi)
@@ -275,6 +584,32 @@ public class JareClientPlugin extends BaseStep implements StepInterface
 	    meta = (JareClientPluginMeta)smi;
 	    data = (JareClientPluginData)sdi;
 
+	    // requests are still in flight if the step was stopped
+	    if(requestExecutor!=null)
+	    {
+	    	requestExecutor.stop();
+	    	requestExecutor = null;
+	    }
+	    // the reader is still running if the step was stopped
+	    if(responseReader!=null)
+	    {
+	    	responseReader.stop();
+	    	responseReader = null;
+	    }
+	    // the connection is still leased if the step was stopped. results
+	    // may still be on their way, so it can not be reused
+	    if(connection!=null)
+	    {
+	    	pool.invalidate(connection);
+	    	connection = null;
+	    }
+	    // the pool is removed and its connections are closed when the last step copy closes it
+	    if(pool!=null)
+	    {
+	    	pool.close();
+	    	pool = null;
+	    }
+	    
 	    super.dispose(smi, sdi);
 	}
 	
@@ -29,6 +29,7 @@ import org.eclipse.swt.layout.FormAttachment;
 import org.eclipse.swt.layout.FormData;
 import org.eclipse.swt.layout.FormLayout;
 import org.eclipse.swt.widgets.Button;
+import org.eclipse.swt.widgets.Combo;
 import org.eclipse.swt.widgets.Display;
 import org.eclipse.swt.widgets.Event;
 import org.eclipse.swt.widgets.Label;
@@ -46,10 +47,11 @@ public class JareClientPluginDialog extends BaseStepDialog implements StepDialog
 {
 	private JareClientPluginMeta input;
 
-	private Label        wLabelServer, wLabelStepname, wLabelServerPort;
-	private Text         wTextStepname;
+	private Label        wLabelServer, wLabelStepname, wLabelServerPort, wLabelBatchSize, wLabelBatchLinger, wLabelWindow, wLabelRouting, wLabelConcurrentRequests;
+	private Text         wTextStepname, wTextBatchSize, wTextBatchLinger, wTextWindow, wTextConcurrentRequests;
 	private TextVar      wTextServer, wTextServerPort;
-	private FormData     wFormServer, wFormStepname, wFormServerPort;
+	private Combo        wComboRouting;
+	private FormData     wFormServer, wFormStepname, wFormServerPort, wFormBatchSize, wFormBatchLinger, wFormWindow, wFormRouting, wFormConcurrentRequests;
 	
 
 	public JareClientPluginDialog(Shell parent, Object in, TransMeta transMeta, String sname)
@@ -153,13 +155,110 @@ public class JareClientPluginDialog extends BaseStepDialog implements StepDialog
 		wFormServerPort.right= new FormAttachment(100, 0);
 		wTextServerPort.setLayoutData(wFormServerPort);
 		
+		// Batch size line
+		wLabelBatchSize=new Label(shell, SWT.RIGHT);
+		wLabelBatchSize.setText(Messages.getString("JarePluginDialog.BatchSize.Label")); //$NON-NLS-1$
+        props.setLook( wLabelBatchSize );
+        wFormBatchSize=new FormData();
+        wFormBatchSize.left = new FormAttachment(0, 0);
+        wFormBatchSize.right= new FormAttachment(middle, -margin);
+        wFormBatchSize.top  = new FormAttachment(wTextServerPort, margin);
+		wLabelBatchSize.setLayoutData(wFormBatchSize);
+		wTextBatchSize=new Text(shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+		wTextBatchSize.setText(String.valueOf(input.getBatchSize()));
+        props.setLook( wTextBatchSize );
+        wTextBatchSize.addModifyListener(lsMod);
+		wFormBatchSize=new FormData();
+		wFormBatchSize.left = new FormAttachment(middle, 0);
+		wFormBatchSize.top  = new FormAttachment(wTextServerPort, margin);
+		wFormBatchSize.right= new FormAttachment(100, 0);
+		wTextBatchSize.setLayoutData(wFormBatchSize);
+		
+		// Batch linger time line
+		wLabelBatchLinger=new Label(shell, SWT.RIGHT);
+		wLabelBatchLinger.setText(Messages.getString("JarePluginDialog.BatchLinger.Label")); //$NON-NLS-1$
+        props.setLook( wLabelBatchLinger );
+        wFormBatchLinger=new FormData();
+        wFormBatchLinger.left = new FormAttachment(0, 0);
+        wFormBatchLinger.right= new FormAttachment(middle, -margin);
+        wFormBatchLinger.top  = new FormAttachment(wTextBatchSize, margin);
+		wLabelBatchLinger.setLayoutData(wFormBatchLinger);
+		wTextBatchLinger=new Text(shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+		wTextBatchLinger.setText(String.valueOf(input.getBatchLinger()));
+        props.setLook( wTextBatchLinger );
+        wTextBatchLinger.addModifyListener(lsMod);
+		wFormBatchLinger=new FormData();
+		wFormBatchLinger.left = new FormAttachment(middle, 0);
+		wFormBatchLinger.top  = new FormAttachment(wTextBatchSize, margin);
+		wFormBatchLinger.right= new FormAttachment(100, 0);
+		wTextBatchLinger.setLayoutData(wFormBatchLinger);
+		
+		// Rows in flight line
+		wLabelWindow=new Label(shell, SWT.RIGHT);
+		wLabelWindow.setText(Messages.getString("JarePluginDialog.Window.Label")); //$NON-NLS-1$
+        props.setLook( wLabelWindow );
+        wFormWindow=new FormData();
+        wFormWindow.left = new FormAttachment(0, 0);
+        wFormWindow.right= new FormAttachment(middle, -margin);
+        wFormWindow.top  = new FormAttachment(wTextBatchLinger, margin);
+		wLabelWindow.setLayoutData(wFormWindow);
+		wTextWindow=new Text(shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+		wTextWindow.setText(String.valueOf(input.getWindow()));
+        props.setLook( wTextWindow );
+        wTextWindow.addModifyListener(lsMod);
+		wFormWindow=new FormData();
+		wFormWindow.left = new FormAttachment(middle, 0);
+		wFormWindow.top  = new FormAttachment(wTextBatchLinger, margin);
+		wFormWindow.right= new FormAttachment(100, 0);
+		wTextWindow.setLayoutData(wFormWindow);
+		
+		// selection of the server, when multiple servers are defined
+		wLabelRouting=new Label(shell, SWT.RIGHT);
+		wLabelRouting.setText(Messages.getString("JarePluginDialog.Routing.Label")); //$NON-NLS-1$
+        props.setLook( wLabelRouting );
+        wFormRouting=new FormData();
+        wFormRouting.left = new FormAttachment(0, 0);
+        wFormRouting.right= new FormAttachment(middle, -margin);
+        wFormRouting.top  = new FormAttachment(wTextWindow, margin);
+		wLabelRouting.setLayoutData(wFormRouting);
+		wComboRouting=new Combo(shell, SWT.VERTICAL | SWT.DROP_DOWN | SWT.BORDER | SWT.READ_ONLY);
+		wComboRouting.add(Messages.getString("JarePluginDialog.Routing.ComboEntry_0"));
+		wComboRouting.add(Messages.getString("JarePluginDialog.Routing.ComboEntry_1"));
+		wComboRouting.select(input.getRouting());
+        props.setLook( wComboRouting );
+        wComboRouting.addModifyListener(lsMod);
+		wFormRouting=new FormData();
+		wFormRouting.left = new FormAttachment(middle, 0);
+		wFormRouting.top  = new FormAttachment(wTextWindow, margin);
+		wFormRouting.right= new FormAttachment(100, 0);
+		wComboRouting.setLayoutData(wFormRouting);
+		
+		// Concurrent requests line
+		wLabelConcurrentRequests=new Label(shell, SWT.RIGHT);
+		wLabelConcurrentRequests.setText(Messages.getString("JarePluginDialog.ConcurrentRequests.Label")); //$NON-NLS-1$
+        props.setLook( wLabelConcurrentRequests );
+        wFormConcurrentRequests=new FormData();
+        wFormConcurrentRequests.left = new FormAttachment(0, 0);
+        wFormConcurrentRequests.right= new FormAttachment(middle, -margin);
+        wFormConcurrentRequests.top  = new FormAttachment(wComboRouting, margin);
+		wLabelConcurrentRequests.setLayoutData(wFormConcurrentRequests);
+		wTextConcurrentRequests=new Text(shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+		wTextConcurrentRequests.setText(String.valueOf(input.getConcurrentRequests()));
+        props.setLook( wTextConcurrentRequests );
+        wTextConcurrentRequests.addModifyListener(lsMod);
+		wFormConcurrentRequests=new FormData();
+		wFormConcurrentRequests.left = new FormAttachment(middle, 0);
+		wFormConcurrentRequests.top  = new FormAttachment(wComboRouting, margin);
+		wFormConcurrentRequests.right= new FormAttachment(100, 0);
+		wTextConcurrentRequests.setLayoutData(wFormConcurrentRequests);
+		
 		// Some buttons
 		wOK=new Button(shell, SWT.PUSH);
 		wOK.setText(Messages.getString("System.Button.OK")); //$NON-NLS-1$
 		wCancel=new Button(shell, SWT.PUSH);
 		wCancel.setText(Messages.getString("System.Button.Cancel")); //$NON-NLS-1$
 
-        BaseStepDialog.positionBottomButtons(shell, new Button[] { wOK, wCancel}, margin, wTextServerPort);
+        BaseStepDialog.positionBottomButtons(shell, new Button[] { wOK, wCancel}, margin, wTextConcurrentRequests);
         
 		// Add listeners
 		lsCancel   = new Listener() { public void handleEvent(Event e) { cancel(); } };
@@ -173,6 +272,10 @@ public class JareClientPluginDialog extends BaseStepDialog implements StepDialog
 		wTextStepname.addSelectionListener( lsDef );
 		wTextServer.addSelectionListener( lsDef );
 		wTextServerPort.addSelectionListener( lsDef );
+		wTextBatchSize.addSelectionListener( lsDef );
+		wTextBatchLinger.addSelectionListener( lsDef );
+		wTextWindow.addSelectionListener( lsDef );
+		wTextConcurrentRequests.addSelectionListener( lsDef );
 		
 		// Detect X or ALT-F4 or something that kills this window...
 		shell.addShellListener(	new ShellAdapter() { public void shellClosed(ShellEvent e) { cancel(); } } );
@@ -211,6 +314,11 @@ public class JareClientPluginDialog extends BaseStepDialog implements StepDialog
 		stepname = wTextStepname.getText();
 		input.setServer(wTextServer.getText());
 		input.setServerPort(wTextServerPort.getText());
+		input.setBatchSize(Const.toInt(wTextBatchSize.getText(), 1));
+		input.setBatchLinger(Const.toInt(wTextBatchLinger.getText(), JareClientPluginMeta.DEFAULT_BATCH_LINGER));
+		input.setWindow(Const.toInt(wTextWindow.getText(), 0));
+		input.setRouting(wComboRouting.getSelectionIndex());
+		input.setConcurrentRequests(Const.toInt(wTextConcurrentRequests.getText(), 0));
 	
 		dispose();
 	}
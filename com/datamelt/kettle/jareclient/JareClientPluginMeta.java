@@ -24,6 +24,7 @@ import java.util.Map;
 import org.eclipse.swt.widgets.Shell;
 import org.pentaho.di.core.CheckResult;
 import org.pentaho.di.core.CheckResultInterface;
+import org.pentaho.di.core.Const;
 import org.pentaho.di.core.Counter;
 import org.pentaho.di.core.annotations.Step;
 import org.pentaho.di.core.database.DatabaseMeta;
@@ -61,6 +62,14 @@ public class JareClientPluginMeta extends BaseStepMeta implements StepMetaInterf
 {
 	@Injection( name = "SERVER" ) String server;
 	@Injection( name = "SERVER_PORT" ) String serverPort;
+	@Injection( name = "BATCH_SIZE" ) int batchSize;
+	@Injection( name = "BATCH_LINGER" ) int batchLinger;
+	@Injection( name = "ROWS_IN_FLIGHT" ) int window;
+	@Injection( name = "ROUTING" ) int routing;
+	@Injection( name = "CONCURRENT_REQUESTS" ) int concurrentRequests;
+	
+	// default time in milliseconds to wait for more rows before an incomplete batch is sent
+	public static final int DEFAULT_BATCH_LINGER = 100;
 	
 	public JareClientPluginMeta()
 	{
@@ -90,6 +99,11 @@ public class JareClientPluginMeta extends BaseStepMeta implements StepMetaInterf
         
         retval.append("    ").append(XMLHandler.addTagValue("server", server));
         retval.append("    ").append(XMLHandler.addTagValue("server_port", serverPort));
+        retval.append("    ").append(XMLHandler.addTagValue("batch_size", batchSize));
+        retval.append("    ").append(XMLHandler.addTagValue("batch_linger", batchLinger));
+        retval.append("    ").append(XMLHandler.addTagValue("rows_in_flight", window));
+        retval.append("    ").append(XMLHandler.addTagValue("routing", routing));
+        retval.append("    ").append(XMLHandler.addTagValue("concurrent_requests", concurrentRequests));
         return retval.toString();
 	}
 
@@ -109,6 +123,11 @@ public class JareClientPluginMeta extends BaseStepMeta implements StepMetaInterf
 		{
 			server =  XMLHandler.getTagValue(stepnode, "server");
 			serverPort =  XMLHandler.getTagValue(stepnode, "server_port");
+			batchSize = Const.toInt(XMLHandler.getTagValue(stepnode, "batch_size"), 1);
+			batchLinger = Const.toInt(XMLHandler.getTagValue(stepnode, "batch_linger"), DEFAULT_BATCH_LINGER);
+			window = Const.toInt(XMLHandler.getTagValue(stepnode, "rows_in_flight"), 0);
+			routing = Const.toInt(XMLHandler.getTagValue(stepnode, "routing"), RuleEngineConnectionPool.ROUTING_LEAST_OUTSTANDING);
+			concurrentRequests = Const.toInt(XMLHandler.getTagValue(stepnode, "concurrent_requests"), 0);
 		}
 		catch(Exception e)
 		{
@@ -120,6 +139,11 @@ public class JareClientPluginMeta extends BaseStepMeta implements StepMetaInterf
 	{
 		server = "";
 		serverPort = "";
+		batchSize = 1;
+		batchLinger = DEFAULT_BATCH_LINGER;
+		window = 0;
+		routing = RuleEngineConnectionPool.ROUTING_LEAST_OUTSTANDING;
+		concurrentRequests = 0;
 	}
 	
 	public void getFields(RowMetaInterface rowMeta, String origin, RowMetaInterface[] info, StepMeta nextStep, VariableSpace space) throws KettleStepException
@@ -161,6 +185,15 @@ public class JareClientPluginMeta extends BaseStepMeta implements StepMetaInterf
 		{
 			server = rep.getStepAttributeString(id_step, "server");
 			serverPort = rep.getStepAttributeString(id_step, "server_port");
+			batchSize = (int)rep.getStepAttributeInteger(id_step, "batch_size");
+			if(batchSize<=0)
+			{
+				batchSize = 1;
+			}
+			batchLinger = (int)rep.getStepAttributeInteger(id_step, "batch_linger");
+			window = (int)rep.getStepAttributeInteger(id_step, "rows_in_flight");
+			routing = (int)rep.getStepAttributeInteger(id_step, "routing");
+			concurrentRequests = (int)rep.getStepAttributeInteger(id_step, "concurrent_requests");
 		}
 		catch(KettleDatabaseException dbe)
 		{
@@ -178,6 +211,11 @@ public class JareClientPluginMeta extends BaseStepMeta implements StepMetaInterf
 		{
 			rep.saveStepAttribute(id_transformation, id_step, "server", server);
 			rep.saveStepAttribute(id_transformation, id_step, "server_port", serverPort);
+			rep.saveStepAttribute(id_transformation, id_step, "batch_size", batchSize);
+			rep.saveStepAttribute(id_transformation, id_step, "batch_linger", batchLinger);
+			rep.saveStepAttribute(id_transformation, id_step, "rows_in_flight", window);
+			rep.saveStepAttribute(id_transformation, id_step, "routing", routing);
+			rep.saveStepAttribute(id_transformation, id_step, "concurrent_requests", concurrentRequests);
 		}
 		catch(KettleDatabaseException dbe)
 		{
@@ -242,4 +280,84 @@ public class JareClientPluginMeta extends BaseStepMeta implements StepMetaInterf
 	{
 		this.serverPort = serverPort;
 	}
+
+	/**
+	 * @return Returns the number of rows sent to the server at once.
+	 */
+	public int getBatchSize()
+	{
+		return batchSize;
+	}
+
+	/**
+	 * @param batchSize The number of rows sent to the server at once.
+	 */
+	public void setBatchSize(int batchSize)
+	{
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * @return Returns the time in milliseconds to wait for more rows before an incomplete batch is sent.
+	 */
+	public int getBatchLinger()
+	{
+		return batchLinger;
+	}
+
+	/**
+	 * @param batchLinger The time in milliseconds to wait for more rows before an incomplete batch is sent.
+	 */
+	public void setBatchLinger(int batchLinger)
+	{
+		this.batchLinger = batchLinger;
+	}
+
+	/**
+	 * @return Returns the number of rows that may be sent to the server before their results are received.
+	 */
+	public int getWindow()
+	{
+		return window;
+	}
+
+	/**
+	 * @param window The number of rows that may be sent to the server before their results are received.
+	 */
+	public void setWindow(int window)
+	{
+		this.window = window;
+	}
+
+	/**
+	 * @return Returns the selection of the server for a connection: least outstanding requests or round robin.
+	 */
+	public int getRouting()
+	{
+		return routing;
+	}
+
+	/**
+	 * @param routing The selection of the server for a connection: least outstanding requests or round robin.
+	 */
+	public void setRouting(int routing)
+	{
+		this.routing = routing;
+	}
+
+	/**
+	 * @return Returns the number of rows sent as concurrent requests, each on its own connection. 0 to send the rows on one connection.
+	 */
+	public int getConcurrentRequests()
+	{
+		return concurrentRequests;
+	}
+
+	/**
+	 * @param concurrentRequests The number of rows sent as concurrent requests, each on its own connection. 0 to send the rows on one connection.
+	 */
+	public void setConcurrentRequests(int concurrentRequests)
+	{
+		this.concurrentRequests = concurrentRequests;
+	}
 }
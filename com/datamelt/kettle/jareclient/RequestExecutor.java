@@ -0,0 +1,267 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.datamelt.kettle.jareclient;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.datamelt.server.RuleEngineServerObject;
+import com.datamelt.util.HeaderRow;
+import com.datamelt.util.RowFieldCollection;
+
+/**
+ * Sends rows to the rule engine servers as concurrent requests. Each request
+ * runs on its own thread, leases a connection from the pool, sends one row and
+ * waits for its result, so a single step copy can keep many rows in flight to
+ * the servers of the pool.
+ *
+ * On Java 21 and later the requests run on virtual threads, which make waiting
+ * for the server cheap, so thousands of requests can be in flight. On earlier
+ * versions of Java a platform thread is used for each concurrent request.
+ *
+ * The results are returned in the order the rows were submitted. The methods
+ * must only be called from the step thread.
+ *
+ * @author uwe geercken - uwe.geercken@web.de
+ */
+public class RequestExecutor
+{
+	private final RuleEngineConnectionPool pool;
+	private final int routing;
+	private final HeaderRow header;
+	private final ExecutorService executor;
+	private final boolean virtualThreads;
+
+	// rows submitted and their results, in the order they were submitted
+	private final ArrayDeque<Request> requests = new ArrayDeque<Request>();
+
+	/**
+	 * @param pool					the pool of connections to the servers
+	 * @param routing				the selection of the server for a connection
+	 * @param header				the names of the fields of the rows
+	 * @param concurrentRequests	the maximum number of requests in flight
+	 * @param name					prefix of the names of the threads
+	 */
+	public RequestExecutor(RuleEngineConnectionPool pool, int routing, HeaderRow header, int concurrentRequests, String name)
+	{
+		this.pool = pool;
+		this.routing = routing;
+		this.header = header;
+		ExecutorService virtualThreadExecutor = getVirtualThreadExecutor();
+		if(virtualThreadExecutor!=null)
+		{
+			this.executor = virtualThreadExecutor;
+			this.virtualThreads = true;
+		}
+		else
+		{
+			this.executor = Executors.newFixedThreadPool(concurrentRequests, new DaemonThreadFactory(name));
+			this.virtualThreads = false;
+		}
+	}
+
+	/**
+	 * @return	true if the requests run on virtual threads
+	 */
+	public boolean getVirtualThreads()
+	{
+		return virtualThreads;
+	}
+
+	/**
+	 * @return	the number of rows submitted for which the result was not yet returned
+	 */
+	public int getNumberOfRequests()
+	{
+		return requests.size();
+	}
+
+	/**
+	 * submits a row to be sent to one of the servers
+	 *
+	 * @param row	the input row
+	 */
+	public void submit(final Object[] row)
+	{
+		Future<RuleEngineServerObject> result = executor.submit(new Callable<RuleEngineServerObject>()
+		{
+			public RuleEngineServerObject call() throws Exception
+			{
+				return send(row);
+			}
+		});
+		requests.add(new Request(row, result));
+	}
+
+	/**
+	 * returns the oldest row if its result has been received
+	 *
+	 * @return	the row and its result or null
+	 */
+	public Request poll()
+	{
+		Request request = requests.peek();
+		if(request==null || !request.result.isDone())
+		{
+			return null;
+		}
+		return requests.poll();
+	}
+
+	/**
+	 * returns the oldest row, even if its result has not been received yet: the
+	 * getResult() method of the row waits for it. at least one row must have been
+	 * submitted and not yet returned.
+	 *
+	 * @return	the row and its result
+	 */
+	public Request take()
+	{
+		return requests.poll();
+	}
+
+	/**
+	 * stops the threads. requests that are still in flight are cancelled.
+	 */
+	public void stop()
+	{
+		executor.shutdownNow();
+		requests.clear();
+	}
+
+	/**
+	 * sends the row on a connection leased from the pool and waits for the result.
+	 * if the connection fails, the row is sent to another server.
+	 */
+	private RuleEngineServerObject send(Object[] row) throws Exception
+	{
+		int failovers = 0;
+		while(true)
+		{
+			RuleEngineConnection connection = pool.lease(routing);
+			try
+			{
+				connection.send(new RowFieldCollection(header, row));
+				connection.flush();
+				RuleEngineServerObject response = connection.receive();
+				pool.release(connection);
+				return response;
+			}
+			catch(Exception ex)
+			{
+				pool.invalidate(connection);
+				failovers++;
+				if(failovers>=pool.getNumberOfServers() || Thread.currentThread().isInterrupted())
+				{
+					throw ex;
+				}
+			}
+		}
+	}
+
+	/**
+	 * creates an executor that runs each task on a new virtual thread. the executor
+	 * is looked up at runtime, so the plugin still runs on versions of Java before 21.
+	 *
+	 * @return	the executor or null if virtual threads are not available
+	 */
+	private static ExecutorService getVirtualThreadExecutor()
+	{
+		try
+		{
+			return (ExecutorService)Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		}
+		catch(Exception ex)
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * a row submitted and the result received from the server for it
+	 */
+	public static class Request
+	{
+		private final Object[] row;
+		private final Future<RuleEngineServerObject> result;
+
+		private Request(Object[] row, Future<RuleEngineServerObject> result)
+		{
+			this.row = row;
+			this.result = result;
+		}
+
+		/**
+		 * @return	the input row
+		 */
+		public Object[] getRow()
+		{
+			return row;
+		}
+
+		/**
+		 * waits for the result of the row
+		 *
+		 * @return				the result of the rule engine for the row
+		 * @throws Exception	when the row could not be sent to any of the servers
+		 */
+		public RuleEngineServerObject getResult() throws Exception
+		{
+			try
+			{
+				return result.get();
+			}
+			catch(ExecutionException ee)
+			{
+				if(ee.getCause() instanceof Exception)
+				{
+					throw (Exception)ee.getCause();
+				}
+				throw ee;
+			}
+		}
+	}
+
+	/**
+	 * creates named daemon threads, so the threads do not keep the JVM running
+	 */
+	private static class DaemonThreadFactory implements ThreadFactory
+	{
+		private final String name;
+		private final AtomicInteger number = new AtomicInteger();
+
+		private DaemonThreadFactory(String name)
+		{
+			this.name = name;
+		}
+
+		public Thread newThread(Runnable runnable)
+		{
+			Thread thread = new Thread(runnable, name + " - " + number.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
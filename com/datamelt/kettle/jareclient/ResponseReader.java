@@ -0,0 +1,161 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.datamelt.kettle.jareclient;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+
+import com.datamelt.server.RuleEngineServerObject;
+
+/**
+ * Reads the responses of the rule engine server on a dedicated thread, so
+ * that the step can send further rows while the server is still evaluating
+ * the previous ones.
+ *
+ * The reader only reads as many responses as rows have been sent, which the
+ * step announces using the requestSent() method. The responses are handed
+ * to the step in the order they are received, which is the order in which
+ * the rows were sent.
+ *
+ * @author uwe geercken - uwe.geercken@web.de
+ */
+public class ResponseReader implements Runnable
+{
+	private final RuleEngineConnection connection;
+
+	// number of rows sent for which the response has not been read yet
+	private final Semaphore requests = new Semaphore(0);
+	// responses read from the server or the exception that stopped the reader
+	private final LinkedBlockingQueue<Object> responses = new LinkedBlockingQueue<Object>();
+
+	private Thread thread;
+	private volatile boolean stopped;
+
+	/**
+	 * @param connection	the connection to read the responses from
+	 */
+	public ResponseReader(RuleEngineConnection connection)
+	{
+		this.connection = connection;
+	}
+
+	/**
+	 * starts reading responses in a daemon thread
+	 *
+	 * @param name	name of the thread
+	 */
+	public void start(String name)
+	{
+		thread = new Thread(this, name);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * stops the reader. all responses for the rows sent should have been
+	 * received, otherwise the connection can not be used any further.
+	 */
+	public void stop()
+	{
+		stopped = true;
+		if(thread!=null)
+		{
+			thread.interrupt();
+			try
+			{
+				thread.join(1000);
+			}
+			catch(InterruptedException ie)
+			{
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * announces that rows have been sent to the server
+	 *
+	 * @param numberOfRows	the number of rows sent
+	 */
+	public void requestSent(int numberOfRows)
+	{
+		requests.release(numberOfRows);
+	}
+
+	/**
+	 * waits for the next response
+	 *
+	 * @return				the next response of the server
+	 * @throws Exception	when reading from the server failed
+	 */
+	public RuleEngineServerObject take() throws Exception
+	{
+		return getResponse(responses.take());
+	}
+
+	/**
+	 * returns the next response if it has already been received
+	 *
+	 * @return				the next response of the server or null
+	 * @throws Exception	when reading from the server failed
+	 */
+	public RuleEngineServerObject poll() throws Exception
+	{
+		Object response = responses.poll();
+		if(response==null)
+		{
+			return null;
+		}
+		return getResponse(response);
+	}
+
+	private RuleEngineServerObject getResponse(Object response) throws Exception
+	{
+		if(response instanceof Exception)
+		{
+			// keep the error for any further call
+			responses.add(response);
+			throw (Exception)response;
+		}
+		return (RuleEngineServerObject)response;
+	}
+
+	public void run()
+	{
+		try
+		{
+			while(!stopped)
+			{
+				requests.acquire();
+				responses.put(connection.receive());
+			}
+		}
+		catch(InterruptedException ie)
+		{
+			// the reader is stopped
+		}
+		catch(Exception ex)
+		{
+			if(!stopped)
+			{
+				responses.add(ex);
+			}
+		}
+	}
+}
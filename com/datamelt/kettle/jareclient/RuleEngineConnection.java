@@ -0,0 +1,226 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.datamelt.kettle.jareclient;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.Socket;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.datamelt.server.RuleEngineServerObject;
+import com.datamelt.util.RowFieldCollection;
+
+/**
+ * Connection to a JaRE rule engine server.
+ *
+ * Uses the same object stream protocol as the RuleEngineClient of JaRE, but
+ * separates sending a request from receiving the response. The server handles
+ * the objects received on a connection strictly one after the other, so multiple
+ * rows may be written to the connection in one frame - only flushing the stream
+ * once - before the responses are read back in the same order.
+ *
+ * Java serialization writes every object only once per stream; later occurrences
+ * are sent as back references to the earlier one. A value object that is reused
+ * for multiple rows, e.g. a Date or byte[] changed in place, would therefore be
+ * sent with its old content. The object stream is reset before each row, so every
+ * row is sent with its current values and neither side of the stream keeps the
+ * objects of earlier rows.
+ *
+ * @author uwe geercken - uwe.geercken@web.de
+ */
+public class RuleEngineConnection
+{
+	// message to end the session with the server
+	public static final String MESSAGE_EXIT = "exit";
+	
+	// size of the buffers of the socket streams
+	private static final int BUFFER_SIZE = 65536;
+
+	private String server;
+	private int port;
+	private Socket socket;
+	private ObjectOutputStream outputStream;
+	private ObjectInputStream inputStream;
+	
+	// rows sent for which the result has not been received yet - on this
+	// connection and on all connections to the same server. rows are sent
+	// and received on different threads if a response reader is used
+	private final AtomicInteger outstanding = new AtomicInteger();
+	private AtomicInteger serverOutstanding;
+	private long lastUsed;
+
+	/**
+	 * opens a connection to the rule engine server
+	 *
+	 * @param server		name or ip address of the server
+	 * @param port			port of the server
+	 * @throws IOException	when the connection can not be established
+	 */
+	public RuleEngineConnection(String server, int port) throws IOException
+	{
+		this(server, port, new AtomicInteger());
+	}
+
+	/**
+	 * opens a connection to the rule engine server
+	 *
+	 * @param server			name or ip address of the server
+	 * @param port				port of the server
+	 * @param serverOutstanding	counter of the rows in flight to the server
+	 * @throws IOException		when the connection can not be established
+	 */
+	public RuleEngineConnection(String server, int port, AtomicInteger serverOutstanding) throws IOException
+	{
+		this.server = server;
+		this.port = port;
+		this.serverOutstanding = serverOutstanding;
+		socket = new Socket(server, port);
+		socket.setTcpNoDelay(true);
+		// the header of the output stream has to be sent before the input stream
+		// is created, otherwise both sides wait for each other
+		outputStream = new ObjectOutputStream(new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE));
+		outputStream.flush();
+		inputStream = new ObjectInputStream(new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE));
+	}
+
+	/**
+	 * sends a message to the server and returns the answer
+	 *
+	 * @param message		the message - one of the ClientHandler constants
+	 * @return				the answer of the server
+	 * @throws Exception	when the communication with the server fails
+	 */
+	public String getServerObject(String message) throws Exception
+	{
+		outputStream.writeObject(message);
+		outputStream.flush();
+		return (String)inputStream.readObject();
+	}
+
+	/**
+	 * writes a row to the connection. the row is not sent
+	 * before the flush() method is called.
+	 * 
+	 * the stream is reset before the row, so values that were already sent with an
+	 * earlier row are sent again instead of as a reference to the earlier object.
+	 *
+	 * @param fields		the fields of the row
+	 * @throws IOException	when the communication with the server fails
+	 */
+	public void send(RowFieldCollection fields) throws IOException
+	{
+		outputStream.reset();
+		outputStream.writeObject(fields);
+		outstanding.incrementAndGet();
+		serverOutstanding.incrementAndGet();
+	}
+
+	/**
+	 * sends all rows written since the last call to the server.
+	 *
+	 * @throws IOException	when the communication with the server fails
+	 */
+	public void flush() throws IOException
+	{
+		outputStream.flush();
+	}
+
+	/**
+	 * receives the result for the oldest row that was sent and
+	 * for which the result has not been received yet.
+	 *
+	 * @return				the result of the rule engine for the row
+	 * @throws Exception	when the communication with the server fails
+	 */
+	public RuleEngineServerObject receive() throws Exception
+	{
+		RuleEngineServerObject response = (RuleEngineServerObject)inputStream.readObject();
+		// the counters were already corrected if the socket was closed meanwhile
+		int count = outstanding.get();
+		while(count>0 && !outstanding.compareAndSet(count, count - 1))
+		{
+			count = outstanding.get();
+		}
+		if(count>0)
+		{
+			serverOutstanding.decrementAndGet();
+		}
+		return response;
+	}
+
+	/**
+	 * ends the session with the server and closes the connection
+	 *
+	 * @throws Exception	when the communication with the server fails
+	 */
+	public void close() throws Exception
+	{
+		try
+		{
+			getServerObject(MESSAGE_EXIT);
+		}
+		finally
+		{
+			outputStream.close();
+			socket.close();
+		}
+	}
+
+	/**
+	 * closes the connection without ending the session with the server,
+	 * used when the connection failed.
+	 */
+	public void closeSocket()
+	{
+		// only the rows not yet received are removed from the counter of the server
+		serverOutstanding.addAndGet(-outstanding.getAndSet(0));
+		try
+		{
+			socket.close();
+		}
+		catch(IOException ioe)
+		{
+			// the connection is not used any further
+		}
+	}
+
+	/**
+	 * @return	the time the connection was returned to the pool
+	 */
+	public long getLastUsed()
+	{
+		return lastUsed;
+	}
+
+	/**
+	 * @param lastUsed	the time the connection was returned to the pool
+	 */
+	public void setLastUsed(long lastUsed)
+	{
+		this.lastUsed = lastUsed;
+	}
+
+	public String toString()
+	{
+		return server + ":" + port;
+	}
+}
@@ -0,0 +1,511 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.datamelt.kettle.jareclient;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * JVM-wide pool of connections to one or more JaRE rule engine servers,
+ * shared by all copies of the rule engine client step and by all
+ * transformations running in the same JVM.
+ *
+ * The servers are given as a comma separated list of entries in the form
+ * server or server:port. Entries without a port use the default port.
+ *
+ * When a connection is leased, a server is selected either by the lowest
+ * number of rows in flight (least outstanding requests) or in turns (round
+ * robin). Idle connections to the selected server are reused. A server that
+ * can not be reached or whose connection fails is skipped for some time, so
+ * the remaining servers take over its load.
+ *
+ * Idle connections hold a thread on the server, so they are closed by a
+ * background timer after some time without use, and as soon as the last
+ * step copy using the pool has closed it. The pool is then removed, and
+ * connections returned to it afterwards are closed. Connections are always
+ * closed outside of the lock, as ending the session waits for the server.
+ *
+ * The pool uses explicit locks instead of synchronized blocks and does not
+ * connect to or communicate with a server while holding them, so requests on
+ * virtual threads do not pin their carrier thread while waiting for a server.
+ *
+ * @author uwe geercken - uwe.geercken@web.de
+ */
+public class RuleEngineConnectionPool
+{
+	// selection of the server for a new lease
+	public static final int ROUTING_LEAST_OUTSTANDING	= 0;
+	public static final int ROUTING_ROUND_ROBIN 		= 1;
+
+	// time a failed server is skipped
+	private static final long SERVER_RETRY_MILLIS = 30 * 1000;
+	// idle connections are closed after this time
+	private static final long IDLE_TIMEOUT_MILLIS = 60 * 1000;
+
+	// pools by their list of servers
+	private static final Map<String, RuleEngineConnectionPool> pools = new HashMap<String, RuleEngineConnectionPool>();
+	private static final ReentrantLock poolsLock = new ReentrantLock();
+	// closes the idle connections of all pools
+	private static Timer idleTimer;
+
+	private final String key;
+	private final ReentrantLock lock = new ReentrantLock();
+	private final List<Server> servers = new ArrayList<Server>();
+	// server that a leased connection belongs to
+	private final Map<RuleEngineConnection, Server> leases = new IdentityHashMap<RuleEngineConnection, Server>();
+	private int nextServer = 0;
+	// number of step copies using the pool
+	private int users = 0;
+	// closes the idle connections of the pool
+	private TimerTask idleTask;
+	// set when the last step copy has closed the pool
+	private boolean closed = false;
+
+	/**
+	 * returns the pool for the given list of servers. the pool has to be
+	 * closed using the close() method when it is no longer used.
+	 *
+	 * @param serverList		comma separated list of servers in the form server or server:port
+	 * @param defaultPort		the port used for servers without a port
+	 * @return					the pool for the servers
+	 * @throws Exception		when the list of servers is invalid
+	 */
+	public static RuleEngineConnectionPool getPool(String serverList, String defaultPort) throws Exception
+	{
+		poolsLock.lock();
+		try
+		{
+			String key = serverList + "/" + defaultPort;
+			RuleEngineConnectionPool pool = pools.get(key);
+			if(pool==null)
+			{
+				pool = new RuleEngineConnectionPool(key, serverList, defaultPort);
+				pools.put(key, pool);
+				scheduleIdleTimer(pool);
+			}
+			pool.lock.lock();
+			try
+			{
+				pool.users++;
+			}
+			finally
+			{
+				pool.lock.unlock();
+			}
+			return pool;
+		}
+		finally
+		{
+			poolsLock.unlock();
+		}
+	}
+	
+	/**
+	 * closes the idle connections of the pool regularly. must be called
+	 * holding the lock of the pools.
+	 */
+	private static void scheduleIdleTimer(final RuleEngineConnectionPool pool)
+	{
+		if(idleTimer==null)
+		{
+			idleTimer = new Timer("rule engine connection pool - idle connections", true);
+		}
+		pool.idleTask = new TimerTask()
+		{
+			public void run()
+			{
+				closeConnections(pool.removeIdleConnections(System.currentTimeMillis() - IDLE_TIMEOUT_MILLIS));
+			}
+		};
+		idleTimer.schedule(pool.idleTask, IDLE_TIMEOUT_MILLIS / 2, IDLE_TIMEOUT_MILLIS / 2);
+	}
+
+	/**
+	 * removes the pool when the last step copy has closed it and stops closing its
+	 * idle connections. the timer ends when no pool is left. must be called holding
+	 * the lock of the pools.
+	 */
+	private static void removePool(RuleEngineConnectionPool pool)
+	{
+		if(pools.get(pool.key)==pool)
+		{
+			pools.remove(pool.key);
+		}
+		pool.idleTask.cancel();
+		if(pools.isEmpty())
+		{
+			idleTimer.cancel();
+			idleTimer = null;
+		}
+		else
+		{
+			idleTimer.purge();
+		}
+	}
+
+	private RuleEngineConnectionPool(String key, String serverList, String defaultPort) throws Exception
+	{
+		this.key = key;
+		String[] entries = serverList.split(",");
+		for(int i=0;i<entries.length;i++)
+		{
+			String entry = entries[i].trim();
+			if(entry.length()==0)
+			{
+				continue;
+			}
+			int index = entry.lastIndexOf(':');
+			if(index>0)
+			{
+				servers.add(new Server(entry.substring(0, index).trim(), Integer.parseInt(entry.substring(index + 1).trim())));
+			}
+			else if(defaultPort!=null && defaultPort.trim().length()>0)
+			{
+				servers.add(new Server(entry, Integer.parseInt(defaultPort.trim())));
+			}
+			else
+			{
+				throw new Exception("no port defined for rule engine server: " + entry);
+			}
+		}
+		if(servers.isEmpty())
+		{
+			throw new Exception("no rule engine server defined");
+		}
+	}
+
+	/**
+	 * @return	the number of servers of the pool
+	 */
+	public int getNumberOfServers()
+	{
+		return servers.size();
+	}
+
+	/**
+	 * leases a connection to one of the servers. the connection has to be returned
+	 * using the release() method or - if it failed - the invalidate() method.
+	 *
+	 * @param routing		the selection of the server: ROUTING_LEAST_OUTSTANDING or ROUTING_ROUND_ROBIN
+	 * @return				a connection for exclusive use by the caller
+	 * @throws IOException	when none of the servers can be reached
+	 */
+	public RuleEngineConnection lease(int routing) throws IOException
+	{
+		IOException lastException = null;
+		for(int attempt=0;attempt<servers.size();attempt++)
+		{
+			Server server;
+			RuleEngineConnection connection;
+			lock.lock();
+			try
+			{
+				server = selectServer(routing);
+				server.leased++;
+				connection = server.idle.poll();
+				if(connection!=null)
+				{
+					leases.put(connection, server);
+					return connection;
+				}
+			}
+			finally
+			{
+				lock.unlock();
+			}
+			// connect outside of the lock, so a server that does not respond
+			// does not block the other step copies
+			try
+			{
+				connection = new RuleEngineConnection(server.name, server.port, server.outstanding);
+				lock.lock();
+				try
+				{
+					leases.put(connection, server);
+				}
+				finally
+				{
+					lock.unlock();
+				}
+				return connection;
+			}
+			catch(IOException ioe)
+			{
+				lastException = new IOException("unable to connect to rule engine server: " + server, ioe);
+				lock.lock();
+				try
+				{
+					server.leased--;
+					server.failed = System.currentTimeMillis();
+				}
+				finally
+				{
+					lock.unlock();
+				}
+			}
+		}
+		throw lastException;
+	}
+
+	/**
+	 * returns a connection that is no longer used. all results of rows sent
+	 * using the connection must have been received.
+	 *
+	 * @param connection	the connection
+	 */
+	public void release(RuleEngineConnection connection)
+	{
+		boolean closeConnection = false;
+		lock.lock();
+		try
+		{
+			Server server = leases.remove(connection);
+			if(server!=null)
+			{
+				server.leased--;
+				if(closed)
+				{
+					// the idle connections of a closed pool are not closed by the timer
+					closeConnection = true;
+				}
+				else
+				{
+					connection.setLastUsed(System.currentTimeMillis());
+					server.idle.push(connection);
+				}
+			}
+		}
+		finally
+		{
+			lock.unlock();
+		}
+		if(closeConnection)
+		{
+			closeConnections(Collections.singletonList(connection));
+		}
+	}
+
+	/**
+	 * returns a connection that failed. the connection is closed and the
+	 * server is skipped for new leases for some time.
+	 *
+	 * @param connection	the connection
+	 */
+	public void invalidate(RuleEngineConnection connection)
+	{
+		List<RuleEngineConnection> broken = new ArrayList<RuleEngineConnection>();
+		lock.lock();
+		try
+		{
+			Server server = leases.remove(connection);
+			if(server!=null)
+			{
+				server.leased--;
+				server.failed = System.currentTimeMillis();
+				// the other connections to the server are probably broken as well
+				broken.addAll(server.idle);
+				server.idle.clear();
+			}
+		}
+		finally
+		{
+			lock.unlock();
+		}
+		connection.closeSocket();
+		for(int i=0;i<broken.size();i++)
+		{
+			broken.get(i).closeSocket();
+		}
+	}
+	
+	/**
+	 * ends the use of the pool by a step copy. when the last step copy has closed
+	 * the pool, it is removed and its idle connections are closed, so they do not
+	 * hold threads on the servers. connections that are still leased are closed
+	 * when they are returned.
+	 */
+	public void close()
+	{
+		List<RuleEngineConnection> idle = null;
+		poolsLock.lock();
+		try
+		{
+			lock.lock();
+			try
+			{
+				if(users>0)
+				{
+					users--;
+				}
+				if(users==0 && !closed)
+				{
+					closed = true;
+					idle = removeIdleConnections(Long.MAX_VALUE);
+				}
+			}
+			finally
+			{
+				lock.unlock();
+			}
+			if(idle!=null)
+			{
+				removePool(this);
+			}
+		}
+		finally
+		{
+			poolsLock.unlock();
+		}
+		if(idle!=null)
+		{
+			closeConnections(idle);
+		}
+	}
+
+	/**
+	 * selects the server for a new lease. servers that failed recently are only
+	 * used when all servers failed. must be called holding the lock.
+	 */
+	private Server selectServer(int routing)
+	{
+		long now = System.currentTimeMillis();
+		Server selected = null;
+		for(int i=0;i<servers.size();i++)
+		{
+			int index = (nextServer + i) % servers.size();
+			Server server = servers.get(index);
+			if(now - server.failed < SERVER_RETRY_MILLIS)
+			{
+				continue;
+			}
+			if(routing==ROUTING_ROUND_ROBIN)
+			{
+				selected = server;
+				break;
+			}
+			else if(selected==null || server.outstanding.get() < selected.outstanding.get() || (server.outstanding.get()==selected.outstanding.get() && server.leased < selected.leased))
+			{
+				selected = server;
+			}
+		}
+		if(selected==null)
+		{
+			// all servers failed recently: try the one that failed first
+			for(int i=0;i<servers.size();i++)
+			{
+				Server server = servers.get(i);
+				if(selected==null || server.failed < selected.failed)
+				{
+					selected = server;
+				}
+			}
+		}
+		nextServer = (servers.indexOf(selected) + 1) % servers.size();
+		return selected;
+	}
+
+	/**
+	 * removes the idle connections that were last used before the given time
+	 *
+	 * @param lastUsedBefore	the time before which the connections were last used
+	 * @return					the connections, which have to be closed by the caller
+	 */
+	private List<RuleEngineConnection> removeIdleConnections(long lastUsedBefore)
+	{
+		List<RuleEngineConnection> expired = new ArrayList<RuleEngineConnection>();
+		lock.lock();
+		try
+		{
+			for(int i=0;i<servers.size();i++)
+			{
+				Iterator<RuleEngineConnection> iterator = servers.get(i).idle.iterator();
+				while(iterator.hasNext())
+				{
+					RuleEngineConnection connection = iterator.next();
+					if(connection.getLastUsed() < lastUsedBefore)
+					{
+						iterator.remove();
+						expired.add(connection);
+					}
+				}
+			}
+		}
+		finally
+		{
+			lock.unlock();
+		}
+		return expired;
+	}
+
+	/**
+	 * ends the sessions of the connections with the servers. must be called without
+	 * holding the lock, as a server may be slow to answer.
+	 */
+	private static void closeConnections(List<RuleEngineConnection> connections)
+	{
+		for(int i=0;i<connections.size();i++)
+		{
+			RuleEngineConnection connection = connections.get(i);
+			try
+			{
+				connection.close();
+			}
+			catch(Exception ex)
+			{
+				connection.closeSocket();
+			}
+		}
+	}
+
+	/**
+	 * one of the rule engine servers of the pool
+	 */
+	private static class Server
+	{
+		private final String name;
+		private final int port;
+		private final ArrayDeque<RuleEngineConnection> idle = new ArrayDeque<RuleEngineConnection>();
+		// rows sent to the server for which the result has not been received yet
+		private final AtomicInteger outstanding = new AtomicInteger();
+		private int leased;
+		private long failed;
+
+		private Server(String name, int port)
+		{
+			this.name = name;
+			this.port = port;
+		}
+
+		public String toString()
+		{
+			return name + ":" + port;
+		}
+	}
+}
@@ -0,0 +1,444 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.datamelt.kettle.util;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.nio.charset.Charset;
+import java.sql.Timestamp;
+import java.util.Date;
+
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
+
+import com.datamelt.util.RowField;
+import com.datamelt.util.RowFieldCollection;
+
+/**
+ * Converts the value of a field that was updated by the rule engine to the
+ * type of the corresponding field of the Pentaho row.
+ *
+ * The converters are determined once per step from the metadata of the input
+ * row, so that writing the updated values back to the output row requires
+ * neither a lookup of the field by its name nor a dispatch on the field type:
+ * there is one converter class per type and the values of the expected class
+ * are passed through without conversion.
+ *
+ * @author uwe geercken - uwe.geercken@web.de
+ */
+public abstract class FieldConverter
+{
+	private final int type;
+
+	protected FieldConverter(int type)
+	{
+		this.type = type;
+	}
+
+	/**
+	 * @return	the Pentaho type of the field
+	 */
+	public int getType()
+	{
+		return type;
+	}
+
+	/**
+	 * converts the value of the rule engine to the type of the field
+	 *
+	 * @param value			the value as set by the rule engine
+	 * @param currentValue	the value of the field in the output row
+	 * @return				the value for the output row
+	 * @throws Exception	if the type of the field is not supported
+	 */
+	public abstract Object convert(Object value, Object currentValue) throws Exception;
+
+	/**
+	 * returns the converters for all fields of the row, in the order of the fields
+	 *
+	 * @param rowMeta	the metadata of the row
+	 * @return			the converters of the fields
+	 */
+	public static FieldConverter[] getConverters(RowMetaInterface rowMeta)
+	{
+		FieldConverter[] converters = new FieldConverter[rowMeta.size()];
+		for(int i=0;i<converters.length;i++)
+		{
+			converters[i] = getConverter(rowMeta.getValueMeta(i).getType());
+		}
+		return converters;
+	}
+
+	/**
+	 * returns the converter for the given Pentaho type
+	 *
+	 * @param type	the Pentaho type of the field
+	 * @return		the converter for the type
+	 */
+	public static FieldConverter getConverter(int type)
+	{
+		switch(type)
+		{
+			case ValueMetaInterface.TYPE_BOOLEAN:
+			case ValueMetaInterface.TYPE_STRING:
+				return new UnchangedConverter(type);
+			case ValueMetaInterface.TYPE_INTEGER:
+				return new IntegerConverter();
+			case ValueMetaInterface.TYPE_NUMBER:
+				return new NumberConverter();
+			case ValueMetaInterface.TYPE_BIGNUMBER:
+				return new BigNumberConverter();
+			case ValueMetaInterface.TYPE_DATE:
+				return new DateConverter();
+			case ValueMetaInterface.TYPE_TIMESTAMP:
+				return new TimestampConverter();
+			case ValueMetaInterface.TYPE_BINARY:
+				return new BinaryConverter();
+			case ValueMetaInterface.TYPE_INET:
+				return new InetConverter();
+			default:
+				return new UnsupportedConverter(type);
+		}
+	}
+
+	/**
+	 * writes the values of the fields that were updated by the rule engine to the
+	 * output row. the fields of the collection are in the same order as the fields
+	 * of the row.
+	 *
+	 * if the collection recorded the indexes of the updated fields, only these
+	 * fields are written. otherwise all fields are checked for updates.
+	 *
+	 * @param fields		the fields after running the rule engine
+	 * @param converters	the converters for the fields of the row
+	 * @param outputRow		the output row
+	 * @return				the number of updated fields
+	 * @throws Exception	if the type of an updated field is not supported
+	 */
+	public static int writeUpdatedFields(RowFieldCollection fields, FieldConverter[] converters, Object[] outputRow) throws Exception
+	{
+		// process only if the collection of fields was changed
+		if(!fields.isCollectionUpdated())
+		{
+			return 0;
+		}
+		if(fields instanceof ReusableRowFieldCollection)
+		{
+			ReusableRowFieldCollection reusableFields = (ReusableRowFieldCollection)fields;
+			int numberOfUpdatedIndexes = reusableFields.getNumberOfUpdatedIndexes();
+			// fields updated without their index being recorded are only found by checking all fields
+			if(numberOfUpdatedIndexes>0 && reusableFields.isUpdatedIndexesComplete())
+			{
+				for(int f=0;f<numberOfUpdatedIndexes;f++)
+				{
+					int i = reusableFields.getUpdatedIndex(f);
+					outputRow[i] = converters[i].convert(reusableFields.getField(i).getValue(), outputRow[i]);
+				}
+				return numberOfUpdatedIndexes;
+			}
+		}
+		int numberOfUpdatedFields = 0;
+		for(int i=0;i<converters.length;i++)
+		{
+			RowField rf = fields.getField(i);
+			if(rf.isUpdated())
+			{
+				outputRow[i] = converters[i].convert(rf.getValue(), outputRow[i]);
+				numberOfUpdatedFields++;
+			}
+		}
+		return numberOfUpdatedFields;
+	}
+
+	/**
+	 * boolean and string values are used as they are
+	 */
+	private static class UnchangedConverter extends FieldConverter
+	{
+		private UnchangedConverter(int type)
+		{
+			super(type);
+		}
+
+		public Object convert(Object value, Object currentValue)
+		{
+			return value;
+		}
+	}
+
+	/**
+	 * integer fields require a Long value. values of other number types are
+	 * converted if they are integral and in the range of a long, so they are
+	 * never truncated
+	 */
+	private static class IntegerConverter extends FieldConverter
+	{
+		private IntegerConverter()
+		{
+			super(ValueMetaInterface.TYPE_INTEGER);
+		}
+
+		public Object convert(Object value, Object currentValue) throws Exception
+		{
+			if(value==null || value instanceof Long)
+			{
+				return value;
+			}
+			else if(value instanceof Integer || value instanceof Short || value instanceof Byte)
+			{
+				return ((Number)value).longValue();
+			}
+			else if(value instanceof BigDecimal || value instanceof BigInteger)
+			{
+				try
+				{
+					return value instanceof BigDecimal ? ((BigDecimal)value).longValueExact() : ((BigInteger)value).longValueExact();
+				}
+				catch(ArithmeticException ae)
+				{
+					throw new Exception("value is not an integer: " + value);
+				}
+			}
+			else if(value instanceof Double || value instanceof Float)
+			{
+				double doubleValue = ((Number)value).doubleValue();
+				if(doubleValue>=-9.223372036854775808E18 && doubleValue<9.223372036854775808E18 && doubleValue==Math.rint(doubleValue))
+				{
+					return (long)doubleValue;
+				}
+			}
+			throw new Exception("value is not an integer: " + value);
+		}
+	}
+
+	/**
+	 * number fields require a Double value
+	 */
+	private static class NumberConverter extends FieldConverter
+	{
+		private NumberConverter()
+		{
+			super(ValueMetaInterface.TYPE_NUMBER);
+		}
+
+		public Object convert(Object value, Object currentValue)
+		{
+			if(value==null || value instanceof Double)
+			{
+				return value;
+			}
+			else if(value instanceof Number)
+			{
+				return ((Number)value).doubleValue();
+			}
+			return currentValue;
+		}
+	}
+
+	/**
+	 * bignumber fields require a BigDecimal value. a double is converted using
+	 * its string representation, so that 0.1 does not become 0.1000000000000000055...
+	 */
+	private static class BigNumberConverter extends FieldConverter
+	{
+		private BigNumberConverter()
+		{
+			super(ValueMetaInterface.TYPE_BIGNUMBER);
+		}
+
+		public Object convert(Object value, Object currentValue)
+		{
+			if(value==null || value instanceof BigDecimal)
+			{
+				return value;
+			}
+			else if(value instanceof Long || value instanceof Integer)
+			{
+				return BigDecimal.valueOf(((Number)value).longValue());
+			}
+			else if(value instanceof Number)
+			{
+				return BigDecimal.valueOf(((Number)value).doubleValue());
+			}
+			return currentValue;
+		}
+	}
+
+	/**
+	 * date fields require a Date value
+	 */
+	private static class DateConverter extends FieldConverter
+	{
+		private DateConverter()
+		{
+			super(ValueMetaInterface.TYPE_DATE);
+		}
+
+		public Object convert(Object value, Object currentValue)
+		{
+			return (Date)value;
+		}
+	}
+
+	/**
+	 * timestamp fields require a Timestamp value
+	 */
+	private static class TimestampConverter extends FieldConverter
+	{
+		private TimestampConverter()
+		{
+			super(ValueMetaInterface.TYPE_TIMESTAMP);
+		}
+
+		public Object convert(Object value, Object currentValue)
+		{
+			if(value==null || value instanceof Timestamp)
+			{
+				return value;
+			}
+			else if(value instanceof Date)
+			{
+				return new Timestamp(((Date)value).getTime());
+			}
+			return currentValue;
+		}
+	}
+
+	/**
+	 * binary fields require a byte array. strings are converted using utf-8
+	 */
+	private static class BinaryConverter extends FieldConverter
+	{
+		private static final Charset UTF8 = Charset.forName("UTF-8");
+
+		private BinaryConverter()
+		{
+			super(ValueMetaInterface.TYPE_BINARY);
+		}
+
+		public Object convert(Object value, Object currentValue)
+		{
+			if(value==null || value instanceof byte[])
+			{
+				return value;
+			}
+			else if(value instanceof String)
+			{
+				return ((String)value).getBytes(UTF8);
+			}
+			return currentValue;
+		}
+	}
+
+	/**
+	 * internet address fields require an InetAddress. only strings with a literal
+	 * ipv4 or ipv6 address are converted; a host name is not resolved, as that
+	 * would block the row on a dns lookup
+	 */
+	private static class InetConverter extends FieldConverter
+	{
+		private InetConverter()
+		{
+			super(ValueMetaInterface.TYPE_INET);
+		}
+
+		public Object convert(Object value, Object currentValue) throws Exception
+		{
+			if(value==null || value instanceof InetAddress)
+			{
+				return value;
+			}
+			else if(value instanceof String && isAddressLiteral((String)value))
+			{
+				// for a literal address no lookup is done
+				return InetAddress.getByName((String)value);
+			}
+			throw new Exception("value is not an ip address: " + value);
+		}
+
+		/**
+		 * @param value	the value to check
+		 * @return		true if the value has the form of an ipv4 or ipv6 address
+		 */
+		private static boolean isAddressLiteral(String value)
+		{
+			if(value.indexOf(':')>=0)
+			{
+				int start = 0;
+				int end = value.length();
+				if(value.startsWith("[") && value.endsWith("]"))
+				{
+					start++;
+					end--;
+				}
+				for(int i=start;i<end;i++)
+				{
+					char c = value.charAt(i);
+					if(!(c==':' || c=='.' || Character.digit(c, 16)>=0))
+					{
+						return false;
+					}
+				}
+				return end>start;
+			}
+			String[] octets = value.split("\\.", -1);
+			if(octets.length!=4)
+			{
+				return false;
+			}
+			for(int i=0;i<octets.length;i++)
+			{
+				String octet = octets[i];
+				if(octet.length()==0 || octet.length()>3)
+				{
+					return false;
+				}
+				for(int j=0;j<octet.length();j++)
+				{
+					if(octet.charAt(j)<'0' || octet.charAt(j)>'9')
+					{
+						return false;
+					}
+				}
+				if(Integer.parseInt(octet)>255)
+				{
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * the type is only an error if the rule engine updates the field
+	 */
+	private static class UnsupportedConverter extends FieldConverter
+	{
+		private UnsupportedConverter(int type)
+		{
+			super(type);
+		}
+
+		public Object convert(Object value, Object currentValue) throws Exception
+		{
+			throw new Exception("invalid output field type: " + getType());
+		}
+	}
+}
@@ -0,0 +1,226 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.datamelt.kettle.util;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.datamelt.util.HeaderRow;
+import com.datamelt.util.RowField;
+import com.datamelt.util.RowFieldCollection;
+
+/**
+ * Collection of the fields of a row that is created once per step and then
+ * set to the values of each new row, instead of creating a collection and
+ * its fields for every row.
+ *
+ * The collection must not be used for more than one row at a time. It can
+ * not be used for rows sent to a rule engine server: an object stream sends
+ * an object that was already written only as a reference to the earlier one.
+ *
+ * Fields read by name, as the rules of the rule engine do, are looked up in a
+ * table of the indexes of the fields if it is set.
+ *
+ * The indexes of the fields updated by name or by index, as the actions of the
+ * rule engine do, are recorded, so the updated values can be written back to the
+ * row without checking all fields of the row. If the collection is marked as
+ * updated in any other way, the recorded indexes are not complete and all fields
+ * of the row have to be checked.
+ *
+ * @author uwe geercken - uwe.geercken@web.de
+ */
+public class ReusableRowFieldCollection extends RowFieldCollection
+{
+	private final int numberOfFields;
+
+	// indexes of the fields by name
+	private Map<String, Integer> fieldIndexes;
+
+	// indexes of the fields updated by name or by index since the last reset
+	private final int[] updatedIndexes;
+	private final boolean[] recordedIndexes;
+	private int numberOfUpdatedIndexes;
+	private boolean updatedIndexesComplete = true;
+	// number of nested calls of the methods that record the updated field
+	private int recordingCalls;
+
+	/**
+	 * @param header	the names of the fields
+	 * @param row		the first row
+	 */
+	public ReusableRowFieldCollection(HeaderRow header, Object[] row)
+	{
+		super(header, row);
+		this.numberOfFields = header.getNumberOfFields();
+		this.updatedIndexes = new int[numberOfFields];
+		this.recordedIndexes = new boolean[numberOfFields];
+	}
+
+	/**
+	 * sets the fields to the values of the given row and
+	 * resets the flags for updated fields
+	 *
+	 * @param row	the row
+	 */
+	public void reset(Object[] row)
+	{
+		for(int i=0;i<numberOfFields;i++)
+		{
+			RowField field = getField(i);
+			field.setValue(row[i]);
+			field.setUpdated(false);
+		}
+		setCollectionUpdated(false);
+		for(int i=0;i<numberOfUpdatedIndexes;i++)
+		{
+			recordedIndexes[updatedIndexes[i]] = false;
+		}
+		numberOfUpdatedIndexes = 0;
+		updatedIndexesComplete = true;
+	}
+
+	/**
+	 * creates the table of the indexes of the fields by name. it is created once
+	 * and shared by all collections for rows with the same fields.
+	 *
+	 * @param fieldNames	the names of the fields
+	 * @return				the indexes of the fields by name
+	 */
+	public static Map<String, Integer> getFieldIndexes(String[] fieldNames)
+	{
+		HashMap<String, Integer> fieldIndexes = new HashMap<String, Integer>();
+		for(int i=0;i<fieldNames.length;i++)
+		{
+			fieldIndexes.put(fieldNames[i], Integer.valueOf(i));
+		}
+		return fieldIndexes;
+	}
+
+	/**
+	 * sets the indexes of the fields by name, so fields read by name are accessed
+	 * by their index without searching the names of the fields
+	 *
+	 * @param fieldIndexes	the indexes of the fields by name
+	 */
+	public void setFieldIndexes(Map<String, Integer> fieldIndexes)
+	{
+		this.fieldIndexes = fieldIndexes;
+	}
+
+	@Override
+	public Object getFieldValue(String fieldName) throws Exception
+	{
+		Integer index = fieldIndexes!=null ? fieldIndexes.get(fieldName) : null;
+		if(index==null)
+		{
+			return super.getFieldValue(fieldName);
+		}
+		return getField(index.intValue()).getValue();
+	}
+
+	@Override
+	public void setFieldValue(String fieldName, Object value) throws Exception
+	{
+		Integer index = fieldIndexes!=null ? fieldIndexes.get(fieldName) : null;
+		if(index==null)
+		{
+			// the field is only found by checking all fields
+			updatedIndexesComplete = false;
+			super.setFieldValue(fieldName, value);
+			return;
+		}
+		recordingCalls++;
+		try
+		{
+			super.setFieldValue(fieldName, value);
+		}
+		finally
+		{
+			recordingCalls--;
+		}
+		recordUpdatedIndex(index.intValue());
+	}
+
+	@Override
+	public void setFieldValue(int fieldIndex, Object value) throws Exception
+	{
+		recordingCalls++;
+		try
+		{
+			super.setFieldValue(fieldIndex, value);
+		}
+		finally
+		{
+			recordingCalls--;
+		}
+		recordUpdatedIndex(fieldIndex);
+	}
+
+	/**
+	 * marks the collection as updated or not. if it is marked as updated by
+	 * a method other than the setters recording the index of the field, the
+	 * updated field is not known and all fields have to be checked.
+	 *
+	 * @param collectionUpdated	if a field of the collection was updated
+	 */
+	@Override
+	public void setCollectionUpdated(boolean collectionUpdated)
+	{
+		super.setCollectionUpdated(collectionUpdated);
+		if(collectionUpdated && recordingCalls==0)
+		{
+			updatedIndexesComplete = false;
+		}
+	}
+
+	private void recordUpdatedIndex(int index)
+	{
+		// the setters of the rule engine may call each other, so an index is only recorded once
+		if(!recordedIndexes[index] && getField(index).isUpdated())
+		{
+			recordedIndexes[index] = true;
+			updatedIndexes[numberOfUpdatedIndexes++] = index;
+		}
+	}
+
+	/**
+	 * @return	true if the indexes of all fields updated since the last reset were recorded
+	 */
+	public boolean isUpdatedIndexesComplete()
+	{
+		return updatedIndexesComplete;
+	}
+
+	/**
+	 * @return	the number of fields updated by name or by index since the last reset
+	 */
+	public int getNumberOfUpdatedIndexes()
+	{
+		return numberOfUpdatedIndexes;
+	}
+
+	/**
+	 * @param number	the number of the updated field, starting at 0
+	 * @return			the index of the updated field in the row
+	 */
+	public int getUpdatedIndex(int number)
+	{
+		return updatedIndexes[number];
+	}
+}
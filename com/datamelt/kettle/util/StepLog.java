@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.datamelt.kettle.util;
+
+import org.pentaho.di.core.logging.LogChannelInterface;
+
+/**
+ * Logging for the messages that the rule engine steps write for each row.
+ *
+ * The log levels are determined once, when the step starts processing rows.
+ * A message is only built if its level is enabled: a message that consists of
+ * a text and a value is passed as two arguments and only concatenated after
+ * the level was checked, so with the default level (basic) logging a row does
+ * not allocate any objects.
+ *
+ * Messages that are built in loops should be guarded using the isDetailed(),
+ * isDebug() and isRowLevel() methods.
+ *
+ * @author uwe geercken - uwe.geercken@web.de
+ */
+public class StepLog
+{
+	private final LogChannelInterface log;
+	private final boolean detailed;
+	private final boolean debug;
+	private final boolean rowLevel;
+
+	/**
+	 * @param log	the log channel of the step
+	 */
+	public StepLog(LogChannelInterface log)
+	{
+		this.log = log;
+		this.detailed = log.isDetailed();
+		this.debug = log.isDebug();
+		this.rowLevel = log.isRowLevel();
+	}
+
+	/**
+	 * @return	true if messages of level detailed are logged
+	 */
+	public boolean isDetailed()
+	{
+		return detailed;
+	}
+
+	/**
+	 * @return	true if messages of level debug are logged
+	 */
+	public boolean isDebug()
+	{
+		return debug;
+	}
+
+	/**
+	 * @return	true if messages of level row level are logged
+	 */
+	public boolean isRowLevel()
+	{
+		return rowLevel;
+	}
+
+	public void logDetailed(String message)
+	{
+		if(detailed)
+		{
+			log.logDetailed(message);
+		}
+	}
+
+	public void logDetailed(String message, long value)
+	{
+		if(detailed)
+		{
+			log.logDetailed(message + value);
+		}
+	}
+
+	public void logDebug(String message)
+	{
+		if(debug)
+		{
+			log.logDebug(message);
+		}
+	}
+
+	public void logDebug(String message, long value)
+	{
+		if(debug)
+		{
+			log.logDebug(message + value);
+		}
+	}
+
+	public void logRowlevel(String message)
+	{
+		if(rowLevel)
+		{
+			log.logRowlevel(message);
+		}
+	}
+
+	public void logRowlevel(String message, long value)
+	{
+		if(rowLevel)
+		{
+			log.logRowlevel(message + value);
+		}
+	}
+}
@@ -0,0 +1,178 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.datamelt.kettle.jare;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.datamelt.kettle.util.ReusableRowFieldCollection;
+import com.datamelt.rules.core.RuleGroup;
+import com.datamelt.rules.core.RuleSubGroup;
+import com.datamelt.rules.engine.BusinessRulesEngine;
+import com.datamelt.util.HeaderRow;
+import com.datamelt.util.RowFieldCollection;
+
+/**
+ * Tests the keys of the cached results, the removal of the least recently
+ * used results and that the cached results are the results of the rule engine.
+ * 
+ * @author uwe geercken - uwe.geercken@web.de
+ */
+public class ResultCacheTest
+{
+	private static final String[] FIELD_NAMES = new String[] {"field_0", "field_1", "field_2"};
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	private static ResultCache.Result getResult()
+	{
+		return new ResultCache.Result(new long[] {1, 0, 0, 1, 0, 0}, new Object[0][], null);
+	}
+	
+	/**
+	 * runs the rule engine for the row and returns its results in the form they are cached
+	 */
+	private static ResultCache.Result run(BusinessRulesEngine engine, Object[] row) throws Exception
+	{
+		engine.run("row", new RowFieldCollection(new HeaderRow(FIELD_NAMES), row.clone()));
+		long[] counters = new long[] {engine.getNumberOfGroups(), engine.getNumberOfGroupsFailed(), engine.getNumberOfGroupsSkipped(), engine.getNumberOfRules(), engine.getNumberOfRulesFailed(), engine.getNumberOfActions()};
+		List<Object[]> ruleResults = new ArrayList<Object[]>();
+		for(int i=0;i<engine.getGroups().size();i++)
+		{
+			RuleGroup group = engine.getGroups().get(i);
+			for(int f=0;f<group.getSubGroups().size();f++)
+			{
+				RuleSubGroup subgroup = group.getSubGroups().get(f);
+				for(int g=0;g<subgroup.getRulesCollection().size();g++)
+				{
+					ruleResults.add(new Object[] {group.getId(), subgroup.getId(), subgroup.getRulesCollection().get(g).getId(), Long.valueOf(subgroup.getRulesCollection().get(g).getFailed())});
+				}
+			}
+		}
+		engine.getRuleExecutionCollection().clear();
+		return new ResultCache.Result(counters, ruleResults.toArray(new Object[ruleResults.size()][]), null);
+	}
+	
+	@Test
+	public void testRowsWithSameKeyFieldsHit()
+	{
+		ResultCache cache = new ResultCache(10, new int[] {0, 2});
+		ResultCache.Result result = getResult();
+		assertNull(cache.get(new Object[] {"a", "b", Long.valueOf(1)}));
+		cache.put(new Object[] {"a", "b", Long.valueOf(1)}, result);
+		// the field not referenced by the rules is not part of the key
+		assertSame(result, cache.get(new Object[] {"a", "x", Long.valueOf(1)}));
+		assertNull(cache.get(new Object[] {"a", "b", Long.valueOf(2)}));
+		assertNull(cache.get(new Object[] {null, "b", Long.valueOf(1)}));
+		assertEquals(1, cache.getHits());
+		assertEquals(3, cache.getMisses());
+	}
+	
+	@Test
+	public void testNullValuesAreKeys()
+	{
+		ResultCache cache = new ResultCache(10, new int[] {0, 1});
+		ResultCache.Result result = getResult();
+		cache.put(new Object[] {null, "b"}, result);
+		assertSame(result, cache.get(new Object[] {null, "b"}));
+		assertNull(cache.get(new Object[] {"b", null}));
+	}
+	
+	@Test
+	public void testKeyFieldsAreCopied()
+	{
+		int[] keyFields = new int[] {0};
+		ResultCache cache = new ResultCache(10, keyFields);
+		ResultCache.Result result = getResult();
+		cache.put(new Object[] {"a", "b"}, result);
+		keyFields[0] = 1;
+		assertSame(result, cache.get(new Object[] {"a", "c"}));
+	}
+	
+	@Test
+	public void testLeastRecentlyUsedResultIsRemoved()
+	{
+		ResultCache cache = new ResultCache(2, new int[] {0});
+		ResultCache.Result resultA = getResult();
+		ResultCache.Result resultB = getResult();
+		cache.put(new Object[] {"a"}, resultA);
+		cache.put(new Object[] {"b"}, resultB);
+		// a is used more recently than b
+		assertSame(resultA, cache.get(new Object[] {"a"}));
+		cache.put(new Object[] {"c"}, getResult());
+		assertSame(resultA, cache.get(new Object[] {"a"}));
+		assertNull(cache.get(new Object[] {"b"}));
+	}
+	
+	@Test
+	public void testCachedResultsEqualResultsOfRuleEngine() throws Exception
+	{
+		File project = folder.newFolder("project");
+		RuleFiles.writeFile(new File(project, "group_a.xml"), RuleFiles.getGroup("group_a", "field_0", "a"));
+		RuleFiles.writeFile(new File(project, "group_c.xml"), RuleFiles.getGroup("group_c", "field_2", "c"));
+		BusinessRulesEngine engine = new BusinessRulesEngine(project.listFiles());
+		
+		// the key consists of the fields referenced by the rules
+		int[] keyFields = new RuleFieldReferences(project.getPath()).getReferencedFieldIndexes(engine, ReusableRowFieldCollection.getFieldIndexes(FIELD_NAMES));
+		assertArrayEquals(new int[] {0, 2}, keyFields);
+		
+		ResultCache cache = new ResultCache(10, keyFields);
+		Object[][] rows = new Object[][] {
+			{"a", "1", "c"},
+			{"x", "2", "c"},
+			{"a", "3", "c"},
+			{"a", "4", "x"},
+			{"x", "5", "c"},
+			{"a", "6", "x"},
+			{"x", "7", "x"},
+			{"a", "8", "c"}};
+		for(int i=0;i<rows.length;i++)
+		{
+			ResultCache.Result result = run(engine, rows[i]);
+			ResultCache.Result cachedResult = cache.get(rows[i]);
+			if(cachedResult==null)
+			{
+				cache.put(rows[i], result);
+			}
+			else
+			{
+				assertArrayEquals("row: " + i, result.getCounters(), cachedResult.getCounters());
+				assertEquals("row: " + i, result.getRuleResults().length, cachedResult.getRuleResults().length);
+				for(int f=0;f<result.getRuleResults().length;f++)
+				{
+					assertArrayEquals("row: " + i, result.getRuleResults()[f], cachedResult.getRuleResults()[f]);
+				}
+			}
+		}
+		// four different keys, the other rows are answered from the cache
+		assertEquals(4, cache.getHits());
+		assertEquals(4, cache.getMisses());
+	}
+}
@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.datamelt.kettle.jare;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests the buckets of the histogram of the rule engine times and the
+ * percentiles determined from it.
+ * 
+ * @author uwe geercken - uwe.geercken@web.de
+ */
+public class RuleEngineMetricsTest
+{
+	// the highest bucket: its upper bound is beyond the range of a long
+	private static final int LAST_BUCKET = RuleEngineMetrics.getBucket(Long.MAX_VALUE);
+	
+	@Test
+	public void testSmallTimesHaveOwnBucket()
+	{
+		for(int i=0;i<8;i++)
+		{
+			assertEquals(i, RuleEngineMetrics.getBucket(i));
+			assertEquals(i, RuleEngineMetrics.getLowerBound(i));
+		}
+		assertEquals(0, RuleEngineMetrics.getBucket(-1));
+	}
+	
+	@Test
+	public void testTimeIsWithinBoundsOfItsBucket()
+	{
+		long[] times = new long[] {8, 9, 15, 16, 17, 100, 1000, 1023, 1024, 1025, 123456789L, 1L << 40, (1L << 40) - 1, Long.MAX_VALUE};
+		for(int i=0;i<times.length;i++)
+		{
+			int bucket = RuleEngineMetrics.getBucket(times[i]);
+			assertTrue("time: " + times[i], RuleEngineMetrics.getLowerBound(bucket)<=times[i]);
+			if(bucket<LAST_BUCKET)
+			{
+				assertTrue("time: " + times[i], times[i]<RuleEngineMetrics.getLowerBound(bucket + 1));
+			}
+		}
+	}
+	
+	@Test
+	public void testBucketsAreContiguousAndNarrow()
+	{
+		for(int bucket=0;bucket<LAST_BUCKET;bucket++)
+		{
+			long lowerBound = RuleEngineMetrics.getLowerBound(bucket);
+			long nextLowerBound = RuleEngineMetrics.getLowerBound(bucket + 1);
+			assertTrue("bucket: " + bucket, lowerBound<nextLowerBound);
+			assertEquals(bucket, RuleEngineMetrics.getBucket(lowerBound));
+			assertEquals(bucket, RuleEngineMetrics.getBucket(nextLowerBound - 1));
+			// a bucket is at most 12.5% of its lower bound wide
+			if(bucket>=8)
+			{
+				assertTrue("bucket: " + bucket, (nextLowerBound - lowerBound) * 8<=lowerBound);
+			}
+		}
+	}
+	
+	@Test
+	public void testPercentiles()
+	{
+		// the step is only used for the number of rows processed
+		RuleEngineMetrics metrics = new RuleEngineMetrics(null, 1);
+		assertEquals(0, metrics.getEngineNanosP50());
+		for(long nanos=1;nanos<=100;nanos++)
+		{
+			metrics.recordTime(nanos);
+		}
+		assertEquals(100, metrics.getSampledRows());
+		assertEquals(50, metrics.getEngineNanosMean());
+		assertEquals(100, metrics.getEngineNanosMax());
+		// the percentiles are the upper bounds of the buckets: 48-51, 88-95 and 96-103
+		assertEquals(51, metrics.getEngineNanosP50());
+		assertEquals(95, metrics.getEngineNanosP90());
+		// but not above the maximum
+		assertEquals(100, metrics.getEngineNanosP99());
+	}
+	
+	@Test
+	public void testSampleInterval()
+	{
+		RuleEngineMetrics metrics = new RuleEngineMetrics(null, 10);
+		assertTrue(metrics.isSampled(0));
+		assertFalse(metrics.isSampled(9));
+		assertTrue(metrics.isSampled(20));
+		// an interval of 0 samples every row
+		assertTrue(new RuleEngineMetrics(null, 0).isSampled(7));
+	}
+}
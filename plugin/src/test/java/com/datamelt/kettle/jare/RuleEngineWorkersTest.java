@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.datamelt.kettle.jare;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests that the rows processed on the threads are returned to the step, also
+ * when processing a row fails.
+ * 
+ * @author uwe geercken - uwe.geercken@web.de
+ */
+public class RuleEngineWorkersTest
+{
+	private static final AssertionError ERROR = new AssertionError("error processing the row");
+	
+	private static RuleEngineWorkers getWorkers(boolean ordered)
+	{
+		return new RuleEngineWorkers(2, ordered, new RuleEngineWorkers.RowProcessor()
+		{
+			public void process(RuleEngineWorkers.RowTask task, int worker) throws Exception
+			{
+				if(task.getLineNumber()==2)
+				{
+					throw ERROR;
+				}
+				task.setOutputRow(task.getRow());
+			}
+			
+			public void terminated(int worker)
+			{
+			}
+		});
+	}
+	
+	private static void checkRows(RuleEngineWorkers workers) throws Exception
+	{
+		workers.start("test");
+		try
+		{
+			for(int i=1;i<=3;i++)
+			{
+				workers.submit(new Object[] {Long.valueOf(i)}, i, false);
+			}
+			for(int i=0;i<3;i++)
+			{
+				RuleEngineWorkers.RowTask task = workers.take();
+				if(task.getLineNumber()==2)
+				{
+					assertSame(ERROR, task.getException());
+					assertNull(task.getOutputRow());
+				}
+				else
+				{
+					assertNull(task.getException());
+					assertSame(task.getRow(), task.getOutputRow());
+				}
+			}
+		}
+		finally
+		{
+			assertTrue(workers.stop());
+		}
+	}
+	
+	@Test(timeout=10000)
+	public void testErrorIsReturnedInOrder() throws Exception
+	{
+		checkRows(getWorkers(true));
+	}
+	
+	@Test(timeout=10000)
+	public void testErrorIsReturnedUnordered() throws Exception
+	{
+		checkRows(getWorkers(false));
+	}
+}
@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.datamelt.kettle.jare;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.datamelt.kettle.util.ReusableRowFieldCollection;
+import com.datamelt.rules.engine.BusinessRulesEngine;
+
+/**
+ * Tests the fields referenced by the rules, which are checked against the
+ * fields of the input rows and are the key of the cached results.
+ * 
+ * The rule engine only provides the active groups, so the groups with actions
+ * or other references are read from a project with the same group ids.
+ * 
+ * @author uwe geercken - uwe.geercken@web.de
+ */
+public class RuleFieldReferencesTest
+{
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	private Map<String, Integer> fieldIndexes;
+	private BusinessRulesEngine engine;
+	
+	@Before
+	public void setUp() throws Exception
+	{
+		fieldIndexes = ReusableRowFieldCollection.getFieldIndexes(new String[] {"field_0", "field_1", "field_2"});
+		File group = RuleFiles.writeFile(folder.newFile("group_a.xml"), RuleFiles.getGroup("group_a", "field_2", "a"));
+		engine = new BusinessRulesEngine(group.getPath());
+	}
+	
+	private RuleFieldReferences getReferences(String group) throws Exception
+	{
+		return new RuleFieldReferences(RuleFiles.writeFile(folder.newFile(), group).getPath());
+	}
+	
+	@Test
+	public void testReferencedFields() throws Exception
+	{
+		String group = RuleFiles.getGroup("group_a", "field_2", "a");
+		// a second rule referencing another field
+		String rule = group.substring(group.indexOf("\t\t<rule "), group.indexOf("\t</subgroup>"));
+		group = group.replace("\t</subgroup>", rule.replace("group_a_rule", "group_a_rule_2").replace("field_2", "field_0") + "\t</subgroup>");
+		RuleFieldReferences references = getReferences(group);
+		assertEquals(0, references.getUnknownFields(engine, fieldIndexes).size());
+		assertArrayEquals(new int[] {0, 2}, references.getReferencedFieldIndexes(engine, fieldIndexes));
+	}
+	
+	@Test
+	public void testUnknownField() throws Exception
+	{
+		RuleFieldReferences references = getReferences(RuleFiles.getGroup("group_a", "field_9", "a"));
+		assertEquals(Arrays.asList("group: group_a, field: field_9"), references.getUnknownFields(engine, fieldIndexes));
+		assertNull(references.getReferencedFieldIndexes(engine, fieldIndexes));
+	}
+	
+	@Test
+	public void testOnlyActiveGroupsAreChecked() throws Exception
+	{
+		RuleFieldReferences references = getReferences(RuleFiles.getGroup("group_b", "field_9", "a"));
+		assertEquals(0, references.getUnknownFields(engine, fieldIndexes).size());
+		// but the references of the active groups must be known
+		assertNull(references.getReferencedFieldIndexes(engine, fieldIndexes));
+	}
+	
+	@Test
+	public void testGroupWithActionsHasNoReferencedFields() throws Exception
+	{
+		String group = RuleFiles.getGroup("group_a", "field_2", "a").replace("\t</subgroup>\n", "\t</subgroup>\n\t<actions>\n\t\t<action id=\"action_a\" description=\"\" executeif=\"failed\"/>\n\t</actions>\n");
+		assertNull(getReferences(group).getReferencedFieldIndexes(engine, fieldIndexes));
+	}
+	
+	@Test
+	public void testOtherMethodIsNotResolved() throws Exception
+	{
+		String group = RuleFiles.getGroup("group_a", "field_2", "a").replace("method=\"getFieldValue\"", "method=\"getField\"");
+		RuleFieldReferences references = getReferences(group);
+		assertEquals(0, references.getUnknownFields(engine, fieldIndexes).size());
+		assertNull(references.getReferencedFieldIndexes(engine, fieldIndexes));
+	}
+}
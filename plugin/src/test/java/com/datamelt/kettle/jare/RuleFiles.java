@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.datamelt.kettle.jare;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes the rule files used by the tests. Each group consists of one subgroup
+ * with one rule checking that a field of the row equals an expected value.
+ * 
+ * The id of the subgroup of a group is the id of the group followed by "_subgroup",
+ * the id of the rule is the id of the group followed by "_rule".
+ * 
+ * @author uwe geercken - uwe.geercken@web.de
+ */
+public class RuleFiles
+{
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	/**
+	 * @param groupId	the id of the group
+	 * @param field		the name of the field checked by the rule
+	 * @param expected	the value the field is expected to have
+	 * @return			the xml of the group
+	 */
+	public static String getGroup(String groupId, String field, String expected)
+	{
+		StringBuffer buffer = new StringBuffer();
+		buffer.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+		buffer.append("<rulegroup id=\"" + groupId + "\" description=\"\" validfrom=\"2000-01-01\" validuntil=\"\">\n");
+		buffer.append("\t<subgroup id=\"" + groupId + "_subgroup\" description=\"\" intergroupoperator=\"and\" ruleoperator=\"and\">\n");
+		buffer.append("\t\t<rule id=\"" + groupId + "_rule\" description=\"\">\n");
+		buffer.append("\t\t\t<object classname=\"com.datamelt.util.RowFieldCollection\" method=\"getFieldValue\" parameter=\"" + field + "\" parametertype=\"string\" type=\"string\"/>\n");
+		buffer.append("\t\t\t<execute>CheckIsEqual</execute>\n");
+		buffer.append("\t\t\t<expected value=\"" + expected + "\" type=\"string\"/>\n");
+		buffer.append("\t\t\t<message type=\"failed\">[" + field + "] is not equal to " + expected + "</message>\n");
+		buffer.append("\t\t\t<message type=\"passed\">[" + field + "] is equal to " + expected + "</message>\n");
+		buffer.append("\t\t</rule>\n");
+		buffer.append("\t</subgroup>\n");
+		buffer.append("</rulegroup>\n");
+		return buffer.toString();
+	}
+	
+	/**
+	 * writes a rule file
+	 * 
+	 * @param file			the xml file
+	 * @param group			the xml of the group
+	 * @return				the file
+	 * @throws IOException	when the file can not be written
+	 */
+	public static File writeFile(File file, String group) throws IOException
+	{
+		Writer writer = new OutputStreamWriter(new FileOutputStream(file), UTF8);
+		try
+		{
+			writer.write(group);
+		}
+		finally
+		{
+			writer.close();
+		}
+		return file;
+	}
+	
+	/**
+	 * writes a zip file with one rule file per group. the entries are written in
+	 * the order of the groups, so the rule engines are loaded in this order.
+	 * 
+	 * @param file			the zip file
+	 * @param groups		the xml of the groups
+	 * @return				the file
+	 * @throws IOException	when the file can not be written
+	 */
+	public static File writeZip(File file, String[] groups) throws IOException
+	{
+		ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file));
+		try
+		{
+			for(int i=0;i<groups.length;i++)
+			{
+				out.putNextEntry(new ZipEntry("group_" + i + ".xml"));
+				out.write(groups[i].getBytes(UTF8));
+				out.closeEntry();
+			}
+		}
+		finally
+		{
+			out.close();
+		}
+		return file;
+	}
+}
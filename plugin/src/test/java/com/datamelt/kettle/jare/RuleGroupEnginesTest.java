@@ -0,0 +1,143 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.datamelt.kettle.jare;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.datamelt.util.HeaderRow;
+import com.datamelt.util.RowFieldCollection;
+
+/**
+ * Tests the fail-fast run of the groups and the order of the groups learned
+ * from the warm-up, read from and written to a file.
+ * 
+ * @author uwe geercken - uwe.geercken@web.de
+ */
+public class RuleGroupEnginesTest
+{
+	private static final String[] FIELD_NAMES = new String[] {"field_0", "field_1", "field_2"};
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	private File project;
+	
+	@Before
+	public void setUp() throws Exception
+	{
+		project = RuleFiles.writeZip(folder.newFile("project.zip"), new String[] {
+			RuleFiles.getGroup("group_a", "field_0", "a"),
+			RuleFiles.getGroup("group_b", "field_1", "b"),
+			RuleFiles.getGroup("group_c", "field_2", "c")});
+	}
+	
+	private static RowFieldCollection getFields(String value0, String value1, String value2)
+	{
+		return new RowFieldCollection(new HeaderRow(FIELD_NAMES), new Object[] {value0, value1, value2});
+	}
+	
+	@Test
+	public void testAllGroupsRunWhenNoGroupFails() throws Exception
+	{
+		RuleGroupEngines engines = RuleGroupEngines.load(project.getPath());
+		engines.run("row", getFields("a", "b", "c"));
+		assertEquals(3, engines.getNumberOfEnginesRun());
+		assertFalse(engines.isTruncated());
+		assertEquals(3, engines.getNumberOfGroups());
+		assertEquals(0, engines.getNumberOfGroupsFailed());
+	}
+	
+	@Test
+	public void testRunStopsAtFirstFailedGroup() throws Exception
+	{
+		RuleGroupEngines engines = RuleGroupEngines.load(project.getPath());
+		engines.run("row", getFields("a", "x", "x"));
+		assertEquals(2, engines.getNumberOfEnginesRun());
+		assertTrue(engines.isTruncated());
+		assertEquals(2, engines.getNumberOfGroups());
+		assertEquals(1, engines.getNumberOfGroupsFailed());
+		assertEquals(1, engines.getNumberOfRulesFailed());
+	}
+	
+	@Test
+	public void testWarmUpRunsAllGroupsAndOrdersThem() throws Exception
+	{
+		RuleGroupEngines engines = RuleGroupEngines.load(project.getPath());
+		engines.setWarmUpRows(4);
+		for(int i=0;i<4;i++)
+		{
+			assertTrue(engines.isWarmUp());
+			// group_a never fails, group_b fails for every second row, group_c for every row
+			engines.run("row", getFields("a", i % 2==0 ? "x" : "b", "x"));
+			assertEquals(3, engines.getNumberOfEnginesRun());
+			assertFalse(engines.isTruncated());
+		}
+		assertFalse(engines.isWarmUp());
+		assertTrue(engines.isOrderLearned());
+		// the group that never failed is run last
+		assertEquals("group_a", engines.getGroupIds()[2]);
+		
+		// after the warm-up the run stops at the first failed group
+		engines.run("row", getFields("a", "x", "x"));
+		assertEquals(1, engines.getNumberOfEnginesRun());
+		assertTrue(engines.isTruncated());
+	}
+	
+	@Test
+	public void testReadOrderRunsUnlistedGroupsLast() throws Exception
+	{
+		File order = RuleFiles.writeFile(folder.newFile("order.txt"), "group_c\n\ngroup_a\n");
+		RuleGroupEngines engines = RuleGroupEngines.load(project.getPath());
+		assertFalse(engines.readOrder(order));
+		assertArrayEquals(new String[] {"group_c", "group_a", "group_b"}, engines.getGroupIds());
+		assertEquals("group_c", engines.getEngine(0).getGroups().get(0).getId());
+		
+		engines.run("row", getFields("x", "b", "x"));
+		assertEquals(1, engines.getNumberOfEnginesRun());
+	}
+	
+	@Test
+	public void testWrittenOrderIsReadBack() throws Exception
+	{
+		File directory = folder.newFolder("order");
+		File order = new File(directory, "order.txt");
+		RuleGroupEngines engines = RuleGroupEngines.load(project.getPath());
+		engines.readOrder(RuleFiles.writeFile(folder.newFile("initial.txt"), "group_b\ngroup_c\ngroup_a\n"));
+		engines.writeOrder(order);
+		// the order replaces an existing file
+		engines.writeOrder(order);
+		
+		// no temporary file is left in the directory
+		assertArrayEquals(new String[] {"order.txt"}, directory.list());
+		
+		RuleGroupEngines loadedEngines = RuleGroupEngines.load(project.getPath());
+		assertTrue(loadedEngines.readOrder(order));
+		assertArrayEquals(new String[] {"group_b", "group_c", "group_a"}, loadedEngines.getGroupIds());
+	}
+}
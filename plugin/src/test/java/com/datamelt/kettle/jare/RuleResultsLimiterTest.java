@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.datamelt.kettle.jare;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.datamelt.rules.core.XmlRule;
+import com.datamelt.rules.engine.BusinessRulesEngine;
+
+/**
+ * Tests the limit of the failed results output per rule and time window.
+ * 
+ * @author uwe geercken - uwe.geercken@web.de
+ */
+public class RuleResultsLimiterTest
+{
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	@Test
+	public void testResultsAboveLimitAreSuppressed()
+	{
+		RuleResultsLimiter limiter = new RuleResultsLimiter(2, 10);
+		RuleResultsLimiter.RuleCounter counter = limiter.getRuleCounter("g", "s", "r");
+		assertTrue(limiter.accept(counter, 1000));
+		assertTrue(limiter.accept(counter, 1001));
+		assertFalse(limiter.accept(counter, 1002));
+		assertFalse(limiter.accept(counter, 10999));
+		assertEquals(2, limiter.getNumberOfSuppressed());
+	}
+	
+	@Test
+	public void testNewWindowStartsWhenWindowEnded()
+	{
+		RuleResultsLimiter limiter = new RuleResultsLimiter(1, 10);
+		RuleResultsLimiter.RuleCounter counter = limiter.getRuleCounter("g", "s", "r");
+		assertTrue(limiter.accept(counter, 1000));
+		assertFalse(limiter.accept(counter, 10999));
+		// the window ends 10 seconds after the first result
+		assertTrue(limiter.accept(counter, 11000));
+		assertFalse(limiter.accept(counter, 11001));
+		// the next window starts with the first result after the window ended, not at its end
+		assertTrue(limiter.accept(counter, 25000));
+		assertFalse(limiter.accept(counter, 34999));
+		assertTrue(limiter.accept(counter, 35000));
+		assertEquals(3, limiter.getNumberOfSuppressed());
+	}
+	
+	@Test
+	public void testWindowIsAtLeastOneSecond()
+	{
+		RuleResultsLimiter limiter = new RuleResultsLimiter(1, 0);
+		RuleResultsLimiter.RuleCounter counter = limiter.getRuleCounter("g", "s", "r");
+		assertTrue(limiter.accept(counter, 0));
+		assertFalse(limiter.accept(counter, 999));
+		assertTrue(limiter.accept(counter, 1000));
+	}
+	
+	@Test
+	public void testRulesAreLimitedSeparately()
+	{
+		RuleResultsLimiter limiter = new RuleResultsLimiter(1, 60);
+		RuleResultsLimiter.RuleCounter counterR1 = limiter.getRuleCounter("g", "s", "r1");
+		RuleResultsLimiter.RuleCounter counterR2 = limiter.getRuleCounter("g", "s", "r2");
+		RuleResultsLimiter.RuleCounter counterS2R1 = limiter.getRuleCounter("g", "s2", "r1");
+		assertTrue(limiter.accept(counterR2, 0));
+		assertTrue(limiter.accept(counterR1, 0));
+		assertFalse(limiter.accept(counterR2, 1));
+		assertFalse(limiter.accept(counterR2, 2));
+		assertFalse(limiter.accept(counterR1, 3));
+		assertTrue(limiter.accept(counterS2R1, 4));
+		assertEquals(3, limiter.getNumberOfSuppressed());
+		assertEquals(Arrays.asList("rule: g/s/r1, suppressed: 1", "rule: g/s/r2, suppressed: 2"), limiter.getSuppressed());
+	}
+	
+	@Test
+	public void testEngineCountersAreLookedUpOncePerEngine() throws Exception
+	{
+		File group = RuleFiles.writeFile(folder.newFile("group_a.xml"), RuleFiles.getGroup("group_a", "field_0", "a"));
+		BusinessRulesEngine engine = new BusinessRulesEngine(group.getPath());
+		RuleResultsLimiter limiter = new RuleResultsLimiter(1, 60);
+		RuleResultsLimiter.EngineCounters counters = limiter.getEngineCounters(null, engine);
+		assertSame(counters, limiter.getEngineCounters(counters, engine));
+		
+		// the rule is counted by its ids, so the counter is shared by the rule engines of the threads
+		XmlRule rule = engine.getGroups().get(0).getSubGroups().get(0).getRulesCollection().get(0);
+		RuleResultsLimiter.RuleCounter counter = counters.getRuleCounter(0, 0, 0, rule);
+		assertSame(limiter.getRuleCounter("group_a", "group_a_subgroup", "group_a_rule"), counter);
+		BusinessRulesEngine otherEngine = new BusinessRulesEngine(group.getPath());
+		RuleResultsLimiter.EngineCounters otherCounters = limiter.getEngineCounters(counters, otherEngine);
+		assertNotSame(counters, otherCounters);
+		XmlRule otherRule = otherEngine.getGroups().get(0).getSubGroups().get(0).getRulesCollection().get(0);
+		assertSame(counter, otherCounters.getRuleCounter(0, 0, 0, otherRule));
+	}
+}
@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.datamelt.kettle.jare;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.datamelt.rules.engine.BusinessRulesEngine;
+import com.datamelt.util.HeaderRow;
+import com.datamelt.util.RowFieldCollection;
+
+/**
+ * Tests counting the results of the rules and adding the statistics of
+ * the step copies.
+ * 
+ * @author uwe geercken - uwe.geercken@web.de
+ */
+public class RuleStatisticsTest
+{
+	private static final int ROW_SIZE = 7;
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	private File group;
+	
+	@Before
+	public void setUp() throws Exception
+	{
+		group = RuleFiles.writeFile(folder.newFile("group_a.xml"), RuleFiles.getGroup("group_a", "field_0", "a"));
+	}
+	
+	private static void run(BusinessRulesEngine engine, RuleStatistics statistics, String value) throws Exception
+	{
+		engine.run("row", new RowFieldCollection(new HeaderRow(new String[] {"field_0"}), new Object[] {value}));
+		statistics.count(engine);
+		engine.getRuleExecutionCollection().clear();
+	}
+	
+	private static void assertCounts(Object[] row, String groupId, String subgroupId, String ruleId, long evaluated, long failed, long skipped, double rate)
+	{
+		assertEquals(groupId, row[0]);
+		assertEquals(subgroupId, row[1]);
+		assertEquals(ruleId, row[2]);
+		assertEquals(Long.valueOf(evaluated), row[3]);
+		assertEquals(Long.valueOf(failed), row[4]);
+		assertEquals(Long.valueOf(skipped), row[5]);
+		assertEquals(rate, ((Double)row[6]).doubleValue(), 0.0);
+	}
+	
+	@Test
+	public void testCount() throws Exception
+	{
+		BusinessRulesEngine engine = new BusinessRulesEngine(group.getPath());
+		RuleStatistics statistics = new RuleStatistics(engine);
+		run(engine, statistics, "a");
+		run(engine, statistics, "x");
+		
+		List<Object[]> rows = statistics.getRows(ROW_SIZE);
+		assertEquals(3, rows.size());
+		assertCounts(rows.get(0), "group_a", null, null, 2, 1, 0, 0.5);
+		assertCounts(rows.get(1), "group_a", "group_a_subgroup", null, 2, 1, 0, 0.5);
+		assertCounts(rows.get(2), "group_a", "group_a_subgroup", "group_a_rule", 2, 1, 0, 0.5);
+	}
+	
+	@Test
+	public void testAddStatisticsOfSameProject() throws Exception
+	{
+		BusinessRulesEngine engine = new BusinessRulesEngine(group.getPath());
+		RuleStatistics statistics = new RuleStatistics(engine);
+		run(engine, statistics, "x");
+		
+		BusinessRulesEngine otherEngine = new BusinessRulesEngine(group.getPath());
+		RuleStatistics otherStatistics = new RuleStatistics(otherEngine);
+		run(otherEngine, otherStatistics, "a");
+		run(otherEngine, otherStatistics, "a");
+		run(otherEngine, otherStatistics, "a");
+		
+		assertTrue(statistics.add(otherStatistics));
+		List<Object[]> rows = statistics.getRows(ROW_SIZE);
+		assertCounts(rows.get(0), "group_a", null, null, 4, 1, 0, 0.25);
+		assertCounts(rows.get(2), "group_a", "group_a_subgroup", "group_a_rule", 4, 1, 0, 0.25);
+		
+		// the added statistics are not changed
+		assertCounts(otherStatistics.getRows(ROW_SIZE).get(0), "group_a", null, null, 3, 0, 0, 0.0);
+	}
+	
+	@Test
+	public void testAddStatisticsOfOtherProjectIsRejected() throws Exception
+	{
+		BusinessRulesEngine engine = new BusinessRulesEngine(group.getPath());
+		RuleStatistics statistics = new RuleStatistics(engine);
+		run(engine, statistics, "x");
+		
+		File otherGroup = RuleFiles.writeFile(folder.newFile("group_b.xml"), RuleFiles.getGroup("group_b", "field_0", "a"));
+		BusinessRulesEngine otherEngine = new BusinessRulesEngine(otherGroup.getPath());
+		RuleStatistics otherStatistics = new RuleStatistics(otherEngine);
+		run(otherEngine, otherStatistics, "x");
+		
+		assertFalse(statistics.add(otherStatistics));
+		assertCounts(statistics.getRows(ROW_SIZE).get(0), "group_a", null, null, 1, 1, 0, 1.0);
+	}
+	
+	@Test
+	public void testRowsWithoutEvaluationsHaveNoFailureRate() throws Exception
+	{
+		RuleStatistics statistics = new RuleStatistics(new BusinessRulesEngine(group.getPath()));
+		assertCounts(statistics.getRows(ROW_SIZE).get(0), "group_a", null, null, 0, 0, 0, 0.0);
+	}
+}
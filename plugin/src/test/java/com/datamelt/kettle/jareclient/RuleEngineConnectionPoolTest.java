@@ -0,0 +1,393 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.datamelt.kettle.jareclient;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.datamelt.server.RuleEngineServerObject;
+import com.datamelt.util.HeaderRow;
+import com.datamelt.util.RowFieldCollection;
+
+/**
+ * Tests the selection of the servers by the connection pool when a server can
+ * not be reached or a connection fails, and resending the rows in flight on a
+ * failed connection to another server.
+ * 
+ * @author uwe geercken - uwe.geercken@web.de
+ */
+public class RuleEngineConnectionPoolTest
+{
+	private static final String LOOPBACK = "127.0.0.1";
+	
+	private final List<EchoServer> servers = new ArrayList<EchoServer>();
+	private final List<RuleEngineConnectionPool> pools = new ArrayList<RuleEngineConnectionPool>();
+	
+	@After
+	public void tearDown()
+	{
+		for(int i=0;i<pools.size();i++)
+		{
+			pools.get(i).close();
+		}
+		for(int i=0;i<servers.size();i++)
+		{
+			servers.get(i).stop();
+		}
+	}
+	
+	private EchoServer startServer(int answeredRows) throws IOException
+	{
+		EchoServer server = new EchoServer(answeredRows);
+		servers.add(server);
+		server.start();
+		return server;
+	}
+	
+	private RuleEngineConnectionPool getPool(int[] ports) throws Exception
+	{
+		StringBuffer serverList = new StringBuffer();
+		for(int i=0;i<ports.length;i++)
+		{
+			if(i>0)
+			{
+				serverList.append(",");
+			}
+			serverList.append(LOOPBACK + ":" + ports[i]);
+		}
+		RuleEngineConnectionPool pool = RuleEngineConnectionPool.getPool(serverList.toString(), null);
+		pools.add(pool);
+		return pool;
+	}
+	
+	/**
+	 * @return	a port no server listens on
+	 */
+	private static int getClosedPort() throws IOException
+	{
+		ServerSocket socket = new ServerSocket(0, 50, InetAddress.getByName(LOOPBACK));
+		int port = socket.getLocalPort();
+		socket.close();
+		return port;
+	}
+	
+	private static RowFieldCollection getFields(int number)
+	{
+		return new RowFieldCollection(new HeaderRow(new String[] {"number"}), new Object[] {Integer.valueOf(number)});
+	}
+	
+	private static int getNumber(RuleEngineServerObject response) throws Exception
+	{
+		return ((Integer)response.getFields().getFieldValue("number")).intValue();
+	}
+	
+	@Test
+	public void testUnreachableServerIsSkipped() throws Exception
+	{
+		EchoServer server = startServer(Integer.MAX_VALUE);
+		RuleEngineConnectionPool pool = getPool(new int[] {getClosedPort(), server.getPort()});
+		for(int i=0;i<3;i++)
+		{
+			RuleEngineConnection connection = pool.lease(RuleEngineConnectionPool.ROUTING_ROUND_ROBIN);
+			assertEquals(LOOPBACK + ":" + server.getPort(), connection.toString());
+			pool.release(connection);
+		}
+	}
+	
+	@Test
+	public void testNoServerReachable() throws Exception
+	{
+		RuleEngineConnectionPool pool = getPool(new int[] {getClosedPort(), getClosedPort()});
+		try
+		{
+			pool.lease(RuleEngineConnectionPool.ROUTING_LEAST_OUTSTANDING);
+			fail("connection leased without a server");
+		}
+		catch(IOException ioe)
+		{
+			// expected
+		}
+	}
+	
+	@Test
+	public void testReleasedConnectionIsReused() throws Exception
+	{
+		EchoServer server = startServer(Integer.MAX_VALUE);
+		RuleEngineConnectionPool pool = getPool(new int[] {server.getPort()});
+		RuleEngineConnection connection = pool.lease(RuleEngineConnectionPool.ROUTING_LEAST_OUTSTANDING);
+		pool.release(connection);
+		assertSame(connection, pool.lease(RuleEngineConnectionPool.ROUTING_LEAST_OUTSTANDING));
+	}
+	
+	@Test
+	public void testPoolIsRemovedWhenLastUserClosesIt() throws Exception
+	{
+		EchoServer server = startServer(Integer.MAX_VALUE);
+		String serverList = LOOPBACK + ":" + server.getPort();
+		RuleEngineConnectionPool pool = RuleEngineConnectionPool.getPool(serverList, null);
+		assertSame(pool, RuleEngineConnectionPool.getPool(serverList, null));
+		RuleEngineConnection connection = pool.lease(RuleEngineConnectionPool.ROUTING_LEAST_OUTSTANDING);
+		pool.close();
+		assertSame(pool, RuleEngineConnectionPool.getPool(serverList, null));
+		pool.close();
+		pool.close();
+		
+		// the connection leased before the pool was closed is not reused
+		pool.release(connection);
+		RuleEngineConnectionPool newPool = getPool(new int[] {server.getPort()});
+		assertNotSame(pool, newPool);
+		assertNotSame(connection, newPool.lease(RuleEngineConnectionPool.ROUTING_LEAST_OUTSTANDING));
+	}
+	
+	@Test
+	public void testInvalidatedServerIsSkipped() throws Exception
+	{
+		EchoServer server1 = startServer(Integer.MAX_VALUE);
+		EchoServer server2 = startServer(Integer.MAX_VALUE);
+		RuleEngineConnectionPool pool = getPool(new int[] {server1.getPort(), server2.getPort()});
+		RuleEngineConnection failed = pool.lease(RuleEngineConnectionPool.ROUTING_ROUND_ROBIN);
+		RuleEngineConnection idle = pool.lease(RuleEngineConnectionPool.ROUTING_ROUND_ROBIN);
+		// round robin uses both servers
+		assertFalse(failed.toString().equals(idle.toString()));
+		pool.release(idle);
+		pool.invalidate(failed);
+		for(int i=0;i<3;i++)
+		{
+			RuleEngineConnection connection = pool.lease(RuleEngineConnectionPool.ROUTING_ROUND_ROBIN);
+			assertEquals(idle.toString(), connection.toString());
+			connection.send(getFields(i));
+			connection.flush();
+			assertEquals(i, getNumber(connection.receive()));
+			pool.release(connection);
+		}
+	}
+	
+	@Test
+	public void testRowsInFlightAreResentToOtherServer() throws Exception
+	{
+		// the first server drops the connection after answering two rows
+		EchoServer server1 = startServer(2);
+		EchoServer server2 = startServer(Integer.MAX_VALUE);
+		RuleEngineConnectionPool pool = getPool(new int[] {server1.getPort(), server2.getPort()});
+		
+		RuleEngineConnection connection = pool.lease(RuleEngineConnectionPool.ROUTING_ROUND_ROBIN);
+		assertEquals(LOOPBACK + ":" + server1.getPort(), connection.toString());
+		List<Integer> inFlightRows = new ArrayList<Integer>();
+		for(int i=0;i<5;i++)
+		{
+			connection.send(getFields(i));
+			inFlightRows.add(Integer.valueOf(i));
+		}
+		connection.flush();
+		
+		List<Integer> results = new ArrayList<Integer>();
+		try
+		{
+			while(!inFlightRows.isEmpty())
+			{
+				int number = getNumber(connection.receive());
+				assertEquals(inFlightRows.remove(0).intValue(), number);
+				results.add(Integer.valueOf(number));
+			}
+			fail("the connection was not dropped");
+		}
+		catch(IOException ioe)
+		{
+			// the rows without a result are sent again, in their order, using a new connection
+			pool.invalidate(connection);
+		}
+		assertEquals(2, results.size());
+		
+		connection = pool.lease(RuleEngineConnectionPool.ROUTING_ROUND_ROBIN);
+		assertEquals(LOOPBACK + ":" + server2.getPort(), connection.toString());
+		for(int i=0;i<inFlightRows.size();i++)
+		{
+			connection.send(getFields(inFlightRows.get(i).intValue()));
+		}
+		connection.flush();
+		for(int i=0;i<inFlightRows.size();i++)
+		{
+			results.add(Integer.valueOf(getNumber(connection.receive())));
+		}
+		pool.release(connection);
+		
+		List<Integer> expected = new ArrayList<Integer>();
+		for(int i=0;i<5;i++)
+		{
+			expected.add(Integer.valueOf(i));
+		}
+		assertEquals(expected, results);
+	}
+	
+	/**
+	 * server answering rows with the unchanged fields, in the order they were
+	 * received, and string messages with the message. after the given number of
+	 * rows it closes its side of a connection without answering further rows.
+	 */
+	private static class EchoServer implements Runnable
+	{
+		private final int answeredRows;
+		private final ServerSocket serverSocket;
+		private final List<Socket> sockets = new ArrayList<Socket>();
+		private volatile boolean stopped;
+		
+		private EchoServer(int answeredRows) throws IOException
+		{
+			this.answeredRows = answeredRows;
+			this.serverSocket = new ServerSocket(0, 50, InetAddress.getByName(LOOPBACK));
+		}
+		
+		private int getPort()
+		{
+			return serverSocket.getLocalPort();
+		}
+		
+		private void start()
+		{
+			Thread thread = new Thread(this, "echo server");
+			thread.setDaemon(true);
+			thread.start();
+		}
+		
+		private void stop()
+		{
+			stopped = true;
+			try
+			{
+				serverSocket.close();
+			}
+			catch(IOException ioe)
+			{
+				// the server is not used any further
+			}
+			synchronized(sockets)
+			{
+				for(int i=0;i<sockets.size();i++)
+				{
+					close(sockets.get(i));
+				}
+				sockets.clear();
+			}
+		}
+		
+		public void run()
+		{
+			while(!stopped)
+			{
+				final Socket socket;
+				try
+				{
+					socket = serverSocket.accept();
+				}
+				catch(IOException ioe)
+				{
+					// the server is stopped
+					return;
+				}
+				synchronized(sockets)
+				{
+					sockets.add(socket);
+				}
+				Thread handler = new Thread(new Runnable()
+				{
+					public void run()
+					{
+						handle(socket);
+					}
+				}, "echo server - " + socket.getPort());
+				handler.setDaemon(true);
+				handler.start();
+			}
+		}
+		
+		private void handle(Socket socket)
+		{
+			try
+			{
+				ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+				out.flush();
+				ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(socket.getInputStream()));
+				int rows = 0;
+				while(!stopped)
+				{
+					Object request = in.readObject();
+					if(request instanceof String)
+					{
+						out.writeObject(request);
+						out.flush();
+						if(request.equals(RuleEngineConnection.MESSAGE_EXIT))
+						{
+							break;
+						}
+					}
+					else if(rows++<answeredRows)
+					{
+						RuleEngineServerObject response = new RuleEngineServerObject();
+						response.setFields((RowFieldCollection)request);
+						out.reset();
+						out.writeObject(response);
+						out.flush();
+					}
+					else if(!socket.isOutputShutdown())
+					{
+						// the rows not answered are still read, so the client receives the answered rows
+						socket.shutdownOutput();
+					}
+				}
+			}
+			catch(Exception ex)
+			{
+				// the connection was closed
+			}
+			finally
+			{
+				close(socket);
+			}
+		}
+		
+		private static void close(Socket socket)
+		{
+			try
+			{
+				socket.close();
+			}
+			catch(IOException ioe)
+			{
+				// the connection is not used any further
+			}
+		}
+	}
+}
@@ -0,0 +1,246 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.datamelt.kettle.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.sql.Timestamp;
+import java.util.Date;
+
+import org.junit.Test;
+import org.pentaho.di.core.row.ValueMetaInterface;
+
+import com.datamelt.util.HeaderRow;
+
+/**
+ * Tests the conversion of the values updated by the rule engine to the types
+ * of the fields and writing them back to the output row.
+ * 
+ * @author uwe geercken - uwe.geercken@web.de
+ */
+public class FieldConverterTest
+{
+	private static void assertRejected(FieldConverter converter, Object value)
+	{
+		try
+		{
+			converter.convert(value, null);
+			fail("value was converted: " + value);
+		}
+		catch(Exception ex)
+		{
+			// expected
+		}
+	}
+	
+	@Test
+	public void testInteger() throws Exception
+	{
+		FieldConverter converter = FieldConverter.getConverter(ValueMetaInterface.TYPE_INTEGER);
+		Long value = Long.valueOf(12345678901L);
+		assertSame(value, converter.convert(value, null));
+		assertNull(converter.convert(null, 1L));
+		assertEquals(Long.valueOf(7), converter.convert(Integer.valueOf(7), null));
+		assertEquals(Long.valueOf(-7), converter.convert(Short.valueOf((short)-7), null));
+		assertEquals(Long.valueOf(12), converter.convert(new BigDecimal("12.00"), null));
+		assertEquals(Long.valueOf(Long.MAX_VALUE), converter.convert(BigInteger.valueOf(Long.MAX_VALUE), null));
+		assertEquals(Long.valueOf(3), converter.convert(Double.valueOf(3.0), null));
+	}
+	
+	@Test
+	public void testIntegerIsNeverTruncated() throws Exception
+	{
+		FieldConverter converter = FieldConverter.getConverter(ValueMetaInterface.TYPE_INTEGER);
+		assertRejected(converter, new BigDecimal("1.5"));
+		assertRejected(converter, BigInteger.valueOf(Long.MAX_VALUE).add(BigInteger.ONE));
+		assertRejected(converter, Double.valueOf(3.5));
+		assertRejected(converter, Double.valueOf(1e19));
+		assertRejected(converter, Double.valueOf(Double.NaN));
+		assertRejected(converter, "5");
+	}
+	
+	@Test
+	public void testNumber() throws Exception
+	{
+		FieldConverter converter = FieldConverter.getConverter(ValueMetaInterface.TYPE_NUMBER);
+		assertEquals(Double.valueOf(7.0), converter.convert(Integer.valueOf(7), null));
+		assertEquals(Double.valueOf(1.5), converter.convert(new BigDecimal("1.5"), null));
+		assertEquals(Double.valueOf(2.0), converter.convert("text", Double.valueOf(2.0)));
+	}
+	
+	@Test
+	public void testBigNumber() throws Exception
+	{
+		FieldConverter converter = FieldConverter.getConverter(ValueMetaInterface.TYPE_BIGNUMBER);
+		assertEquals(new BigDecimal("0.1"), converter.convert(Double.valueOf(0.1), null));
+		assertEquals(new BigDecimal("12345678901"), converter.convert(Long.valueOf(12345678901L), null));
+		BigDecimal value = new BigDecimal("1.23");
+		assertSame(value, converter.convert(value, null));
+	}
+	
+	@Test
+	public void testTimestamp() throws Exception
+	{
+		FieldConverter converter = FieldConverter.getConverter(ValueMetaInterface.TYPE_TIMESTAMP);
+		Date date = new Date(1500000000123L);
+		Object converted = converter.convert(date, null);
+		assertEquals(Timestamp.class, converted.getClass());
+		assertEquals(date.getTime(), ((Timestamp)converted).getTime());
+		Timestamp timestamp = new Timestamp(1500000000123L);
+		assertSame(timestamp, converter.convert(timestamp, null));
+	}
+	
+	@Test
+	public void testBinary() throws Exception
+	{
+		FieldConverter converter = FieldConverter.getConverter(ValueMetaInterface.TYPE_BINARY);
+		assertArrayEquals("gr\u00fcn".getBytes("UTF-8"), (byte[])converter.convert("gr\u00fcn", null));
+		byte[] value = new byte[] {1, 2, 3};
+		assertSame(value, converter.convert(value, null));
+	}
+	
+	@Test
+	public void testInet() throws Exception
+	{
+		FieldConverter converter = FieldConverter.getConverter(ValueMetaInterface.TYPE_INET);
+		assertEquals(InetAddress.getByAddress(new byte[] {(byte)192, (byte)168, 1, 10}), converter.convert("192.168.1.10", null));
+		assertEquals(InetAddress.getByName("::1"), converter.convert("::1", null));
+		assertEquals(InetAddress.getByName("::1"), converter.convert("[::1]", null));
+	}
+	
+	@Test
+	public void testInetDoesNotResolveHostNames() throws Exception
+	{
+		FieldConverter converter = FieldConverter.getConverter(ValueMetaInterface.TYPE_INET);
+		assertRejected(converter, "localhost");
+		assertRejected(converter, "256.1.1.1");
+		assertRejected(converter, "1.2.3");
+		assertRejected(converter, "1.2.3.4.5");
+		assertRejected(converter, "1..3.4");
+		assertRejected(converter, "[]");
+	}
+	
+	@Test
+	public void testUnsupportedTypeIsRejected() throws Exception
+	{
+		assertRejected(FieldConverter.getConverter(ValueMetaInterface.TYPE_SERIALIZABLE), "value");
+	}
+	
+	@Test
+	public void testWriteRecordedUpdatedFields() throws Exception
+	{
+		String[] fieldNames = new String[] {"name", "count", "amount"};
+		FieldConverter[] converters = new FieldConverter[] {
+			FieldConverter.getConverter(ValueMetaInterface.TYPE_STRING),
+			FieldConverter.getConverter(ValueMetaInterface.TYPE_INTEGER),
+			FieldConverter.getConverter(ValueMetaInterface.TYPE_NUMBER)};
+		Object[] row = new Object[] {"a", Long.valueOf(1), Double.valueOf(1.5)};
+		ReusableRowFieldCollection fields = new ReusableRowFieldCollection(new HeaderRow(fieldNames), row);
+		fields.setFieldIndexes(ReusableRowFieldCollection.getFieldIndexes(fieldNames));
+		
+		Object[] outputRow = row.clone();
+		assertEquals(0, FieldConverter.writeUpdatedFields(fields, converters, outputRow));
+		
+		fields.setFieldValue("count", Integer.valueOf(5));
+		assertEquals(1, fields.getNumberOfUpdatedIndexes());
+		assertEquals(1, fields.getUpdatedIndex(0));
+		assertEquals(1, FieldConverter.writeUpdatedFields(fields, converters, outputRow));
+		assertArrayEquals(new Object[] {"a", Long.valueOf(5), Double.valueOf(1.5)}, outputRow);
+		
+		// the updated fields are reset with the next row
+		fields.reset(row);
+		outputRow = row.clone();
+		assertEquals(0, fields.getNumberOfUpdatedIndexes());
+		assertEquals(0, FieldConverter.writeUpdatedFields(fields, converters, outputRow));
+		assertArrayEquals(row, outputRow);
+	}
+	
+	@Test
+	public void testWriteUpdatedFieldsWithoutIndexes() throws Exception
+	{
+		String[] fieldNames = new String[] {"name", "count"};
+		FieldConverter[] converters = new FieldConverter[] {
+			FieldConverter.getConverter(ValueMetaInterface.TYPE_STRING),
+			FieldConverter.getConverter(ValueMetaInterface.TYPE_INTEGER)};
+		Object[] row = new Object[] {"a", Long.valueOf(1)};
+		// without the indexes of the fields the updated fields are found by checking all fields
+		ReusableRowFieldCollection fields = new ReusableRowFieldCollection(new HeaderRow(fieldNames), row);
+		fields.setFieldValue("name", "b");
+		
+		Object[] outputRow = row.clone();
+		assertEquals(1, FieldConverter.writeUpdatedFields(fields, converters, outputRow));
+		assertArrayEquals(new Object[] {"b", Long.valueOf(1)}, outputRow);
+	}
+	
+	@Test
+	public void testWriteFieldsUpdatedByIndex() throws Exception
+	{
+		String[] fieldNames = new String[] {"name", "count"};
+		FieldConverter[] converters = new FieldConverter[] {
+			FieldConverter.getConverter(ValueMetaInterface.TYPE_STRING),
+			FieldConverter.getConverter(ValueMetaInterface.TYPE_INTEGER)};
+		Object[] row = new Object[] {"a", Long.valueOf(1)};
+		ReusableRowFieldCollection fields = new ReusableRowFieldCollection(new HeaderRow(fieldNames), row);
+		fields.setFieldIndexes(ReusableRowFieldCollection.getFieldIndexes(fieldNames));
+		fields.setFieldValue(1, Integer.valueOf(7));
+		fields.setFieldValue("count", Integer.valueOf(8));
+		
+		// the field is recorded once, whichever setter was used
+		assertEquals(1, fields.getNumberOfUpdatedIndexes());
+		assertTrue(fields.isUpdatedIndexesComplete());
+		Object[] outputRow = row.clone();
+		assertEquals(1, FieldConverter.writeUpdatedFields(fields, converters, outputRow));
+		assertArrayEquals(new Object[] {"a", Long.valueOf(8)}, outputRow);
+	}
+	
+	@Test
+	public void testWriteFieldsUpdatedWithoutRecording() throws Exception
+	{
+		String[] fieldNames = new String[] {"name", "count"};
+		FieldConverter[] converters = new FieldConverter[] {
+			FieldConverter.getConverter(ValueMetaInterface.TYPE_STRING),
+			FieldConverter.getConverter(ValueMetaInterface.TYPE_INTEGER)};
+		Object[] row = new Object[] {"a", Long.valueOf(1)};
+		ReusableRowFieldCollection fields = new ReusableRowFieldCollection(new HeaderRow(fieldNames), row);
+		fields.setFieldIndexes(ReusableRowFieldCollection.getFieldIndexes(fieldNames));
+		fields.setFieldValue("count", Integer.valueOf(5));
+		// a field changed directly is not recorded, so all fields are checked
+		fields.getField(0).setValue("b");
+		fields.getField(0).setUpdated(true);
+		fields.setCollectionUpdated(true);
+		
+		assertFalse(fields.isUpdatedIndexesComplete());
+		Object[] outputRow = row.clone();
+		assertEquals(2, FieldConverter.writeUpdatedFields(fields, converters, outputRow));
+		assertArrayEquals(new Object[] {"b", Long.valueOf(5)}, outputRow);
+		
+		// the recorded indexes are complete again with the next row
+		fields.reset(row);
+		assertTrue(fields.isUpdatedIndexesComplete());
+	}
+}